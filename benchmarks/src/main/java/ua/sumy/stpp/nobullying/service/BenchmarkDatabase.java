@@ -0,0 +1,113 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.model.User;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Fresh in-memory H2 database per trial, mapped by hibernate through the same entities the webapp uses.
+final class BenchmarkDatabase {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final int FILL_BATCH_SIZE = 500;
+    // entities with the id sequences orm.xml maps them to.
+    private static final Map<String, String> ID_SEQUENCES = new LinkedHashMap<>();
+
+    static {
+        ID_SEQUENCES.put("Report", "report_id_seq");
+        ID_SEQUENCES.put("Attachment", "attachment_id_seq");
+        ID_SEQUENCES.put("User", "user_id_seq");
+    }
+
+    private BenchmarkDatabase() {
+    }
+
+    static EntityManagerFactory create() {
+        // per-operation info lines would otherwise dominate every measurement.
+        Logger.getLogger("ua.sumy.stpp.nobullying").setLevel(Level.WARNING);
+        Logger.getLogger("org.hibernate").setLevel(Level.WARNING);
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", String.format(
+                "jdbc:h2:mem:benchmark%d;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER", DATABASES.incrementAndGet()));
+        EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("benchmark_jpa",
+                properties);
+        seedIdSequences(entityManagerFactory);
+        return entityManagerFactory;
+    }
+
+    // Restarts every id sequence past the ids already in its table, blocks handed out by a sequence that starts
+    // below them would collide with existing rows.
+    static void seedIdSequences(EntityManagerFactory entityManagerFactory) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        EntityTransaction entityTransaction = entityManager.getTransaction();
+        try {
+            entityTransaction.begin();
+            for (Map.Entry<String, String> entry: ID_SEQUENCES.entrySet()) {
+                Number maxId = (Number) entityManager.createQuery(String.format("SELECT MAX(m.id) FROM %s m",
+                        entry.getKey())).getSingleResult();
+                long nextId = (maxId != null) ? maxId.longValue() + 1 : 1L;
+                entityManager.createNativeQuery(String.format("ALTER SEQUENCE %s RESTART WITH %d", entry.getValue(),
+                        nextId)).executeUpdate();
+            }
+            entityTransaction.commit();
+        } catch (RuntimeException e) {
+            if (entityTransaction.isActive()) {
+                entityTransaction.rollback();
+            }
+            throw e;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    // A report that wasn't saved fails the setup, measuring against missing rows would be meaningless.
+    static long[] fillReports(ReportService reportService, int count) throws Exception {
+        long[] ids = new long[count];
+        int filled = 0;
+        List<Report> batch = new ArrayList<>(FILL_BATCH_SIZE);
+        while (filled < count) {
+            batch.clear();
+            for (int i = 0; i < FILL_BATCH_SIZE && filled + i < count; i++) {
+                batch.add(newReport(filled + i));
+            }
+            for (SaveOutcome<Report> outcome: reportService.saveReports(batch, FILL_BATCH_SIZE)) {
+                if (!outcome.isSaved()) {
+                    throw new IllegalStateException(String.format("Report (%d) wasn't saved: %s.", filled,
+                            outcome.getMessage()));
+                }
+                ids[filled++] = outcome.getModel().getId();
+            }
+        }
+        return ids;
+    }
+
+    static long[] fillUsers(UserService userService, int count) throws Exception {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            User user = newUser("user" + i);
+            userService.registerUser(user);
+            ids[i] = user.getId();
+        }
+        return ids;
+    }
+
+    static Report newReport(long number) {
+        return new Report("Anonymous", "Someone was bullied near the gym, report number " + number, new Date());
+    }
+
+    static User newUser(String login) {
+        return new User(login, "qwerty", "Simple", "User");
+    }
+}
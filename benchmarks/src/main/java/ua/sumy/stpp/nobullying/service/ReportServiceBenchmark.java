@@ -0,0 +1,75 @@
+package ua.sumy.stpp.nobullying.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportServiceBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int tableSize;
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager entityManager;
+    private ReportService reportService;
+    private long[] ids;
+    private long number;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        entityManagerFactory = BenchmarkDatabase.create();
+        entityManager = entityManagerFactory.createEntityManager();
+        reportService = new ReportService(entityManager);
+        ids = BenchmarkDatabase.fillReports(reportService, tableSize);
+        number = tableSize;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        entityManager.close();
+        entityManagerFactory.close();
+    }
+
+    @Benchmark
+    public Report getModelById() throws Exception {
+        // a new service and an empty persistence context, so every lookup goes to the database.
+        entityManager.clear();
+        long id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        return new ReportService(entityManager).getModelById(Report.class, id);
+    }
+
+    @Benchmark
+    public List<Report> getAllReports() {
+        entityManager.clear();
+        return reportService.getAllReports();
+    }
+
+    @Benchmark
+    public Report saveReport() throws Exception {
+        Report report = BenchmarkDatabase.newReport(number++);
+        reportService.saveReport(report);
+        entityManager.detach(report);
+        return report;
+    }
+
+    @Benchmark
+    public long moderateReport() throws Exception {
+        Report report = BenchmarkDatabase.newReport(number++);
+        reportService.saveReport(report);
+        reportService.beginModeratingReport(report.getId(), "moderator");
+        reportService.finishModeratingReport(report.getId(), "moderator");
+        entityManager.clear();
+        return report.getId();
+    }
+}
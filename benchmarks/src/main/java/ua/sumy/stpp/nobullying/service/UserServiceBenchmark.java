@@ -0,0 +1,61 @@
+package ua.sumy.stpp.nobullying.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import ua.sumy.stpp.nobullying.model.User;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserServiceBenchmark {
+    private static final int USERS = 1000;
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager entityManager;
+    private UserService userService;
+    private long[] ids;
+    private long registered;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        entityManagerFactory = BenchmarkDatabase.create();
+        entityManager = entityManagerFactory.createEntityManager();
+        userService = new UserService(entityManager);
+        ids = BenchmarkDatabase.fillUsers(userService, USERS);
+        entityManager.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        entityManager.close();
+        entityManagerFactory.close();
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        return userService.verify("user" + ThreadLocalRandom.current().nextInt(USERS), "qwerty");
+    }
+
+    @Benchmark
+    public User registerUser() throws Exception {
+        User user = BenchmarkDatabase.newUser("registered" + registered++);
+        userService.registerUser(user);
+        entityManager.detach(user);
+        return user;
+    }
+
+    @Benchmark
+    public boolean isUserAdmin() throws Exception {
+        entityManager.clear();
+        long id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        return new UserService(entityManager).isUserAdmin(id);
+    }
+}
@@ -0,0 +1,43 @@
+package ua.sumy.stpp.nobullying.service.audit;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuditJournalBenchmark {
+    private Path directory;
+    private AuditJournal auditJournal;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("audit-benchmark");
+        auditJournal = new AuditJournal(directory, AuditJournal.DEFAULT_RING_CAPACITY,
+                AuditJournal.DEFAULT_SEGMENT_RECORDS, 4, 0L);
+        auditJournal.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        auditJournal.stop();
+        for (File file: directory.toFile().listFiles()) {
+            file.delete();
+        }
+        directory.toFile().delete();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean append() {
+        return auditJournal.append(AuditAction.REPORT_MODERATION_FINISHED, 42L, 1, System.currentTimeMillis(),
+                "benchmark");
+    }
+}
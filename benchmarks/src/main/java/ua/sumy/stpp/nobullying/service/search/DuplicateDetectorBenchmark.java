@@ -0,0 +1,56 @@
+package ua.sumy.stpp.nobullying.service.search;
+
+import org.openjdk.jmh.annotations.*;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuplicateDetectorBenchmark {
+    private static final String[] WORDS = {"boys", "girls", "pushed", "took", "phone", "backpack", "gym", "canteen",
+            "break", "lesson", "teacher", "laughed", "insulted", "threw", "notebook", "class", "floor", "stairs",
+            "yesterday", "today", "again", "older", "younger", "Ivan", "Olena", "Taras", "Maria", "wall", "wrote"};
+
+    @Param({"10000", "100000"})
+    private int indexSize;
+
+    private DuplicateDetector duplicateDetector;
+    private String text;
+    private long sentTime;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42L);
+        sentTime = System.currentTimeMillis();
+        duplicateDetector = new DuplicateDetector(DuplicateDetector.DEFAULT_WINDOW_MILLIS,
+                DuplicateDetector.DEFAULT_BUCKET_MILLIS);
+        for (int i = 1; i <= indexSize; i++) {
+            Report report = new Report("Anonymous", randomText(random),
+                    new Date(sentTime - random.nextInt((int) TimeUnit.DAYS.toMillis(6))));
+            report.setId(i);
+            duplicateDetector.reportSaved(report, true);
+        }
+        text = randomText(random);
+    }
+
+    @Benchmark
+    public long findDuplicate() {
+        return duplicateDetector.findDuplicate(text, sentTime);
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return builder.toString();
+    }
+}
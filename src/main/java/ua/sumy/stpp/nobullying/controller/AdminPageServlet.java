@@ -1,7 +1,167 @@
 package ua.sumy.stpp.nobullying.controller;
 
-import javax.servlet.annotation.WebServlet;
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.audit.AuditJournal;
+import ua.sumy.stpp.nobullying.service.audit.AuditRecord;
+import ua.sumy.stpp.nobullying.service.rollup.RollupBucket;
+import ua.sumy.stpp.nobullying.service.rollup.RollupResolution;
+
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class AdminPageServlet extends HttpServlet {
+    private static final String COUNTERS_PATH = "/admin/counters";
+    private static final String AUDIT_PATH = "/admin/audit";
+    private static final String ROLLUPS_PATH = "/admin/rollups";
+    private static final int DEFAULT_ROLLUP_BUCKETS = 30;
+    private static final int DEFAULT_AUDIT_LIMIT = 100;
+    private static final int MAX_AUDIT_LIMIT = 10000;
+    // records looked at per request, a segment worth of them spans two segment files at most.
+    private static final long MAX_AUDIT_SCAN = AuditJournal.DEFAULT_SEGMENT_RECORDS;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (COUNTERS_PATH.equals(req.getServletPath())) {
+            showReportCounters(resp);
+            return;
+        }
+
+        if (AUDIT_PATH.equals(req.getServletPath())) {
+            try {
+                showAuditRecords(req, resp);
+            } catch (IllegalArgumentException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            }
+            return;
+        }
+
+        if (ROLLUPS_PATH.equals(req.getServletPath())) {
+            try {
+                showReportRollups(req, resp);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            }
+            return;
+        }
+
+        getServletContext().getRequestDispatcher("/jsp/admin.jsp").forward(req, resp);
+    }
+
+    // Served from in-memory counters, no database work per request.
+    private void showReportCounters(HttpServletResponse resp) throws IOException {
+        Map<Report.ProcessingState, Long> counts =
+                Application.get(getServletContext()).getReportStateCounters().getCounts();
+
+        StringBuilder builder = new StringBuilder("{");
+        for (Map.Entry<Report.ProcessingState, Long> count: counts.entrySet()) {
+            if (builder.length() > 1) {
+                builder.append(',');
+            }
+            Json.appendString(builder, count.getKey().name()).append(':').append(count.getValue());
+        }
+        builder.append('}');
+
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.getWriter().write(builder.toString());
+    }
+
+    // Buckets of ?resolution=hour|day|week between ISO instants from and to, by default the last 30 buckets.
+    // Served from in-memory rollups like the counters, whatever the range.
+    private void showReportRollups(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String resolutionName = req.getParameter("resolution");
+        String from = req.getParameter("from");
+        String to = req.getParameter("to");
+        RollupResolution resolution = (resolutionName != null) ?
+                RollupResolution.valueOf(resolutionName.toUpperCase()) : RollupResolution.DAY;
+        Date toDate = (to != null) ? Date.from(Instant.parse(to)) : new Date();
+        Date fromDate = (from != null) ? Date.from(Instant.parse(from)) :
+                new Date(toDate.getTime() - DEFAULT_ROLLUP_BUCKETS * bucketMillis(resolution));
+
+        List<RollupBucket> buckets = Application.get(getServletContext()).getReportRollups()
+                .getRange(resolution, fromDate, toDate);
+
+        StringBuilder builder = new StringBuilder("[");
+        for (RollupBucket bucket: buckets) {
+            if (builder.length() > 1) {
+                builder.append(',');
+            }
+            builder.append("{\"start\":");
+            Json.appendString(builder, ReportExportFormat.formatDate(new Date(bucket.getStart())));
+            for (Report.ProcessingState state: Report.ProcessingState.values()) {
+                builder.append(',');
+                Json.appendString(builder, state.name()).append(':').append(bucket.getCount(state));
+            }
+            builder.append(",\"averageResponseMillis\":").append(bucket.getAverageResponseMillis())
+                    .append(",\"averageResolutionMillis\":").append(bucket.getAverageResolutionMillis())
+                    .append('}');
+        }
+        builder.append(']');
+
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.getWriter().write(builder.toString());
+    }
+
+    private static long bucketMillis(RollupResolution resolution) {
+        switch (resolution) {
+            case HOUR:
+                return TimeUnit.HOURS.toMillis(1);
+            case DAY:
+                return TimeUnit.DAYS.toMillis(1);
+            default:
+                return TimeUnit.DAYS.toMillis(7);
+        }
+    }
+
+    // One JSON object per line, oldest first, optionally only those about one report or user. Without a range
+    // the newest records are searched, a range longer than MAX_AUDIT_SCAN is cut at its end.
+    private void showAuditRecords(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String from = req.getParameter("from");
+        String to = req.getParameter("to");
+        String limit = req.getParameter("limit");
+        String subject = req.getParameter("subject");
+        long subjectId = (subject != null) ? Long.parseLong(subject) : 0L;
+
+        AuditJournal journal = Application.get(getServletContext()).getAuditJournal();
+        long fromSequence = (from != null) ? Long.parseLong(from) :
+                Math.max(1L, journal.getWrittenSequence() - MAX_AUDIT_SCAN + 1);
+        long toSequence = Math.min((to != null) ? Long.parseLong(to) : Long.MAX_VALUE,
+                fromSequence + MAX_AUDIT_SCAN - 1);
+        List<AuditRecord> records = journal.find(fromSequence, toSequence,
+                (limit != null) ? Math.min(Integer.parseInt(limit), MAX_AUDIT_LIMIT) : DEFAULT_AUDIT_LIMIT,
+                (AuditRecord record) -> subject == null || record.getSubjectId() == subjectId);
+
+        StringBuilder builder = new StringBuilder();
+        for (AuditRecord record: records) {
+            builder.append("{\"sequence\":").append(record.getSequence()).append(",\"time\":");
+            Json.appendString(builder, ReportExportFormat.formatDate(new Date(record.getTime())));
+            builder.append(",\"action\":");
+            Json.appendString(builder, record.getAction().name());
+            builder.append(",\"subjectId\":").append(record.getSubjectId())
+                    .append(",\"detail\":").append(record.getDetail()).append(",\"actor\":");
+            if (record.getActor() != null) {
+                Json.appendString(builder, record.getActor());
+            } else {
+                builder.append("null");
+            }
+            builder.append("}\n");
+        }
+
+        resp.setContentType("application/x-ndjson");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.getWriter().write(builder.toString());
+    }
 }
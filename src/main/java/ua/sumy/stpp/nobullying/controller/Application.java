@@ -0,0 +1,294 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.AttachmentListener;
+import ua.sumy.stpp.nobullying.service.AttachmentService;
+import ua.sumy.stpp.nobullying.service.ModelCaches;
+import ua.sumy.stpp.nobullying.service.ReportArchiver;
+import ua.sumy.stpp.nobullying.service.ReportIntake;
+import ua.sumy.stpp.nobullying.service.ReportListener;
+import ua.sumy.stpp.nobullying.service.ReportService;
+import ua.sumy.stpp.nobullying.service.ReportStateCounters;
+import ua.sumy.stpp.nobullying.service.UserListener;
+import ua.sumy.stpp.nobullying.service.UserService;
+import ua.sumy.stpp.nobullying.service.archive.ReportArchive;
+import ua.sumy.stpp.nobullying.service.attachment.AttachmentStore;
+import ua.sumy.stpp.nobullying.service.attachment.ThumbnailPipeline;
+import ua.sumy.stpp.nobullying.service.audit.AuditJournal;
+import ua.sumy.stpp.nobullying.service.event.EventBroadcaster;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+import ua.sumy.stpp.nobullying.service.priority.PriorityScorer;
+import ua.sumy.stpp.nobullying.service.rollup.ReportRollups;
+import ua.sumy.stpp.nobullying.service.search.DuplicateDetector;
+import ua.sumy.stpp.nobullying.service.search.ReportTextIndex;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+final class Application {
+    private static final String ATTRIBUTE = Application.class.getName();
+
+    private static final int INTAKE_CAPACITY = 10000;
+    private static final int INTAKE_BATCH_SIZE = 200;
+
+    private static final String AUDIT_DIRECTORY_PROPERTY = "nobullying.audit.directory";
+    private static final int AUDIT_MAX_SEGMENTS = 64;
+    private static final long AUDIT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(365);
+    private static final String ATTACHMENTS_DIRECTORY_PROPERTY = "nobullying.attachments.directory";
+    private static final int THUMBNAIL_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int THUMBNAIL_QUEUE_CAPACITY = 1000;
+    private static final String PRIORITY_DIRECTORY_PROPERTY = "nobullying.priority.directory";
+    private static final String ARCHIVE_DIRECTORY_PROPERTY = "nobullying.archive.directory";
+    // reports finished longer ago than this many days move to the archive.
+    private static final String ARCHIVE_AGE_PROPERTY = "nobullying.archive.days";
+    private static final long DEFAULT_ARCHIVE_AGE_DAYS = 90;
+
+    private final EntityManagerFactory reportEntityManagerFactory;
+    private final EntityManagerFactory userEntityManagerFactory;
+    private final List<ReportListener> reportListeners = new CopyOnWriteArrayList<>();
+    private final List<UserListener> userListeners = new CopyOnWriteArrayList<>();
+    // shared by the services of all requests, so a model read by one request saves the next the lookup.
+    private final ModelCaches modelCaches = new ModelCaches(ServiceMetrics.getDefault());
+    private final ReportStateCounters reportStateCounters = new ReportStateCounters();
+    private final ReportTextIndex reportTextIndex = new ReportTextIndex();
+    private final DuplicateDetector duplicateDetector = new DuplicateDetector(
+            DuplicateDetector.DEFAULT_WINDOW_MILLIS, DuplicateDetector.DEFAULT_BUCKET_MILLIS);
+    private final ReportRollups reportRollups = new ReportRollups(ZoneId.systemDefault());
+    private final EntityManager intakeEntityManager;
+    private final ReportIntake reportIntake;
+    private final AuditJournal auditJournal;
+    private final AttachmentStore attachmentStore;
+    private final List<AttachmentListener> attachmentListeners = new CopyOnWriteArrayList<>();
+    private final ThumbnailPipeline thumbnailPipeline;
+    private final PriorityScorer priorityScorer;
+    private final ReportArchive reportArchive;
+    private final EntityManager archiverEntityManager;
+    private final ReportArchiver reportArchiver;
+    private final EventBroadcaster reportEvents = new EventBroadcaster(EventBroadcaster.DEFAULT_CAPACITY,
+            EventBroadcaster.DEFAULT_SUBSCRIBER_CAPACITY, EventBroadcaster.DEFAULT_HEARTBEAT_MILLIS);
+    private final Logger log = Logger.getLogger(Application.class.getName());
+
+    private Application(EntityManagerFactory reportEntityManagerFactory, EntityManagerFactory userEntityManagerFactory,
+                        AuditJournal auditJournal, AttachmentStore attachmentStore, ReportArchive reportArchive) {
+        this.reportEntityManagerFactory = reportEntityManagerFactory;
+        this.userEntityManagerFactory = userEntityManagerFactory;
+        this.auditJournal = auditJournal;
+        this.attachmentStore = attachmentStore;
+        this.reportArchive = reportArchive;
+        this.thumbnailPipeline = openThumbnailPipeline(attachmentStore);
+        this.priorityScorer = openPriorityScorer();
+        this.intakeEntityManager = reportEntityManagerFactory.createEntityManager();
+        this.reportIntake = new ReportIntake(createReportService(intakeEntityManager), INTAKE_CAPACITY,
+                INTAKE_BATCH_SIZE);
+        this.archiverEntityManager = reportEntityManagerFactory.createEntityManager();
+        this.reportArchiver = new ReportArchiver(createReportService(archiverEntityManager),
+                TimeUnit.DAYS.toMillis(Long.getLong(ARCHIVE_AGE_PROPERTY, DEFAULT_ARCHIVE_AGE_DAYS)),
+                ReportArchiver.DEFAULT_INTERVAL_MILLIS, ReportArchiver.DEFAULT_BATCH_SIZE);
+    }
+
+    static void start(ServletContext context) {
+        Application application = new Application(Persistence.createEntityManagerFactory("report_jpa"),
+                Persistence.createEntityManagerFactory("user_jpa"), openAuditJournal(), openAttachmentStore(),
+                openReportArchive());
+        application.loadReportStateCounters();
+        application.buildReportTextIndex();
+        application.buildDuplicateDetector();
+        application.buildReportRollups();
+        application.priorityScorer.start();
+        application.reportListeners.add(application.priorityScorer);
+        application.auditJournal.start();
+        application.reportListeners.add(application.auditJournal);
+        application.userListeners.add(application.auditJournal);
+        application.thumbnailPipeline.start();
+        application.attachmentListeners.add(application.thumbnailPipeline);
+        application.reportEvents.start();
+        application.reportListeners.add(new ReportEventFeed(application.reportEvents));
+        application.reportIntake.start();
+        application.reportArchiver.start();
+        context.setAttribute(ATTRIBUTE, application);
+    }
+
+    static void stop(ServletContext context) {
+        Application application = get(context);
+        context.removeAttribute(ATTRIBUTE);
+        application.reportIntake.stop();
+        application.reportArchiver.stop();
+        application.reportEvents.stop();
+        application.auditJournal.stop();
+        application.thumbnailPipeline.stop();
+        application.priorityScorer.stop();
+        application.intakeEntityManager.close();
+        application.archiverEntityManager.close();
+        application.reportEntityManagerFactory.close();
+        application.userEntityManagerFactory.close();
+    }
+
+    static Application get(ServletContext context) {
+        return (Application) context.getAttribute(ATTRIBUTE);
+    }
+
+    private EntityManager createReportEntityManager() {
+        return reportEntityManagerFactory.createEntityManager();
+    }
+
+    // The service works on the request's own entity manager, closed by EntityManagerFilter.
+    ReportService getReportService(ServletRequest request) {
+        return createReportService(RequestEntityManagers.of(request).get(reportEntityManagerFactory));
+    }
+
+    UserService getUserService(ServletRequest request) {
+        return new UserService(RequestEntityManagers.of(request).get(userEntityManagerFactory), userListeners,
+                modelCaches);
+    }
+
+    AttachmentService getAttachmentService(ServletRequest request) {
+        return new AttachmentService(RequestEntityManagers.of(request).get(reportEntityManagerFactory),
+                attachmentStore, attachmentListeners, modelCaches);
+    }
+
+    ReportService createReportService(EntityManager entityManager) {
+        return new ReportService(entityManager, reportListeners, reportArchive, modelCaches);
+    }
+
+    ReportIntake getReportIntake() {
+        return reportIntake;
+    }
+
+    ReportStateCounters getReportStateCounters() {
+        return reportStateCounters;
+    }
+
+    ReportTextIndex getReportTextIndex() {
+        return reportTextIndex;
+    }
+
+    ReportRollups getReportRollups() {
+        return reportRollups;
+    }
+
+    EventBroadcaster getReportEvents() {
+        return reportEvents;
+    }
+
+    AuditJournal getAuditJournal() {
+        return auditJournal;
+    }
+
+    private static AuditJournal openAuditJournal() {
+        Path directory = getDataDirectory(AUDIT_DIRECTORY_PROPERTY, "audit");
+        try {
+            return new AuditJournal(directory, AuditJournal.DEFAULT_RING_CAPACITY,
+                    AuditJournal.DEFAULT_SEGMENT_RECORDS, AUDIT_MAX_SEGMENTS, AUDIT_MAX_AGE_MILLIS);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Error opening audit journal in (%s).", directory), e);
+        }
+    }
+
+    private static AttachmentStore openAttachmentStore() {
+        Path directory = getDataDirectory(ATTACHMENTS_DIRECTORY_PROPERTY, "attachments");
+        try {
+            return new AttachmentStore(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Error opening attachment store in (%s).", directory), e);
+        }
+    }
+
+    private static ThumbnailPipeline openThumbnailPipeline(AttachmentStore attachmentStore) {
+        Path directory = getDataDirectory(ATTACHMENTS_DIRECTORY_PROPERTY, "attachments").resolve("thumbnail-jobs");
+        try {
+            return new ThumbnailPipeline(attachmentStore, directory, THUMBNAIL_WORKERS, THUMBNAIL_QUEUE_CAPACITY,
+                    ThumbnailPipeline.DEFAULT_THUMBNAIL_SIZE);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Error opening thumbnail jobs in (%s).", directory), e);
+        }
+    }
+
+    private static ReportArchive openReportArchive() {
+        Path directory = getDataDirectory(ARCHIVE_DIRECTORY_PROPERTY, "archive");
+        try {
+            return new ReportArchive(directory, ReportArchive.DEFAULT_SEGMENT_BYTES,
+                    ReportArchive.DEFAULT_CACHED_BLOCKS);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Error opening report archive in (%s).", directory), e);
+        }
+    }
+
+    private static PriorityScorer openPriorityScorer() {
+        Path dictionary = getDataDirectory(PRIORITY_DIRECTORY_PROPERTY, "priority").resolve("keywords.txt");
+        try {
+            return new PriorityScorer(dictionary);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Error opening priority keywords (%s).", dictionary), e);
+        }
+    }
+
+    private static Path getDataDirectory(String property, String name) {
+        String directory = System.getProperty(property);
+        if (directory != null) {
+            return Paths.get(directory);
+        }
+        return Paths.get(System.getProperty("user.home"), ".nobullying", name);
+    }
+
+    private void loadReportStateCounters() {
+        EntityManager entityManager = createReportEntityManager();
+        try {
+            // archived reports stay counted as finished, the counters don't follow them out of the database.
+            Map<Report.ProcessingState, Long> counts = createReportService(entityManager).countReportsByState();
+            counts.merge(Report.ProcessingState.FINISHED, reportArchive.size(), Long::sum);
+            reportStateCounters.reset(counts);
+        } finally {
+            entityManager.close();
+        }
+        reportListeners.add(reportStateCounters);
+    }
+
+    // Runs before requests are served, so no report event can slip between the scan and the listener.
+    private void buildReportTextIndex() {
+        EntityManager entityManager = createReportEntityManager();
+        try {
+            reportTextIndex.rebuild(createReportService(entityManager));
+        } catch (Exception e) {
+            log.severe(String.format("Error building report text index: %s.", e.getMessage()));
+        } finally {
+            entityManager.close();
+        }
+        reportListeners.add(reportTextIndex);
+    }
+
+    private void buildDuplicateDetector() {
+        EntityManager entityManager = createReportEntityManager();
+        try {
+            duplicateDetector.rebuild(createReportService(entityManager));
+        } catch (Exception e) {
+            log.severe(String.format("Error building duplicate detector: %s.", e.getMessage()));
+        } finally {
+            entityManager.close();
+        }
+        reportListeners.add(duplicateDetector);
+    }
+
+    private void buildReportRollups() {
+        EntityManager entityManager = createReportEntityManager();
+        try {
+            reportRollups.rebuild(createReportService(entityManager), reportArchive);
+        } catch (Exception e) {
+            log.severe(String.format("Error building report rollups: %s.", e.getMessage()));
+        } finally {
+            entityManager.close();
+        }
+        reportListeners.add(reportRollups);
+    }
+}
@@ -0,0 +1,16 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+public class ApplicationListener implements ServletContextListener {
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        Application.start(event.getServletContext());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        Application.stop(event.getServletContext());
+    }
+}
@@ -0,0 +1,192 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import ua.sumy.stpp.nobullying.model.Attachment;
+import ua.sumy.stpp.nobullying.service.AttachmentService;
+import ua.sumy.stpp.nobullying.service.attachment.ContentTooLargeException;
+import ua.sumy.stpp.nobullying.service.attachment.MalformedContentException;
+import ua.sumy.stpp.nobullying.service.error.BadOperationException;
+import ua.sumy.stpp.nobullying.service.error.BadParametersException;
+import ua.sumy.stpp.nobullying.service.error.ModelNotFoundException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+public class AttachmentServlet extends HttpServlet {
+    private static final long MAX_UPLOAD_SIZE = 100L * 1024 * 1024;
+    private static final String CACHE_CONTROL = "private, max-age=86400";
+    private static final String THUMBNAIL_SUFFIX = "/thumbnail";
+
+    // Lets tomcat hand the file to the socket with sendfile once the servlet returns.
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final Logger log = Logger.getLogger(AttachmentServlet.class.getName());
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        AttachmentService attachmentService = Application.get(getServletContext()).getAttachmentService(req);
+        String pathInfo = req.getPathInfo();
+        boolean thumbnail = pathInfo != null && pathInfo.endsWith(THUMBNAIL_SUFFIX);
+        Attachment attachment;
+        try {
+            attachment = attachmentService.getAttachmentById(parseId(thumbnail ?
+                    pathInfo.substring(0, pathInfo.length() - THUMBNAIL_SUFFIX.length()) : pathInfo));
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        } catch (ModelNotFoundException e) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        if (!thumbnail) {
+            // content never changes under its hash, so the hash is a strong validator.
+            sendFile(attachmentService.getContentPath(attachment), "\"" + attachment.getSha256() + "\"",
+                    attachment.getContentType(), attachment.getFileName(), req, resp);
+            return;
+        }
+
+        Path thumbnailPath = attachmentService.getThumbnailPath(attachment);
+        if (!Files.exists(thumbnailPath)) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Thumbnail isn't ready yet.");
+            return;
+        }
+        sendFile(thumbnailPath, "\"" + attachment.getSha256() + "-thumbnail\"", "image/jpeg",
+                "thumbnail.jpg", req, resp);
+    }
+
+    // The request body is the file itself, streamed to the store without being buffered.
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (req.getContentLengthLong() > MAX_UPLOAD_SIZE) {
+            resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+
+        AttachmentService attachmentService = Application.get(getServletContext()).getAttachmentService(req);
+        Attachment attachment;
+        try {
+            String report = req.getParameter("report");
+            if (report == null) {
+                throw new BadParametersException("Attaching file without report permitted.");
+            }
+            attachment = attachmentService.attachToReport(Long.parseLong(report), req.getParameter("name"),
+                    req.getContentType(), req.getInputStream(), MAX_UPLOAD_SIZE);
+        } catch (BadParametersException | IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        } catch (ModelNotFoundException e) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        } catch (ContentTooLargeException e) {
+            resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        } catch (MalformedContentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        } catch (BadOperationException e) {
+            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder("{\"id\":").append(attachment.getId()).append(",\"sha256\":");
+        Json.appendString(builder, attachment.getSha256()).append(",\"size\":").append(attachment.getSize())
+                .append('}');
+
+        resp.setStatus(HttpServletResponse.SC_CREATED);
+        resp.setHeader("Location", req.getContextPath() + "/attachments/" + attachment.getId());
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.getWriter().write(builder.toString());
+    }
+
+    void sendFile(Path path, String eTag, String contentType, String fileName, HttpServletRequest req,
+                  HttpServletResponse resp) throws IOException {
+        resp.setHeader("ETag", eTag);
+        resp.setHeader("Accept-Ranges", "bytes");
+        resp.setHeader("Cache-Control", CACHE_CONTROL);
+
+        if (ConditionalGet.matches(req.getHeader("If-None-Match"), eTag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long size = Files.size(path);
+        ByteRange range = null;
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null || ifRange.equals(eTag)) {
+            range = ByteRange.parse(req.getHeader("Range"), size);
+        }
+
+        if (range == ByteRange.UNSATISFIABLE) {
+            resp.setHeader("Content-Range", "bytes */" + size);
+            resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        long start = 0L;
+        long length = size;
+        if (range != null) {
+            start = range.getStart();
+            length = range.getLength();
+            resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            resp.setHeader("Content-Range", String.format("bytes %d-%d/%d", start, range.getEnd(), size));
+        }
+
+        // anything a browser could run is downloaded rather than rendered, and never sniffed into html.
+        resp.setContentType(contentType);
+        resp.setContentLengthLong(length);
+        resp.setHeader("X-Content-Type-Options", "nosniff");
+        resp.setHeader("Content-Disposition", String.format("%s; filename=\"%s\"",
+                AttachmentService.isAllowedContentType(contentType) ? "inline" : "attachment",
+                fileName.replace("\"", "")));
+
+        if ("HEAD".equals(req.getMethod()) || length == 0) {
+            return;
+        }
+        sendContent(path, start, length, req, resp);
+    }
+
+    private void sendContent(Path path, long start, long length, HttpServletRequest req, HttpServletResponse resp)
+            throws IOException {
+        if (Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT))) {
+            req.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            req.setAttribute(SENDFILE_START, start);
+            req.setAttribute(SENDFILE_END, start + length);
+            return;
+        }
+
+        // elsewhere the file channel copies into the response stream chunk by chunk, never loading it whole.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(resp.getOutputStream());
+            long position = start;
+            long end = start + length;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    log.warning(String.format("Attachment file (%s) is shorter than expected.", path));
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private static long parseId(String pathInfo) {
+        if (pathInfo == null || pathInfo.length() < 2) {
+            throw new IllegalArgumentException("Attachment id is missing.");
+        }
+        return Long.parseLong(pathInfo.substring(1));
+    }
+}
@@ -0,0 +1,61 @@
+package ua.sumy.stpp.nobullying.controller;
+
+// Single byte range of a Range header, resolved against the length of the content.
+final class ByteRange {
+    static final ByteRange UNSATISFIABLE = new ByteRange(0L, 0L);
+
+    private final long start;
+    private final long length;
+
+    private ByteRange(long start, long length) {
+        this.start = start;
+        this.length = length;
+    }
+
+    // Null when the header asks for the whole content or can't be honoured, multiple ranges included.
+    static ByteRange parse(String header, long size) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // suffix range, the last n bytes.
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(size - suffix, 0L), Math.min(suffix, size));
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            if (start >= size || end < start) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(start, end - start + 1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    long getEnd() {
+        return start + length - 1;
+    }
+}
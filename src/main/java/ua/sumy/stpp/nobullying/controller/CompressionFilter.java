@@ -0,0 +1,213 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+
+// Serves static assets precompressed by the build and gzips dynamic text responses on the fly.
+// The build lists every asset with the hash of its content in the manifest, pages link them as
+// "path?v=<version>" (see the staticAssets context attribute) and such links are cached for a year.
+public class CompressionFilter implements Filter {
+    static final String MANIFEST = "/WEB-INF/static-assets.properties";
+    static final String STATIC_ASSETS_ATTRIBUTE = "staticAssets";
+
+    private static final int VERSION_LENGTH = 16;
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE = "no-cache";
+
+    private final Logger log = Logger.getLogger(CompressionFilter.class.getName());
+
+    private Map<String, StaticAsset> assets = Collections.emptyMap();
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        ServletContext context = filterConfig.getServletContext();
+        Properties manifest = new Properties();
+        try (InputStream in = context.getResourceAsStream(MANIFEST)) {
+            if (in == null) {
+                log.warning("Static assets manifest is missing, assets are served uncompressed.");
+                context.setAttribute(STATIC_ASSETS_ATTRIBUTE, new VersionedPaths(Collections.emptyMap()));
+                return;
+            }
+            manifest.load(in);
+
+            Map<String, StaticAsset> assets = new HashMap<>();
+            Map<String, String> versionedPaths = new HashMap<>();
+            for (String path: manifest.stringPropertyNames()) {
+                byte[] content = readResource(context, path);
+                if (content == null) {
+                    log.warning(String.format("Static asset (%s) is listed in manifest but missing.", path));
+                    continue;
+                }
+
+                StaticAsset asset = new StaticAsset(manifest.getProperty(path), context.getMimeType(path), content,
+                        readResource(context, path + ".gz"));
+                assets.put(path, asset);
+                versionedPaths.put(path, path + "?v=" + asset.version);
+            }
+            this.assets = assets;
+            context.setAttribute(STATIC_ASSETS_ATTRIBUTE, new VersionedPaths(versionedPaths));
+            log.info(String.format("Loaded (%d) static assets.", assets.size()));
+        } catch (IOException e) {
+            throw new ServletException("Error loading static assets.", e);
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse resp = (HttpServletResponse) response;
+        String method = req.getMethod();
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        boolean gzipAccepted = acceptsGzip(req.getHeader("Accept-Encoding"));
+        StaticAsset asset = assets.get(req.getRequestURI().substring(req.getContextPath().length()));
+        if (asset != null) {
+            sendAsset(asset, gzipAccepted, head, req, resp);
+            return;
+        }
+
+        // byte ranges address the identity representation, so partial requests are left alone.
+        if (req.getHeader("Range") != null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        GzipResponse gzipResponse = new GzipResponse(req, resp, gzipAccepted);
+        chain.doFilter(request, gzipResponse);
+        if (!req.isAsyncStarted()) {
+            gzipResponse.finish();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private void sendAsset(StaticAsset asset, boolean gzipAccepted, boolean head, HttpServletRequest req,
+                           HttpServletResponse resp) throws IOException {
+        boolean gzipped = gzipAccepted && asset.gzipped != null;
+        String eTag = gzipped ? "\"" + asset.hash + "-gzip\"" : "\"" + asset.hash + "\"";
+        resp.setHeader("ETag", eTag);
+        resp.setHeader("Cache-Control", asset.version.equals(req.getParameter("v")) ? IMMUTABLE : REVALIDATE);
+        if (asset.gzipped != null) {
+            resp.setHeader("Vary", "Accept-Encoding");
+        }
+
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null && ConditionalGet.matches(ifNoneMatch, eTag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] content = gzipped ? asset.gzipped : asset.content;
+        if (gzipped) {
+            resp.setHeader("Content-Encoding", "gzip");
+        }
+        if (asset.contentType != null) {
+            resp.setContentType(asset.contentType);
+        }
+        resp.setContentLength(content.length);
+        if (!head) {
+            resp.getOutputStream().write(content);
+        }
+    }
+
+    // True unless gzip is missing from the header or refused with q=0.
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (String candidate: acceptEncoding.split(",")) {
+            String[] parts = candidate.split(";");
+            String coding = parts[0].trim();
+            if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*")) {
+                continue;
+            }
+
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte[] readResource(ServletContext context, String path) throws IOException {
+        try (InputStream in = context.getResourceAsStream(path)) {
+            if (in == null) {
+                return null;
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    // Paths missing from the manifest link unversioned, a page never loses its stylesheet to a stale build.
+    static final class VersionedPaths extends AbstractMap<String, String> {
+        private final Map<String, String> paths;
+
+        VersionedPaths(Map<String, String> paths) {
+            this.paths = Collections.unmodifiableMap(paths);
+        }
+
+        @Override
+        public String get(Object path) {
+            String versionedPath = paths.get(path);
+            return (versionedPath != null || !(path instanceof String)) ? versionedPath : (String) path;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return paths.entrySet();
+        }
+    }
+
+    // Assets are a few kilobytes each, keeping both variants in memory spares a resource lookup per request.
+    private static final class StaticAsset {
+        private final String hash;
+        private final String version;
+        private final String contentType;
+        private final byte[] content;
+        private final byte[] gzipped;
+
+        private StaticAsset(String hash, String contentType, byte[] content, byte[] gzipped) {
+            this.hash = hash;
+            this.version = hash.substring(0, Math.min(VERSION_LENGTH, hash.length()));
+            this.contentType = contentType;
+            this.content = content;
+            this.gzipped = gzipped;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import ua.sumy.stpp.nobullying.model.Model;
+import ua.sumy.stpp.nobullying.service.ModelVersions;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// Validators of views built from all models of one type. Must run before the view touches the database,
+// a request answered here never opens an entity manager.
+final class ConditionalGet {
+    private ConditionalGet() {
+    }
+
+    // Sets the validators and answers 304 when the client's copy is still current.
+    static boolean isNotModified(HttpServletRequest req, HttpServletResponse resp,
+                                 Class<? extends Model> modelClass) {
+        String eTag = ModelVersions.getETag(modelClass);
+        long lastModified = ModelVersions.getLastModified(modelClass);
+        resp.setHeader("ETag", eTag);
+        resp.setDateHeader("Last-Modified", lastModified);
+        resp.setHeader("Cache-Control", "no-cache");
+
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        boolean notModified;
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch, eTag);
+        } else {
+            long ifModifiedSince = getDateHeader(req, "If-Modified-Since");
+            notModified = ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+        }
+
+        if (notModified) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
+    // A missing header matches nothing, so plain requests get the full response.
+    static boolean matches(String header, String eTag) {
+        if (header == null) {
+            return false;
+        }
+        for (String candidate: header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || value.equals(eTag) || value.equals("W/" + eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getDateHeader(HttpServletRequest req, String name) {
+        try {
+            return req.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1L;
+        }
+    }
+}
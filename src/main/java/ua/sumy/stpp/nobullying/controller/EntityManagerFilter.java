@@ -0,0 +1,31 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+// Gives every request its own entity managers, so servlet threads never share a persistence context.
+// Work handed over to async threads must not use them, they are closed as soon as the servlet returns.
+public class EntityManagerFilter implements Filter {
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestEntityManagers.close(request);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,250 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+// Decides on compression when the servlet starts writing, by then it has set the content type.
+// The content length is held back until then, it only holds for the uncompressed body.
+class GzipResponse extends HttpServletResponseWrapper {
+    private static final int MIN_COMPRESSED_LENGTH = 256;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final HttpServletRequest request;
+    private final boolean gzipAccepted;
+
+    private boolean decided;
+    private GzipOutputStream gzipStream;
+    private PrintWriter writer;
+    private long contentLength = -1L;
+
+    GzipResponse(HttpServletRequest request, HttpServletResponse response, boolean gzipAccepted) {
+        super(response);
+        this.request = request;
+        this.gzipAccepted = gzipAccepted;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called.");
+        }
+        decide();
+        return (gzipStream != null) ? gzipStream : super.getOutputStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        decide();
+        if (gzipStream == null) {
+            return super.getWriter();
+        }
+
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(gzipStream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int length) {
+        setContentLengthLong(length);
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+        if (decided) {
+            if (gzipStream == null) {
+                super.setContentLengthLong(length);
+            }
+            return;
+        }
+        contentLength = length;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+            return;
+        }
+        super.setHeader(name, value);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+            return;
+        }
+        super.addHeader(name, value);
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+            return;
+        }
+        super.setIntHeader(name, value);
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+            return;
+        }
+        super.addIntHeader(name, value);
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (gzipStream != null) {
+            gzipStream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    // Whatever was compressed so far sits in the discarded buffer, so the decision starts over.
+    @Override
+    public void reset() {
+        super.reset();
+        decided = false;
+        gzipStream = null;
+        writer = null;
+        contentLength = -1L;
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (gzipStream != null) {
+            throw new IllegalStateException("Compressed response can't reset its buffer.");
+        }
+        super.resetBuffer();
+    }
+
+    // Writes the gzip trailer, or passes on the content length of a body that was never written.
+    void finish() throws IOException {
+        if (!decided) {
+            if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+            return;
+        }
+
+        if (writer != null) {
+            writer.flush();
+        }
+        if (gzipStream != null) {
+            gzipStream.finish();
+        }
+    }
+
+    private void decide() throws IOException {
+        if (decided) {
+            return;
+        }
+        decided = true;
+
+        boolean compressible = isCompressible(getContentType());
+        if (compressible) {
+            super.addHeader("Vary", "Accept-Encoding");
+        }
+
+        // ranges are served from the identity body and async writers outlive the filter that would finish gzip.
+        boolean compress = compressible && gzipAccepted && !request.isAsyncStarted()
+                && (contentLength < 0 || contentLength >= MIN_COMPRESSED_LENGTH)
+                && getHeader("Content-Encoding") == null && getHeader("Accept-Ranges") == null
+                && getStatus() != SC_NO_CONTENT && getStatus() != SC_NOT_MODIFIED;
+        if (!compress) {
+            if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+            return;
+        }
+
+        super.setHeader("Content-Encoding", "gzip");
+        // the compressed body differs byte by byte, so its validator can only be weak.
+        String eTag = getHeader("ETag");
+        if (eTag != null && eTag.startsWith("\"")) {
+            super.setHeader("ETag", "W/" + eTag);
+        }
+        gzipStream = new GzipOutputStream(super.getOutputStream());
+    }
+
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+
+        String mimeType = contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+        if (mimeType.equals("text/event-stream")) {
+            return false;
+        }
+        return mimeType.startsWith("text/") || mimeType.equals("application/json")
+                || mimeType.equals("application/x-ndjson") || mimeType.equals("application/xml")
+                || mimeType.equals("application/javascript") || mimeType.equals("image/svg+xml");
+    }
+
+    // Flushes with SYNC_FLUSH, so a streamed export still reaches the client piece by piece.
+    private static final class GzipOutputStream extends ServletOutputStream {
+        private final ServletOutputStream target;
+        private final GZIPOutputStream gzip;
+        private boolean finished;
+
+        private GzipOutputStream(ServletOutputStream target) throws IOException {
+            this.target = target;
+            this.gzip = new GZIPOutputStream(target, BUFFER_SIZE, true);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            gzip.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            gzip.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            gzip.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finished = true;
+            gzip.close();
+        }
+
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            gzip.finish();
+            target.flush();
+        }
+
+        @Override
+        public boolean isReady() {
+            return target.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            target.setWriteListener(writeListener);
+        }
+    }
+}
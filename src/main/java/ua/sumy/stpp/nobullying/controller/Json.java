@@ -0,0 +1,41 @@
+package ua.sumy.stpp.nobullying.controller;
+
+final class Json {
+    private Json() {
+    }
+
+    static StringBuilder appendString(StringBuilder builder, String value) {
+        if (value == null) {
+            return builder.append("null");
+        }
+
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"');
+    }
+}
@@ -0,0 +1,20 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+public class MetricsServlet extends HttpServlet {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType(CONTENT_TYPE);
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        ServiceMetrics.getDefault().write(resp.getWriter());
+    }
+}
@@ -1,12 +1,26 @@
 package ua.sumy.stpp.nobullying.controller;
 
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.ReportIntake;
+import ua.sumy.stpp.nobullying.service.SaveOutcome;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
 
 public class NoBullyingServlet extends HttpServlet {
+    private static final long INTAKE_TIMEOUT_MILLIS = 30000L;
+
+    private final Logger log = Logger.getLogger(NoBullyingServlet.class.getName());
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         getServletContext().getRequestDispatcher("/jsp/nobullying.jsp").forward(req, resp);
@@ -14,6 +28,84 @@ public class NoBullyingServlet extends HttpServlet {
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        req.setCharacterEncoding("UTF-8");
+        Report report = new Report(req.getParameter("username"), req.getParameter("text"), new Date());
+
+        ReportIntake reportIntake = Application.get(getServletContext()).getReportIntake();
+        AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(INTAKE_TIMEOUT_MILLIS);
+        Submission submission = new Submission(asyncContext);
+        asyncContext.addListener(submission);
+
+        if (!reportIntake.submit(report, submission)) {
+            log.warning(String.format("Report intake is overloaded (%d queued), rejecting report.",
+                    reportIntake.getQueueDepth()));
+            resp.setHeader("Retry-After", Long.toString(reportIntake.estimateDrainSeconds()));
+            submission.finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many reports, try again later.");
+        }
+    }
+
+    // Completes the request at most once: either with the commit outcome or with the async timeout.
+    private static final class Submission implements ReportIntake.Callback, AsyncListener {
+        private final AsyncContext asyncContext;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Submission(AsyncContext asyncContext) {
+            this.asyncContext = asyncContext;
+        }
+
+        @Override
+        public void completed(SaveOutcome<Report> outcome) {
+            // respond on a container thread so a slow client doesn't stall the intake writer.
+            asyncContext.start(() -> {
+                switch (outcome.getStatus()) {
+                    case SAVED:
+                        finish(HttpServletResponse.SC_CREATED, Long.toString(outcome.getModel().getId()));
+                        break;
+                    case INVALID:
+                        finish(HttpServletResponse.SC_BAD_REQUEST, outcome.getMessage());
+                        break;
+                    default:
+                        finish(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Report wasn't saved.");
+                }
+            });
+        }
+
+        private void finish(int status, String message) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+
+            HttpServletResponse resp = (HttpServletResponse) asyncContext.getResponse();
+            try {
+                resp.setStatus(status);
+                resp.setContentType("text/plain");
+                resp.setCharacterEncoding("UTF-8");
+                resp.getWriter().write(message);
+            } catch (IOException e) {
+                Logger.getLogger(NoBullyingServlet.class.getName()).warning(String.format(
+                        "Error writing report submission response: %s.", e.getMessage()));
+            } finally {
+                asyncContext.complete();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            finish(HttpServletResponse.SC_ACCEPTED, "Report is queued.");
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            finished.set(true);
+        }
 
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
     }
 }
@@ -0,0 +1,103 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+import ua.sumy.stpp.nobullying.service.ratelimit.RateLimiter;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// Limits requests of one route per client address and, when loginParameter is set, per login as well,
+// so spreading attempts at one account over many addresses doesn't help either. Declared once per route
+// in web.xml with its own capacity and period (in seconds).
+public class RateLimitFilter implements Filter {
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final String REJECTED = "nobullying_rate_limit_rejected_total";
+
+    private final Logger log = Logger.getLogger(RateLimitFilter.class.getName());
+
+    private String route;
+    private Set<String> methods;
+    private String loginParameter;
+    private RateLimiter addressLimiter;
+    private RateLimiter loginLimiter;
+    private LongAdder rejectedByAddress;
+    private LongAdder rejectedByLogin;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        route = filterConfig.getInitParameter("route");
+        String methodsParameter = filterConfig.getInitParameter("methods");
+        loginParameter = filterConfig.getInitParameter("loginParameter");
+        try {
+            int capacity = Integer.parseInt(filterConfig.getInitParameter("capacity"));
+            long period = Long.parseLong(filterConfig.getInitParameter("period"));
+            addressLimiter = new RateLimiter(capacity, period, TimeUnit.SECONDS);
+            loginLimiter = new RateLimiter(capacity, period, TimeUnit.SECONDS);
+        } catch (IllegalArgumentException e) {
+            throw new ServletException(String.format("Wrong rate limit of route (%s).", route), e);
+        }
+
+        methods = new HashSet<>(Arrays.asList((methodsParameter != null ? methodsParameter : "POST").split(",")));
+        ServiceMetrics metrics = ServiceMetrics.getDefault();
+        String help = "Requests rejected by rate limits.";
+        rejectedByAddress = metrics.counter(REJECTED, help, String.format("route=\"%s\",key=\"address\"", route));
+        rejectedByLogin = metrics.counter(REJECTED, help, String.format("route=\"%s\",key=\"login\"", route));
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse resp = (HttpServletResponse) response;
+        if (!methods.contains(req.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // the peer address, forwarded headers are up to the client and can't be trusted here.
+        String address = req.getRemoteAddr();
+        long wait = addressLimiter.tryAcquire(address);
+        if (wait > 0) {
+            rejectedByAddress.increment();
+            reject(resp, wait, String.format("address (%s)", address));
+            return;
+        }
+
+        String login = (loginParameter != null) ? req.getParameter(loginParameter) : null;
+        if (login != null && !login.isEmpty()) {
+            wait = loginLimiter.tryAcquire(login.toLowerCase(Locale.ROOT));
+            if (wait > 0) {
+                rejectedByLogin.increment();
+                reject(resp, wait, String.format("login (%s)", login));
+                return;
+            }
+        }
+
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private void reject(HttpServletResponse resp, long waitNanos, String client) throws IOException {
+        log.warning(String.format("Rate limit of route (%s) exceeded by %s.", route, client));
+        long seconds = Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        resp.setHeader("Retry-After", Long.toString(seconds));
+        resp.sendError(SC_TOO_MANY_REQUESTS);
+    }
+}
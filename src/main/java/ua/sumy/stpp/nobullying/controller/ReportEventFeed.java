@@ -0,0 +1,47 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.ReportListener;
+import ua.sumy.stpp.nobullying.service.event.EventBroadcaster;
+
+import java.util.Date;
+
+// Turns committed report changes into events of the reports stream, one JSON object per event.
+class ReportEventFeed implements ReportListener {
+    private final EventBroadcaster broadcaster;
+
+    ReportEventFeed(EventBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    @Override
+    public void reportSaved(Report report, boolean created) {
+        if (!created) {
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder("{\"id\":").append(report.getId()).append(",\"username\":");
+        Json.appendString(builder, report.getUsername()).append(",\"text\":");
+        Json.appendString(builder, report.getText()).append(",\"state\":");
+        Json.appendString(builder, report.getState().name()).append(",\"sentDate\":");
+        Json.appendString(builder, ReportExportFormat.formatDate(report.getSentDate()))
+                .append(",\"duplicateOf\":").append(report.getDuplicateOf())
+                .append(",\"priority\":").append(report.getPriority()).append('}');
+        broadcaster.publish("report-created", builder.toString());
+    }
+
+    @Override
+    public void reportStateChanged(long id, Report.ProcessingState from, Report.ProcessingState to,
+                                   Date changedDate, String actor) {
+        StringBuilder builder = new StringBuilder("{\"id\":").append(id).append(",\"from\":");
+        Json.appendString(builder, from.name()).append(",\"to\":");
+        Json.appendString(builder, to.name()).append(",\"changedDate\":");
+        Json.appendString(builder, ReportExportFormat.formatDate(changedDate)).append('}');
+        broadcaster.publish("report-state-changed", builder.toString());
+    }
+
+    @Override
+    public void reportDeleted(long id, Report.ProcessingState state, String actor) {
+        broadcaster.publish("report-deleted", "{\"id\":" + id + "}");
+    }
+}
@@ -0,0 +1,81 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+enum ReportExportFormat {
+    CSV("text/csv", "csv") {
+        @Override
+        String header() {
+            return "id,username,text,state,sentDate,beginMentoringDate,finishedDate\r\n";
+        }
+
+        @Override
+        void append(StringBuilder builder, Report report) {
+            builder.append(report.getId()).append(',');
+            appendField(builder, report.getUsername()).append(',');
+            appendField(builder, report.getText()).append(',');
+            builder.append(report.getState()).append(',');
+            appendField(builder, formatDate(report.getSentDate())).append(',');
+            appendField(builder, formatDate(report.getBeginMentoringDate())).append(',');
+            appendField(builder, formatDate(report.getFinishedDate())).append("\r\n");
+        }
+
+        private StringBuilder appendField(StringBuilder builder, String value) {
+            if (value == null) {
+                return builder;
+            }
+
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 &&
+                    value.indexOf('\r') < 0) {
+                return builder.append(value);
+            }
+            return builder.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+    },
+
+    NDJSON("application/x-ndjson", "ndjson") {
+        @Override
+        String header() {
+            return "";
+        }
+
+        @Override
+        void append(StringBuilder builder, Report report) {
+            builder.append("{\"id\":").append(report.getId());
+            Json.appendString(builder.append(",\"username\":"), report.getUsername());
+            Json.appendString(builder.append(",\"text\":"), report.getText());
+            Json.appendString(builder.append(",\"state\":"), report.getState().name());
+            Json.appendString(builder.append(",\"sentDate\":"), formatDate(report.getSentDate()));
+            Json.appendString(builder.append(",\"beginMentoringDate\":"), formatDate(report.getBeginMentoringDate()));
+            Json.appendString(builder.append(",\"finishedDate\":"), formatDate(report.getFinishedDate()));
+            builder.append("}\n");
+        }
+    };
+
+    private final String contentType;
+    private final String extension;
+
+    ReportExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    String getContentType() {
+        return contentType;
+    }
+
+    String getExtension() {
+        return extension;
+    }
+
+    abstract String header();
+
+    abstract void append(StringBuilder builder, Report report);
+
+    static String formatDate(Date date) {
+        return (date != null) ? DateTimeFormatter.ISO_INSTANT.format(date.toInstant()) : null;
+    }
+}
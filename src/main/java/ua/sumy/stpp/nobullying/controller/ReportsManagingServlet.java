@@ -1,7 +1,201 @@
 package ua.sumy.stpp.nobullying.controller;
 
-import javax.servlet.annotation.WebServlet;
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.Page;
+import ua.sumy.stpp.nobullying.service.ReportOrder;
+import ua.sumy.stpp.nobullying.service.ReportService;
+import ua.sumy.stpp.nobullying.service.error.BadOperationException;
+import ua.sumy.stpp.nobullying.service.error.BadParametersException;
+import ua.sumy.stpp.nobullying.service.event.EventSubscription;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
 
 public class ReportsManagingServlet extends HttpServlet {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int EXPORT_BATCH_SIZE = 500;
+    private static final int MAX_SEARCH_RESULTS = 500;
+
+    private final Logger log = Logger.getLogger(ReportsManagingServlet.class.getName());
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String accept = req.getHeader("Accept");
+        if (accept != null && accept.contains("text/event-stream")) {
+            streamEvents(req, resp);
+            return;
+        }
+
+        if (ConditionalGet.isNotModified(req, resp, Report.class)) {
+            return;
+        }
+
+        Application application = Application.get(getServletContext());
+        ReportService reportService = application.getReportService(req);
+        try {
+            if (req.getParameter("export") != null) {
+                exportReports(reportService, req, resp);
+            } else if (getOptionalParameter(req, "duplicatesOf") != null) {
+                showDuplicates(reportService, req, resp);
+            } else if (getOptionalParameter(req, "search") != null) {
+                searchReports(application, reportService, req, resp);
+            } else {
+                showReports(reportService, req, resp);
+            }
+        } catch (BadParametersException | IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // Keeps the request open and pushes report events to it, the servlet thread is released right away.
+    private void streamEvents(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("text/event-stream");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(0L);
+        ServletOutputStream out = resp.getOutputStream();
+        EventSubscription subscription = Application.get(getServletContext()).getReportEvents()
+                .subscribe(new ServletEventSink(asyncContext, out));
+        asyncContext.addListener(new EventStreamListener(subscription));
+        out.setWriteListener(new WriteListener() {
+            @Override
+            public void onWritePossible() {
+                subscription.writePossible();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                subscription.close();
+            }
+        });
+    }
+
+    private void showReports(ReportService reportService, HttpServletRequest req, HttpServletResponse resp)
+            throws BadParametersException, ServletException, IOException {
+        String order = getOptionalParameter(req, "order");
+        String state = getOptionalParameter(req, "state");
+        String size = getOptionalParameter(req, "size");
+
+        Page<Report> page = reportService.getReportsPage(
+                (order != null) ? ReportOrder.valueOf(order.toUpperCase()) : ReportOrder.ID,
+                (state != null) ? Report.ProcessingState.valueOf(state.toUpperCase()) : null,
+                getOptionalParameter(req, "cursor"),
+                (size != null) ? Integer.parseInt(size) : DEFAULT_PAGE_SIZE,
+                !"hide".equals(getOptionalParameter(req, "duplicates")));
+
+        req.setAttribute("reports", page.getModels());
+        req.setAttribute("nextCursor", page.getNextCursor());
+        getServletContext().getRequestDispatcher("/jsp/reports.jsp").forward(req, resp);
+    }
+
+    // The first report of an incident followed by all reports repeating it.
+    private void showDuplicates(ReportService reportService, HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+        long id = Long.parseLong(req.getParameter("duplicatesOf"));
+        List<Report> reports = new ArrayList<>(reportService.getReportsByIds(new long[]{id}));
+        reports.addAll(reportService.getDuplicates(id));
+
+        req.setAttribute("reports", reports);
+        getServletContext().getRequestDispatcher("/jsp/reports.jsp").forward(req, resp);
+    }
+
+    private void searchReports(Application application, ReportService reportService, HttpServletRequest req,
+                               HttpServletResponse resp) throws ServletException, IOException {
+        String state = getOptionalParameter(req, "state");
+        String size = getOptionalParameter(req, "size");
+
+        long[] ids = application.getReportTextIndex().search(req.getParameter("search"),
+                (state != null) ? Report.ProcessingState.valueOf(state.toUpperCase()) : null,
+                (size != null) ? Math.min(Integer.parseInt(size), MAX_SEARCH_RESULTS) : DEFAULT_PAGE_SIZE);
+
+        req.setAttribute("reports", reportService.getReportsByIds(ids));
+        getServletContext().getRequestDispatcher("/jsp/reports.jsp").forward(req, resp);
+    }
+
+    private void exportReports(ReportService reportService, HttpServletRequest req, HttpServletResponse resp)
+            throws BadParametersException, IOException {
+        ReportExportFormat format = ReportExportFormat.valueOf(req.getParameter("export").toUpperCase());
+
+        resp.setContentType(format.getContentType());
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Content-Disposition", String.format("attachment; filename=\"reports.%s\"",
+                format.getExtension()));
+
+        PrintWriter writer = resp.getWriter();
+        writer.write(format.header());
+
+        StringBuilder builder = new StringBuilder();
+        long exported;
+        try {
+            exported = reportService.streamReports(EXPORT_BATCH_SIZE, reports -> {
+                builder.setLength(0);
+                for (Report report: reports) {
+                    format.append(builder, report);
+                }
+                writer.append(builder);
+                // flushing each batch commits the response and sends it chunked instead of buffering it whole.
+                writer.flush();
+                if (writer.checkError()) {
+                    throw new IOException("Client closed connection during export.");
+                }
+            });
+        } catch (BadOperationException e) {
+            log.severe(String.format("Export as %s failed: %s", format, e.getMessage()));
+            if (!resp.isCommitted()) {
+                resp.reset();
+                resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Export failed.");
+                return;
+            }
+            // the status is already sent, failing the request drops the connection before the final chunk,
+            // so the client sees a broken download instead of a complete but truncated file.
+            throw new IOException("Export aborted.", e);
+        }
+        log.info(String.format("Exported (%d) reports as %s.", exported, format));
+    }
+
+    private static String getOptionalParameter(HttpServletRequest req, String name) {
+        String value = req.getParameter(name);
+        return (value != null && !value.isEmpty()) ? value : null;
+    }
+
+    private static final class EventStreamListener implements AsyncListener {
+        private final EventSubscription subscription;
+
+        EventStreamListener(EventSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            subscription.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            subscription.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            subscription.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.servlet.ServletRequest;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// Entity managers opened on demand for one request and closed by EntityManagerFilter when it completes.
+final class RequestEntityManagers {
+    private static final String ATTRIBUTE = RequestEntityManagers.class.getName();
+
+    private final Map<EntityManagerFactory, EntityManager> entityManagers = new IdentityHashMap<>(2);
+    private final Logger log = Logger.getLogger(RequestEntityManagers.class.getName());
+
+    private RequestEntityManagers() {
+    }
+
+    static RequestEntityManagers of(ServletRequest request) {
+        RequestEntityManagers requestEntityManagers = (RequestEntityManagers) request.getAttribute(ATTRIBUTE);
+        if (requestEntityManagers == null) {
+            requestEntityManagers = new RequestEntityManagers();
+            request.setAttribute(ATTRIBUTE, requestEntityManagers);
+        }
+        return requestEntityManagers;
+    }
+
+    static void close(ServletRequest request) {
+        RequestEntityManagers requestEntityManagers = (RequestEntityManagers) request.getAttribute(ATTRIBUTE);
+        if (requestEntityManagers != null) {
+            request.removeAttribute(ATTRIBUTE);
+            requestEntityManagers.close();
+        }
+    }
+
+    EntityManager get(EntityManagerFactory entityManagerFactory) {
+        return entityManagers.computeIfAbsent(entityManagerFactory, EntityManagerFactory::createEntityManager);
+    }
+
+    private void close() {
+        for (EntityManager entityManager: entityManagers.values()) {
+            try {
+                EntityTransaction entityTransaction = entityManager.getTransaction();
+                if (entityTransaction.isActive()) {
+                    log.warning("Rolling back transaction left open by request.");
+                    entityTransaction.rollback();
+                }
+            } catch (Exception e) {
+                log.severe(String.format("Error rolling back request transaction: %s.", e.getMessage()));
+            } finally {
+                entityManager.close();
+            }
+        }
+        entityManagers.clear();
+    }
+}
@@ -0,0 +1,42 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import ua.sumy.stpp.nobullying.service.event.EventSink;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import java.io.IOException;
+
+// Event stream of one async request, its output stream is in non-blocking mode.
+class ServletEventSink implements EventSink {
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+
+    ServletEventSink(AsyncContext asyncContext, ServletOutputStream out) {
+        this.asyncContext = asyncContext;
+        this.out = out;
+    }
+
+    @Override
+    public boolean isReady() {
+        return out.isReady();
+    }
+
+    @Override
+    public void write(byte[] frame) throws IOException {
+        out.write(frame);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            // already completed by the container after an error or a closed connection.
+        }
+    }
+}
@@ -1,7 +1,38 @@
 package ua.sumy.stpp.nobullying.controller;
 
-import javax.servlet.annotation.WebServlet;
+import ua.sumy.stpp.nobullying.model.User;
+import ua.sumy.stpp.nobullying.service.Page;
+import ua.sumy.stpp.nobullying.service.error.BadParametersException;
+
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 public class UsersManagingServlet extends HttpServlet {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (ConditionalGet.isNotModified(req, resp, User.class)) {
+            return;
+        }
+
+        String cursor = req.getParameter("cursor");
+        String size = req.getParameter("size");
+        Page<User> page;
+        try {
+            page = Application.get(getServletContext()).getUserService(req).getUsersPage(
+                    (cursor != null && !cursor.isEmpty()) ? cursor : null,
+                    (size != null && !size.isEmpty()) ? Integer.parseInt(size) : DEFAULT_PAGE_SIZE);
+        } catch (BadParametersException | IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        req.setAttribute("users", page.getModels());
+        req.setAttribute("nextCursor", page.getNextCursor());
+        getServletContext().getRequestDispatcher("/jsp/users.jsp").forward(req, resp);
+    }
 }
@@ -0,0 +1,96 @@
+package ua.sumy.stpp.nobullying.model;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+// Metadata of a file attached to a report, the content itself lives in the attachment store by its hash.
+@Entity
+public class Attachment implements Model, Serializable {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @ManyToOne
+    private Report report;
+
+    private String fileName;
+    private String contentType;
+    private String sha256;
+    private long size;
+
+    private Date createdDate;
+
+    public Attachment() {
+    }
+
+    public Attachment(Report report, String fileName, String contentType, String sha256, long size,
+                      Date createdDate) {
+        this.report = report;
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.sha256 = sha256;
+        this.size = size;
+        this.createdDate = createdDate;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public Report getReport() {
+        return report;
+    }
+
+    public void setReport(Report report) {
+        this.report = report;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public Date getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(Date createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    public boolean isNull() {
+        return false;
+    }
+}
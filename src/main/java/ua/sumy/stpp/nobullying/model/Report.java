@@ -3,7 +3,9 @@ package ua.sumy.stpp.nobullying.model;
 
 import javax.persistence.*;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 @Entity
 @NamedQuery(name = "fetchAllReports", query = "SELECT r FROM Report r")
@@ -15,12 +17,23 @@ public class Report implements Model, Serializable {
     private String username;
     private String text;
 
-    // todo: fields for photo, video and audio files.
+    // photo, video and audio files, stored outside of the database.
+    @OneToMany(mappedBy = "report", cascade = CascadeType.REMOVE)
+    private List<Attachment> attachments = new ArrayList<>();
 
     private Date sentDate;
     private Date beginMentoringDate;
     private Date finishedDate;
 
+    private String leaseOwner;
+    private Date leaseExpiresDate;
+
+    // urgency scored from the text when the report comes in, higher is more urgent.
+    private int priority;
+
+    // id of the earlier report this one repeats in other words, 0 for the first report of an incident.
+    private long duplicateOf;
+
     public enum ProcessingState {
         NEW, MODERATING, FINISHED
     }
@@ -28,6 +41,9 @@ public class Report implements Model, Serializable {
     @Enumerated
     private ProcessingState state = ProcessingState.NEW;
 
+    @Version
+    private long version;
+
     public Report() {
     }
 
@@ -61,6 +77,14 @@ public class Report implements Model, Serializable {
         this.text = text;
     }
 
+    public List<Attachment> getAttachments() {
+        return attachments;
+    }
+
+    public void setAttachments(List<Attachment> attachments) {
+        this.attachments = attachments;
+    }
+
     public Date getSentDate() {
         return sentDate;
     }
@@ -85,6 +109,38 @@ public class Report implements Model, Serializable {
         this.finishedDate = finishedDate;
     }
 
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public Date getLeaseExpiresDate() {
+        return leaseExpiresDate;
+    }
+
+    public void setLeaseExpiresDate(Date leaseExpiresDate) {
+        this.leaseExpiresDate = leaseExpiresDate;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public long getDuplicateOf() {
+        return duplicateOf;
+    }
+
+    public void setDuplicateOf(long duplicateOf) {
+        this.duplicateOf = duplicateOf;
+    }
+
     public ProcessingState getState() {
         return state;
     }
@@ -93,6 +149,14 @@ public class Report implements Model, Serializable {
         this.state = state;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public boolean isNull() {
         return false;
     }
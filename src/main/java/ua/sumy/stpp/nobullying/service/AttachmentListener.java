@@ -0,0 +1,9 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Attachment;
+
+// Notified by AttachmentService after an attachment is committed, on the thread that made it.
+public interface AttachmentListener {
+    default void attachmentSaved(Attachment attachment) {
+    }
+}
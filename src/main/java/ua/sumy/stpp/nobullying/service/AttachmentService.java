@@ -0,0 +1,122 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Attachment;
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.attachment.AttachmentStore;
+import ua.sumy.stpp.nobullying.service.attachment.StoredContent;
+import ua.sumy.stpp.nobullying.service.error.BadOperationException;
+import ua.sumy.stpp.nobullying.service.error.BadParametersException;
+import ua.sumy.stpp.nobullying.service.error.ModelNotFoundException;
+import ua.sumy.stpp.nobullying.service.metrics.OperationMetrics;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Logger;
+
+public class AttachmentService extends Service {
+    private static final OperationMetrics GET_ATTACHMENT_BY_ID =
+            ServiceMetrics.operation("AttachmentService.getAttachmentById");
+    private static final OperationMetrics ATTACH_TO_REPORT =
+            ServiceMetrics.operation("AttachmentService.attachToReport");
+
+    // Only media a browser renders without running anything, svg and html would be stored xss.
+    private static final Set<String> RASTER_IMAGE_TYPES = new HashSet<>(Arrays.asList("image/jpeg", "image/png",
+            "image/gif", "image/webp", "image/bmp"));
+
+    private final AttachmentStore attachmentStore;
+    private final List<AttachmentListener> listeners;
+    private final Logger log = Logger.getLogger(AttachmentService.class.getName());
+
+    public AttachmentService(EntityManager entityManager, AttachmentStore attachmentStore) {
+        this(entityManager, attachmentStore, Collections.emptyList());
+    }
+
+    public AttachmentService(EntityManager entityManager, AttachmentStore attachmentStore,
+                             List<AttachmentListener> listeners) {
+        this(entityManager, attachmentStore, listeners, new ModelCaches());
+    }
+
+    public AttachmentService(EntityManager entityManager, AttachmentStore attachmentStore,
+                             List<AttachmentListener> listeners, ModelCaches modelCaches) {
+        super(entityManager, modelCaches);
+        this.attachmentStore = attachmentStore;
+        this.listeners = listeners;
+    }
+
+    public Attachment getAttachmentById(long id) throws ModelNotFoundException {
+        return GET_ATTACHMENT_BY_ID.time(() -> getModelById(Attachment.class, id));
+    }
+
+    // The content is stored before the metadata, an attachment never points to missing content.
+    public Attachment attachToReport(long reportId, String fileName, String contentType, InputStream content,
+                                     long maxSize)
+            throws ModelNotFoundException, BadParametersException, BadOperationException, IOException {
+        return ATTACH_TO_REPORT.<Attachment, ModelNotFoundException, BadParametersException, BadOperationException,
+                IOException>time(() -> {
+            if (anyIsNull(fileName, contentType, content) || anyIsEmpty(fileName, contentType)) {
+                log.warning("Attempt to attach file without name, content type or content.");
+                throw new BadParametersException("Attaching file without name, content type or content permitted.");
+            }
+            String type = normalizeContentType(contentType);
+            if (!isAllowedContentType(type)) {
+                log.warning(String.format("Attempt to attach file of type (%s).", type));
+                throw new BadParametersException("Attaching file of this content type permitted.");
+            }
+
+            Report report = getManagedModelById(Report.class, reportId);
+            StoredContent storedContent = attachmentStore.store(content, maxSize);
+            Attachment attachment = new Attachment(report, fileName, type, storedContent.getSha256(),
+                    storedContent.getSize(), new Date());
+            if (!saveModel(attachment)) {
+                throw new BadOperationException("Attachment wasn't saved.");
+            }
+
+            report.getAttachments().add(attachment);
+            invalidateModels(Report.class, Collections.singletonList(reportId));
+            log.info(String.format("Attached (%s) to report (%d).", storedContent.getSha256(), reportId));
+            notifyListeners(attachment);
+            return attachment;
+        });
+    }
+
+    public static boolean isAllowedContentType(String contentType) {
+        return contentType != null && (RASTER_IMAGE_TYPES.contains(contentType) ||
+                contentType.startsWith("video/") || contentType.startsWith("audio/"));
+    }
+
+    public Path getContentPath(Attachment attachment) {
+        return attachmentStore.resolve(attachment.getSha256());
+    }
+
+    public Path getThumbnailPath(Attachment attachment) {
+        return attachmentStore.resolveThumbnail(attachment.getSha256());
+    }
+
+    // Drops parameters like charset, they don't matter for media and would let a type slip past the check.
+    private static String normalizeContentType(String contentType) {
+        int parameters = contentType.indexOf(';');
+        String type = (parameters >= 0) ? contentType.substring(0, parameters) : contentType;
+        return type.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void notifyListeners(Attachment attachment) {
+        for (AttachmentListener listener: listeners) {
+            try {
+                listener.attachmentSaved(attachment);
+            } catch (RuntimeException e) {
+                log.severe(String.format("Attachment listener (%s) failed: %s.", listener.getClass().getName(),
+                        e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Model;
+
+import java.io.IOException;
+import java.util.List;
+
+@FunctionalInterface
+public interface ModelBatchConsumer<M extends Model> {
+    void accept(List<M> models) throws IOException;
+}
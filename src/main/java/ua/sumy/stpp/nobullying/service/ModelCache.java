@@ -0,0 +1,121 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Model;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Bounded LRU of models of one type keyed by id, entries live at most ttl. One cache of every type is shared
+// by all entity managers, so a cached model may belong to another one: it's for reading, paths that change
+// a model load their own managed instance and invalidate the cached one.
+public final class ModelCache {
+    static final int DEFAULT_CAPACITY = 1024;
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Map<Long, Entry> entries;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    ModelCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS, System::nanoTime);
+    }
+
+    ModelCache(int capacity, long ttlMillis, LongSupplier clock) {
+        this(capacity, ttlMillis, clock, new LongAdder(), new LongAdder(), new LongAdder());
+    }
+
+    ModelCache(int capacity, long ttlMillis, LongSupplier clock, LongAdder hits, LongAdder misses,
+               LongAdder evictions) {
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.clock = clock;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > ModelCache.this.capacity) {
+                    ModelCache.this.evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    synchronized Model get(long id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        if (clock.getAsLong() - entry.createdAt > ttlNanos) {
+            entries.remove(id);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.model;
+    }
+
+    synchronized void put(long id, Model model) {
+        entries.put(id, new Entry(model, clock.getAsLong()));
+    }
+
+    // Looks up a model without counting a hit or a miss.
+    synchronized Model peek(long id) {
+        Entry entry = entries.get(id);
+        return (entry != null) ? entry.model : null;
+    }
+
+    synchronized void invalidate(long id) {
+        entries.remove(id);
+    }
+
+    synchronized void invalidate(Collection<Long> ids) {
+        entries.keySet().removeAll(ids);
+    }
+
+    synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    private static final class Entry {
+        private final Model model;
+        private final long createdAt;
+
+        private Entry(Model model, long createdAt) {
+            this.model = model;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Model;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// The model caches of the application, one per model type, created on first use and handed to every service.
+public final class ModelCaches {
+    private static final String HITS = "nobullying_model_cache_hits_total";
+    private static final String MISSES = "nobullying_model_cache_misses_total";
+    private static final String EVICTIONS = "nobullying_model_cache_evictions_total";
+
+    private final ServiceMetrics metrics;
+    private final ConcurrentMap<Class<? extends Model>, ModelCache> caches = new ConcurrentHashMap<>();
+
+    // Caches of their own, counted but not exported.
+    public ModelCaches() {
+        this(null);
+    }
+
+    public ModelCaches(ServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    ModelCache of(Class<? extends Model> modelClass) {
+        return caches.computeIfAbsent(modelClass, this::createCache);
+    }
+
+    private ModelCache createCache(Class<? extends Model> modelClass) {
+        if (metrics == null) {
+            return new ModelCache();
+        }
+
+        String labels = String.format("model=\"%s\"", modelClass.getSimpleName());
+        return new ModelCache(ModelCache.DEFAULT_CAPACITY, ModelCache.DEFAULT_TTL_MILLIS, System::nanoTime,
+                metrics.counter(HITS, "Model cache lookups answered from the cache.", labels),
+                metrics.counter(MISSES, "Model cache lookups that went to the database.", labels),
+                metrics.counter(EVICTIONS, "Models dropped from the cache as least recently used or expired.",
+                        labels));
+    }
+}
@@ -0,0 +1,9 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Model;
+import ua.sumy.stpp.nobullying.service.error.BadParametersException;
+
+@FunctionalInterface
+interface ModelValidator<M extends Model> {
+    void validate(M model) throws BadParametersException;
+}
@@ -0,0 +1,45 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Version per model type, bumped after every committed change of that type. Views can tell whether anything they
+// show could have changed without touching the database.
+public final class ModelVersions {
+    // versions restart with the application, so they're qualified by its start time.
+    private static final long STARTED = System.currentTimeMillis();
+    private static final ConcurrentMap<Class<?>, Version> VERSIONS = new ConcurrentHashMap<>();
+
+    private ModelVersions() {
+    }
+
+    public static long getVersion(Class<? extends Model> modelClass) {
+        return getModelVersion(modelClass).counter.get();
+    }
+
+    public static long getLastModified(Class<? extends Model> modelClass) {
+        return getModelVersion(modelClass).modified;
+    }
+
+    public static String getETag(Class<? extends Model> modelClass) {
+        return String.format("\"%s-%d-%d\"", modelClass.getSimpleName(), STARTED, getVersion(modelClass));
+    }
+
+    static void bump(Class<?> modelClass) {
+        Version version = getModelVersion(modelClass);
+        version.modified = System.currentTimeMillis();
+        version.counter.incrementAndGet();
+    }
+
+    private static Version getModelVersion(Class<?> modelClass) {
+        return VERSIONS.computeIfAbsent(modelClass, key -> new Version());
+    }
+
+    private static final class Version {
+        private final AtomicLong counter = new AtomicLong();
+        private volatile long modified = STARTED;
+    }
+}
@@ -0,0 +1,28 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Model;
+
+import java.util.List;
+
+public class Page<M extends Model> {
+    private final List<M> models;
+    private final String nextCursor;
+
+    Page(List<M> models, String nextCursor) {
+        this.models = models;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<M> getModels() {
+        return models;
+    }
+
+    // Opaque token for the following page, null on the last one.
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,51 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.service.error.BadParametersException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Keyset position of the last model on a page, e.g. (id) or (sentDate, id), as a url-safe token.
+final class PageCursor {
+    private static final String SEPARATOR = ":";
+
+    private PageCursor() {
+    }
+
+    static String encode(String kind, long... values) {
+        StringBuilder builder = new StringBuilder(kind);
+        for (long value: values) {
+            builder.append(SEPARATOR).append(value);
+        }
+        byte[] bytes = builder.toString().getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    static long[] decode(String cursor, String kind, int size) throws BadParametersException {
+        if (cursor == null) {
+            return null;
+        }
+
+        String[] parts;
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+            parts = new String(bytes, StandardCharsets.US_ASCII).split(SEPARATOR);
+        } catch (IllegalArgumentException e) {
+            throw new BadParametersException("Malformed page cursor.");
+        }
+
+        if (parts.length != size + 1 || !parts[0].equals(kind)) {
+            throw new BadParametersException("Page cursor doesn't match requested order.");
+        }
+
+        long[] values = new long[size];
+        try {
+            for (int i = 0; i < size; i++) {
+                values[i] = Long.parseLong(parts[i + 1]);
+            }
+        } catch (NumberFormatException e) {
+            throw new BadParametersException("Malformed page cursor.");
+        }
+        return values;
+    }
+}
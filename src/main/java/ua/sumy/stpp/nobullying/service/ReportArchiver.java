@@ -0,0 +1,58 @@
+package ua.sumy.stpp.nobullying.service;
+
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Periodically moves reports finished longer than maxAgeMillis ago into the archive.
+// The archiver thread is the only user of the report service and of its entity manager.
+public class ReportArchiver {
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    private static final long INITIAL_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ReportService reportService;
+    private final long maxAgeMillis;
+    private final long intervalMillis;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+    private final Logger log = Logger.getLogger(ReportArchiver.class.getName());
+
+    public ReportArchiver(ReportService reportService, long maxAgeMillis, long intervalMillis, int batchSize) {
+        this.reportService = reportService;
+        this.maxAgeMillis = maxAgeMillis;
+        this.intervalMillis = intervalMillis;
+        this.batchSize = batchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "report-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::archive, INITIAL_DELAY_MILLIS, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Lets a running batch finish, a batch cut short would leave its reports in the database and the archive.
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int archive() {
+        try {
+            return reportService.archiveReports(new Date(System.currentTimeMillis() - maxAgeMillis), batchSize);
+        } catch (Exception e) {
+            log.severe(String.format("Error archiving reports: %s.", e.getMessage()));
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.metrics.OperationMetrics;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// Bounded queue of submitted reports drained by a single writer that group-commits them through ReportService.
+// The writer thread is the only user of the report service and of its entity manager.
+public class ReportIntake {
+    public interface Callback {
+        void completed(SaveOutcome<Report> outcome);
+    }
+
+    private static final long POLL_TIMEOUT_MILLIS = 100L;
+    private static final long STOP_TIMEOUT_MILLIS = 10000L;
+    // whole group commits, saveReports() itself is timed per report batch as well.
+    private static final OperationMetrics COMMIT = ServiceMetrics.operation("ReportIntake.commit");
+
+    private final ReportService reportService;
+    private final BlockingQueue<Submission> queue;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final Thread writer;
+    private final Logger log = Logger.getLogger(ReportIntake.class.getName());
+
+    private volatile boolean running;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder committedReports = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final AtomicLong lastCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    public ReportIntake(ReportService reportService, int capacity, int maxBatchSize) {
+        this(reportService, new ArrayBlockingQueue<>(capacity), maxBatchSize);
+    }
+
+    ReportIntake(ReportService reportService, BlockingQueue<Submission> queue, int maxBatchSize) {
+        this.reportService = reportService;
+        this.queue = queue;
+        this.capacity = queue.remainingCapacity();
+        this.maxBatchSize = maxBatchSize;
+        this.writer = new Thread(this::drain, "report-intake");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        writer.start();
+        ServiceMetrics metrics = ServiceMetrics.getDefault();
+        metrics.registerGauge("nobullying_report_intake_queue_depth", "Reports waiting to be committed.",
+                queue::size);
+        metrics.registerGauge("nobullying_report_intake_capacity", "Reports the intake queue holds at most.",
+                () -> capacity);
+    }
+
+    // Stops accepting reports and waits for the writer to commit the queued ones.
+    public void stop() {
+        running = false;
+        try {
+            writer.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            log.severe(String.format("Report intake stopped with (%d) reports still queued.", queue.size()));
+        }
+    }
+
+    // Returns false without blocking when the intake is overloaded or stopped.
+    public boolean submit(Report report, Callback callback) {
+        Submission submission = new Submission(report, callback);
+        if (!running || !queue.offer(submission)) {
+            rejected.increment();
+            return false;
+        }
+        // stop() may have cleared running after the check above and the writer may have found the queue empty
+        // and quit, the submission is taken back then. If it's gone already the writer drained it.
+        if (!running && queue.remove(submission)) {
+            rejected.increment();
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    // Rough time to work off the current queue, for Retry-After.
+    public long estimateDrainSeconds() {
+        long reports = committedReports.sum();
+        long averageNanos = (reports > 0) ? commitNanos.sum() / reports : 0L;
+        return Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(averageNanos * queue.size()) + 1L);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    public long getCommittedReports() {
+        return committedReports.sum();
+    }
+
+    public long getCommitNanos() {
+        return commitNanos.sum();
+    }
+
+    public long getLastCommitNanos() {
+        return lastCommitNanos.get();
+    }
+
+    public long getMaxCommitNanos() {
+        return maxCommitNanos.get();
+    }
+
+    private void drain() {
+        List<Submission> batch = new ArrayList<>(maxBatchSize);
+        List<Report> reports = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+            } catch (InterruptedException e) {
+                log.warning("Report intake writer interrupted.");
+                running = false;
+                continue;
+            }
+
+            for (Submission submission: batch) {
+                reports.add(submission.report);
+            }
+            commit(batch, reports);
+            batch.clear();
+            reports.clear();
+        }
+        log.info("Report intake writer stopped.");
+    }
+
+    void commit(List<Submission> batch, List<Report> reports) {
+        long start = System.nanoTime();
+        List<SaveOutcome<Report>> outcomes = null;
+        try {
+            outcomes = reportService.saveReports(reports, reports.size());
+        } catch (Exception e) {
+            log.severe(String.format("Error committing batch of (%d) reports: %s.", reports.size(), e.getMessage()));
+            COMMIT.failed(e);
+        }
+        long elapsed = System.nanoTime() - start;
+        COMMIT.record(start);
+
+        commits.increment();
+        commitNanos.add(elapsed);
+        lastCommitNanos.set(elapsed);
+        maxCommitNanos.accumulateAndGet(elapsed, Math::max);
+
+        for (int i = 0; i < batch.size(); i++) {
+            SaveOutcome<Report> outcome = (outcomes != null) ? outcomes.get(i) :
+                    new SaveOutcome<>(reports.get(i), SaveOutcome.Status.FAILED, "Batch commit failed.");
+            if (outcome.isSaved()) {
+                committedReports.increment();
+            }
+            try {
+                batch.get(i).callback.completed(outcome);
+            } catch (RuntimeException e) {
+                log.warning(String.format("Error completing report submission: %s.", e.getMessage()));
+            }
+        }
+    }
+
+    static final class Submission {
+        private final Report report;
+        private final Callback callback;
+
+        Submission(Report report, Callback callback) {
+            this.report = report;
+            this.callback = callback;
+        }
+    }
+}
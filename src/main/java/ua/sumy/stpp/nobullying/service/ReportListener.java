@@ -0,0 +1,27 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.util.Date;
+
+// Notified by ReportService after a report change is committed, on the thread that made it.
+// reportSaving is the exception: it comes before a new valid report is saved and may still change it.
+// actor is the login of the moderator or admin who made the change.
+public interface ReportListener {
+    default void reportSaving(Report report) {
+    }
+
+    default void reportSaved(Report report, boolean created) {
+    }
+
+    default void reportStateChanged(long id, Report.ProcessingState from, Report.ProcessingState to,
+                                    Date changedDate, String actor) {
+    }
+
+    default void reportDeleted(long id, Report.ProcessingState state, String actor) {
+    }
+
+    // The finished report left the database for the archive, where ReportService.getReportById() still finds it.
+    default void reportArchived(long id) {
+    }
+}
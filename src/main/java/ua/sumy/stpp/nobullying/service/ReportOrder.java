@@ -0,0 +1,7 @@
+package ua.sumy.stpp.nobullying.service;
+
+public enum ReportOrder {
+    ID, SENT_DATE,
+    // most urgent first, see Report.getPriority().
+    PRIORITY
+}
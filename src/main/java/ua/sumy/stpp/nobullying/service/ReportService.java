@@ -1,61 +1,569 @@
 package ua.sumy.stpp.nobullying.service;
 
+import ua.sumy.stpp.nobullying.model.Attachment;
 import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.archive.ReportArchive;
 import ua.sumy.stpp.nobullying.service.error.BadOperationException;
 import ua.sumy.stpp.nobullying.service.error.BadParametersException;
 import ua.sumy.stpp.nobullying.service.error.ModelNotFoundException;
+import ua.sumy.stpp.nobullying.service.metrics.OperationMetrics;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.NoResultException;
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
-class ReportService extends Service {
+public class ReportService extends Service {
+
+    private static final OperationMetrics GET_REPORT_BY_ID = ServiceMetrics.operation("ReportService.getReportById");
+    private static final OperationMetrics GET_ALL_REPORTS = ServiceMetrics.operation("ReportService.getAllReports");
+    private static final OperationMetrics GET_REPORTS_BY_IDS =
+            ServiceMetrics.operation("ReportService.getReportsByIds");
+    private static final OperationMetrics GET_REPORTS_PAGE = ServiceMetrics.operation("ReportService.getReportsPage");
+    private static final OperationMetrics GET_DUPLICATES = ServiceMetrics.operation("ReportService.getDuplicates");
+    private static final OperationMetrics STREAM_REPORTS = ServiceMetrics.operation("ReportService.streamReports");
+    private static final OperationMetrics BEGIN_MODERATING_REPORT =
+            ServiceMetrics.operation("ReportService.beginModeratingReport");
+    private static final OperationMetrics FINISH_MODERATING_REPORT =
+            ServiceMetrics.operation("ReportService.finishModeratingReport");
+    private static final OperationMetrics CHANGE_REPORT_STATE =
+            ServiceMetrics.operation("ReportService.changeReportState");
+    private static final OperationMetrics CLAIM_REPORTS = ServiceMetrics.operation("ReportService.claimReports");
+    private static final OperationMetrics RELEASE_REPORT = ServiceMetrics.operation("ReportService.releaseReport");
+    private static final OperationMetrics COUNT_REPORTS_BY_STATE =
+            ServiceMetrics.operation("ReportService.countReportsByState");
+    private static final OperationMetrics SAVE_REPORT = ServiceMetrics.operation("ReportService.saveReport");
+    private static final OperationMetrics SAVE_REPORTS = ServiceMetrics.operation("ReportService.saveReports");
+    private static final OperationMetrics DELETE_REPORT = ServiceMetrics.operation("ReportService.deleteReport");
+    private static final OperationMetrics DELETE_REPORTS = ServiceMetrics.operation("ReportService.deleteReports");
+    private static final OperationMetrics ARCHIVE_REPORTS = ServiceMetrics.operation("ReportService.archiveReports");
+
     private final EntityManager entityManager;
+    private final List<ReportListener> listeners;
+    // finished reports moved out of the database, null when the service doesn't archive.
+    private final ReportArchive archive;
     private final Logger log = Logger.getLogger(ReportService.class.getName());
 
-    ReportService(EntityManager entityManager) {
-        super(entityManager);
+    public ReportService(EntityManager entityManager) {
+        this(entityManager, Collections.emptyList());
+    }
+
+    public ReportService(EntityManager entityManager, List<ReportListener> listeners) {
+        this(entityManager, listeners, null);
+    }
+
+    public ReportService(EntityManager entityManager, List<ReportListener> listeners, ReportArchive archive) {
+        this(entityManager, listeners, archive, new ModelCaches());
+    }
+
+    public ReportService(EntityManager entityManager, List<ReportListener> listeners, ReportArchive archive,
+                         ModelCaches modelCaches) {
+        super(entityManager, modelCaches);
         this.entityManager = entityManager;
+        this.listeners = listeners;
+        this.archive = archive;
     }
 
+    // Falls back to the archive, an archived report is a detached copy that can't be changed any more.
     Report getReportById(long id) throws ModelNotFoundException {
-        return getModelById(Report.class, id);
+        return GET_REPORT_BY_ID.time(() -> {
+            try {
+                return getModelById(Report.class, id);
+            } catch (ModelNotFoundException e) {
+                Report report = getArchivedReport(id);
+                if (report == null) {
+                    throw e;
+                }
+                return report;
+            }
+        });
     }
 
     List<Report> getAllReports() {
-        return getAllModels("fetchAllReports");
+        return GET_ALL_REPORTS.time(() -> getAllModels("fetchAllReports"));
+    }
+
+    // Loads reports in one query and returns them in the order of ids, skipping missing ones.
+    public List<Report> getReportsByIds(long[] ids) {
+        return GET_REPORTS_BY_IDS.time(() -> {
+            if (ids.length == 0) {
+                return new LinkedList<>();
+            }
+
+            StringBuilder queryText = new StringBuilder("SELECT r FROM Report r WHERE r.id IN (");
+            for (int i = 0; i < ids.length; i++) {
+                queryText.append((i > 0) ? ", :id" : ":id").append(i);
+            }
+            Query query = entityManager.createQuery(queryText.append(")").toString());
+            for (int i = 0; i < ids.length; i++) {
+                query.setParameter("id" + i, ids[i]);
+            }
+
+            Map<Long, Report> reports = new HashMap<>();
+            for (Report report: this.<Report>getAllModels(query)) {
+                reports.put(report.getId(), report);
+            }
+
+            List<Report> orderedReports = new ArrayList<>(reports.size());
+            for (long id: ids) {
+                Report report = reports.get(id);
+                if (report != null) {
+                    orderedReports.add(report);
+                }
+            }
+            return orderedReports;
+        });
     }
 
-    void beginModeratingReport(long id) throws ModelNotFoundException, BadOperationException {
-        Report report = getReportById(id);
-        Report.ProcessingState state = report.getState();
+    public Page<Report> getReportsPage(ReportOrder order, Report.ProcessingState state, String cursor, int pageSize)
+            throws BadParametersException {
+        return getReportsPage(order, state, cursor, pageSize, true);
+    }
 
-        if (state == Report.ProcessingState.MODERATING) {
-            log.warning(String.format("Attempt to moderate already moderating report (%d).", id));
-            throw new BadOperationException("Report cannot be moderated twice!");
+    // Without duplicates a page lists only the first report of every incident, see getDuplicates().
+    public Page<Report> getReportsPage(ReportOrder order, Report.ProcessingState state, String cursor, int pageSize,
+                                       boolean withDuplicates) throws BadParametersException {
+        return GET_REPORTS_PAGE.time(() -> {
+            if (anyIsNull(order)) {
+                log.warning("Attempt to get reports page without order.");
+                throw new BadParametersException("Getting reports page without order permitted.");
+            }
+
+            checkPageSize(pageSize);
+            return getModelsPage(createReportsPageQuery(order, state, cursor, withDuplicates), pageSize,
+                    (Report report) -> encodeCursor(order, report));
+        });
+    }
+
+    private Query createReportsPageQuery(ReportOrder order, Report.ProcessingState state, String cursor,
+                                         boolean withDuplicates) throws BadParametersException {
+        List<String> conditions = new LinkedList<>();
+        if (state != null) {
+            conditions.add("r.state = :state");
+        }
+        if (!withDuplicates) {
+            conditions.add("r.duplicateOf = 0");
         }
 
-        if (state == Report.ProcessingState.FINISHED) {
-            log.warning(String.format("Attempt to moderate already finished report (%d).", id));
-            throw new BadOperationException("Finished report cannot be moderated!");
+        long[] position = PageCursor.decode(cursor, order.name(), (order == ReportOrder.ID) ? 1 : 2);
+        String orderBy;
+        if (order == ReportOrder.ID) {
+            if (position != null) {
+                conditions.add("r.id > :id");
+            }
+            orderBy = " ORDER BY r.id";
+        } else if (order == ReportOrder.PRIORITY) {
+            if (position != null) {
+                conditions.add("(r.priority < :priority OR (r.priority = :priority AND r.id > :id))");
+            }
+            orderBy = " ORDER BY r.priority DESC, r.id";
+        } else {
+            // saving requires a sent date, a row written around the service without one has no place here.
+            conditions.add("r.sentDate IS NOT NULL");
+            if (position != null) {
+                conditions.add("(r.sentDate > :sentDate OR (r.sentDate = :sentDate AND r.id > :id))");
+            }
+            orderBy = " ORDER BY r.sentDate, r.id";
         }
 
-        saveNewReportState(Report.ProcessingState.MODERATING, report);
+        String queryText = "SELECT r FROM Report r" +
+                (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions)) + orderBy;
+        Query query = entityManager.createQuery(queryText);
+        if (state != null) {
+            query.setParameter("state", state);
+        }
+        if (position != null) {
+            if (order == ReportOrder.ID) {
+                query.setParameter("id", position[0]);
+            } else if (order == ReportOrder.PRIORITY) {
+                query.setParameter("priority", (int) position[0]);
+                query.setParameter("id", position[1]);
+            } else {
+                query.setParameter("sentDate", new Date(position[0]), TemporalType.TIMESTAMP);
+                query.setParameter("id", position[1]);
+            }
+        }
+        return query;
     }
 
-    void finishModeratingReport(long id) throws ModelNotFoundException, BadOperationException {
-        Report report = getReportById(id);
-        Report.ProcessingState state = report.getState();
-
-        if (state == Report.ProcessingState.FINISHED) {
-            log.warning(String.format("Attempt to moderate already finished report (%d).", id));
-            throw new BadOperationException("Finished report cannot be moderated!");
+    private static String encodeCursor(ReportOrder order, Report report) {
+        switch (order) {
+            case PRIORITY:
+                return PageCursor.encode(order.name(), report.getPriority(), report.getId());
+            case SENT_DATE:
+                return PageCursor.encode(order.name(), report.getSentDate().getTime(), report.getId());
+            default:
+                return PageCursor.encode(order.name(), report.getId());
         }
+    }
+
+    // Reports linked to the given one as repeating it, oldest first.
+    public List<Report> getDuplicates(long id) {
+        return GET_DUPLICATES.time(() -> {
+            Query query = entityManager.createQuery("SELECT r FROM Report r WHERE r.duplicateOf = :id ORDER BY r.id");
+            query.setParameter("id", id);
+            return getAllModels(query);
+        });
+    }
+
+    // A failed query ends the stream with BadOperationException, never passes for its end.
+    public long streamReports(int batchSize, ModelBatchConsumer<Report> consumer)
+            throws BadParametersException, BadOperationException, IOException {
+        return STREAM_REPORTS.<Long, BadParametersException, BadOperationException, IOException,
+                RuntimeException>time(() -> {
+            checkPageSize(batchSize);
+
+            long streamed = 0;
+            String cursor = null;
+            do {
+                Page<Report> page = fetchModelsPage(createReportsPageQuery(ReportOrder.ID, null, cursor, true),
+                        batchSize, (Report report) -> encodeCursor(ReportOrder.ID, report));
+                consumer.accept(page.getModels());
+                streamed += page.getModels().size();
+                cursor = page.getNextCursor();
+                // drop already consumed reports so the persistence context doesn't grow with the table.
+                clearPersistenceContext();
+            } while (cursor != null);
+
+            log.info(String.format("Streamed (%d) reports in batches of (%d).", streamed, batchSize));
+            return streamed;
+        });
+    }
+
+    // A report leased to another moderator can't be taken over until the lease runs out, beginning clears it.
+    void beginModeratingReport(long id, String moderator)
+            throws ModelNotFoundException, BadOperationException, BadParametersException {
+        BEGIN_MODERATING_REPORT.<ModelNotFoundException, BadOperationException, BadParametersException,
+                RuntimeException>run(() -> {
+            if (anyIsNull(moderator) || anyIsEmpty(moderator)) {
+                log.warning("Attempt to moderate report without moderator.");
+                throw new BadParametersException("Moderating report without moderator permitted.");
+            }
+
+            if (changeReportState(id, Report.ProcessingState.NEW, Report.ProcessingState.MODERATING,
+                    "beginMentoringDate", moderator, true)) {
+                log.info(String.format("Moderator (%s) began moderating report (%d).", moderator, id));
+                return;
+            }
+
+            Report.ProcessingState state = getReportState(id);
+
+            if (state == Report.ProcessingState.NEW) {
+                log.warning(String.format("Attempt to moderate report (%d) leased by another moderator.", id));
+                throw new BadOperationException("Report leased by another moderator cannot be moderated!");
+            }
+
+            if (state == Report.ProcessingState.MODERATING) {
+                log.warning(String.format("Attempt to moderate already moderating report (%d).", id));
+                throw new BadOperationException("Report cannot be moderated twice!");
+            }
+
+            if (state == Report.ProcessingState.FINISHED) {
+                log.warning(String.format("Attempt to moderate already finished report (%d).", id));
+                throw new BadOperationException("Finished report cannot be moderated!");
+            }
+
+            throw new BadOperationException("Report moderating wasn't started.");
+        });
+    }
+
+    // A NEW report is finished straight away only if it isn't leased to another moderator.
+    void finishModeratingReport(long id, String moderator) throws ModelNotFoundException, BadOperationException {
+        FINISH_MODERATING_REPORT.<ModelNotFoundException, BadOperationException, RuntimeException,
+                RuntimeException>run(() -> {
+            if (changeReportState(id, Report.ProcessingState.MODERATING, Report.ProcessingState.FINISHED,
+                    "finishedDate", moderator, false) ||
+                    changeReportState(id, Report.ProcessingState.NEW, Report.ProcessingState.FINISHED,
+                            "finishedDate", moderator, true)) {
+                log.info(String.format("Moderator (%s) finished moderating report (%d).", moderator, id));
+                return;
+            }
+
+            Report.ProcessingState state = getReportState(id);
+
+            if (state == Report.ProcessingState.NEW) {
+                log.warning(String.format("Attempt to finish report (%d) leased by another moderator.", id));
+                throw new BadOperationException("Report leased by another moderator cannot be finished!");
+            }
+
+            if (state == Report.ProcessingState.FINISHED) {
+                log.warning(String.format("Attempt to moderate already finished report (%d).", id));
+                throw new BadOperationException("Finished report cannot be moderated!");
+            }
+
+            throw new BadOperationException("Report moderating wasn't finished.");
+        });
+    }
+
+    // Leases up to count NEW reports to the moderator, a lease that runs out puts the report back in the pool.
+    public List<Report> claimReports(String moderator, int count, long leaseMillis) throws BadParametersException {
+        return CLAIM_REPORTS.time(() -> {
+            if (anyIsNull(moderator) || anyIsEmpty(moderator) || leaseMillis <= 0) {
+                log.warning("Attempt to claim reports without moderator or lease duration.");
+                throw new BadParametersException("Claiming reports without moderator or lease duration permitted.");
+            }
+
+            checkPageSize(count);
 
-        saveNewReportState(Report.ProcessingState.FINISHED, report);
+            Date now = new Date();
+            Date leaseExpiresDate = new Date(now.getTime() + leaseMillis);
+            List<Long> claimedIds = new ArrayList<>(count);
+            long lastId = 0L;
+            while (claimedIds.size() < count) {
+                int wanted = count - claimedIds.size();
+                List<Long> candidateIds = getClaimableReportIds(lastId, now, wanted);
+                if (candidateIds.isEmpty()) {
+                    break;
+                }
+
+                lastId = candidateIds.get(candidateIds.size() - 1);
+                claimedIds.addAll(leaseReports(candidateIds, moderator, now, leaseExpiresDate));
+                if (candidateIds.size() < wanted) {
+                    break;
+                }
+            }
+
+            log.info(String.format("Moderator (%s) claimed (%d) reports.", moderator, claimedIds.size()));
+            return getClaimedReports(moderator, claimedIds);
+        });
+    }
+
+    public void releaseReport(long id, String moderator) throws BadOperationException {
+        RELEASE_REPORT.run(() -> {
+            int updated = 0;
+            EntityTransaction entityTransaction = entityManager.getTransaction();
+            try {
+                entityTransaction.begin();
+                Query query = entityManager.createQuery("UPDATE Report r SET r.leaseOwner = NULL, " +
+                        "r.leaseExpiresDate = NULL, r.version = r.version + 1 " +
+                        "WHERE r.id = :id AND r.leaseOwner = :owner");
+                query.setParameter("id", id);
+                query.setParameter("owner", moderator);
+                updated = query.executeUpdate();
+                entityTransaction.commit();
+                bumpReportVersion(updated);
+            } catch (Exception e) {
+                log.severe(String.format("Error releasing report (%d) lease: %s.", id, e.getMessage()));
+                entityTransaction.rollback();
+                RELEASE_REPORT.failed(e);
+                RELEASE_REPORT.rolledBack();
+                updated = 0;
+            }
+
+            if (updated == 0) {
+                log.warning(String.format("Attempt to release report (%d) not leased by (%s).", id, moderator));
+                throw new BadOperationException("Releasing report not leased by moderator permitted.");
+            }
+            refreshModel(Report.class, id);
+        });
+    }
+
+    public Map<Report.ProcessingState, Long> countReportsByState() {
+        return COUNT_REPORTS_BY_STATE.time(() -> {
+            Map<Report.ProcessingState, Long> counts = new EnumMap<>(Report.ProcessingState.class);
+            try {
+                Query query = entityManager.createQuery("SELECT r.state, COUNT(r) FROM Report r GROUP BY r.state");
+                for (Object row: query.getResultList()) {
+                    Object[] columns = (Object[]) row;
+                    counts.put((Report.ProcessingState) columns[0], ((Number) columns[1]).longValue());
+                }
+            } catch (Exception e) {
+                log.severe(String.format("Error counting reports by state: %s.", e.getMessage()));
+            }
+            return counts;
+        });
     }
 
     void saveReport(Report report) throws BadParametersException {
+        SAVE_REPORT.run(() -> {
+            prepareReport(report);
+            boolean created = report.getId() == 0;
+            if (saveModel(report)) {
+                notifyListeners(listener -> listener.reportSaved(report, created));
+            }
+        });
+    }
+
+    public List<SaveOutcome<Report>> saveReports(Collection<Report> reports) throws BadParametersException {
+        return saveReports(reports, DEFAULT_BATCH_SIZE);
+    }
+
+    public List<SaveOutcome<Report>> saveReports(Collection<Report> reports, int batchSize)
+            throws BadParametersException {
+        return SAVE_REPORTS.time(() -> {
+            Set<Report> existing = Collections.newSetFromMap(new IdentityHashMap<>());
+            if (reports != null) {
+                for (Report report: reports) {
+                    if (report != null && report.getId() != 0) {
+                        existing.add(report);
+                    }
+                }
+            }
+
+            List<SaveOutcome<Report>> outcomes = saveModels(reports, batchSize, this::prepareReport);
+            for (SaveOutcome<Report> outcome: outcomes) {
+                if (outcome.isSaved()) {
+                    boolean created = !existing.contains(outcome.getModel());
+                    notifyListeners(listener -> listener.reportSaved(outcome.getModel(), created));
+                }
+            }
+            return outcomes;
+        });
+    }
+
+    // Copies of the report are relinked in the same transaction, the incident outlives its first report.
+    void deleteReport(long id, String actor) throws ModelNotFoundException {
+        DELETE_REPORT.run(() -> {
+            Report report = getManagedModelById(Report.class, id);
+            Report.ProcessingState state = report.getState();
+            List<Long> relinked;
+            EntityTransaction entityTransaction = entityManager.getTransaction();
+            try {
+                entityTransaction.begin();
+                entityManager.remove(entityManager.merge(report));
+                relinked = relinkCopies(Collections.singletonList(id));
+                entityTransaction.commit();
+                ModelVersions.bump(Report.class);
+                log.info(String.format("Deleted report (%d).", id));
+            } catch (Exception e) {
+                log.severe(String.format("Rolling back due to a report (%d) delete error: %s.", id, e.getMessage()));
+                entityTransaction.rollback();
+                DELETE_REPORT.failed(e);
+                DELETE_REPORT.rolledBack();
+                return;
+            } finally {
+                invalidateModels(Report.class, Collections.singletonList(id));
+            }
+
+            // the relinking statements skip the persistence context.
+            clearPersistenceContext();
+            invalidateModels(Report.class, relinked);
+            // attachments went with the report.
+            invalidateAllModels(Attachment.class);
+            notifyListeners(listener -> listener.reportDeleted(id, state, actor));
+        });
+    }
+
+    // Deletes the reports with their attachment rows in one transaction, ids of missing reports are skipped.
+    // Archived reports aren't touched, the archive is append-only.
+    public int deleteReports(long[] ids, String actor) {
+        return DELETE_REPORTS.time(() -> {
+            Map<Long, Report.ProcessingState> states = new HashMap<>();
+            for (List<Long> chunk: chunkIds(uniqueIds(ids))) {
+                Query query = entityManager.createQuery("SELECT r.id, r.state FROM Report r WHERE r.id IN (" +
+                        idParameters(chunk.size()) + ")");
+                setIdParameters(query, chunk);
+                collectStates(query, states);
+            }
+            return deleteReports(states, actor);
+        });
+    }
+
+    // Deletes the reports in the state and sent in [sentFrom, sentTo), any of them may be null but not all.
+    public int deleteReports(Report.ProcessingState state, Date sentFrom, Date sentTo, String actor)
+            throws BadParametersException {
+        return DELETE_REPORTS.time(() -> {
+            if (anyIsNull(state) && anyIsNull(sentFrom) && anyIsNull(sentTo)) {
+                log.warning("Attempt to delete reports without state or sent date range.");
+                throw new BadParametersException("Deleting reports without state or sent date range permitted.");
+            }
+
+            List<String> conditions = new ArrayList<>(3);
+            if (state != null) {
+                conditions.add("r.state = :state");
+            }
+            if (sentFrom != null) {
+                conditions.add("r.sentDate >= :sentFrom");
+            }
+            if (sentTo != null) {
+                conditions.add("r.sentDate < :sentTo");
+            }
+
+            Query query = entityManager.createQuery("SELECT r.id, r.state FROM Report r WHERE " +
+                    String.join(" AND ", conditions));
+            if (state != null) {
+                query.setParameter("state", state);
+            }
+            if (sentFrom != null) {
+                query.setParameter("sentFrom", sentFrom, TemporalType.TIMESTAMP);
+            }
+            if (sentTo != null) {
+                query.setParameter("sentTo", sentTo, TemporalType.TIMESTAMP);
+            }
+
+            Map<Long, Report.ProcessingState> states = new HashMap<>();
+            collectStates(query, states);
+            return deleteReports(states, actor);
+        });
+    }
+
+    // Moves finished reports without attachments out of the database, batch by batch. Every batch is forced
+    // to the archive before it's deleted, so a crash in between leaves a report in both, never in neither.
+    public int archiveReports(Date finishedBefore, int batchSize) throws BadParametersException, IOException {
+        return ARCHIVE_REPORTS.<Integer, BadParametersException, IOException, RuntimeException,
+                RuntimeException>time(() -> {
+            if (archive == null) {
+                throw new IllegalStateException("Report service has no archive.");
+            }
+            checkPageSize(batchSize);
+
+            int archived = 0;
+            long lastId = 0L;
+            while (true) {
+                Query query = entityManager.createQuery("SELECT r FROM Report r WHERE r.state = :state " +
+                        "AND r.finishedDate < :before AND r.id > :id AND r.attachments IS EMPTY ORDER BY r.id");
+                query.setParameter("state", Report.ProcessingState.FINISHED);
+                query.setParameter("before", finishedBefore, TemporalType.TIMESTAMP);
+                query.setParameter("id", lastId);
+                query.setMaxResults(batchSize);
+                List<Report> reports = getAllModels(query);
+                if (reports.isEmpty()) {
+                    break;
+                }
+
+                lastId = reports.get(reports.size() - 1).getId();
+                archive.append(reports);
+                List<Long> ids = new ArrayList<>(reports.size());
+                for (Report report: reports) {
+                    ids.add(report.getId());
+                }
+                archived += deleteArchivedReports(ids);
+                clearPersistenceContext();
+                if (reports.size() < batchSize) {
+                    break;
+                }
+            }
+
+            log.info(String.format("Archived (%d) reports finished before (%s).", archived, finishedBefore));
+            return archived;
+        });
+    }
+
+    private void prepareReport(Report report) throws BadParametersException {
+        validateReport(report);
+        if (report.getId() == 0) {
+            notifyListeners(listener -> listener.reportSaving(report));
+        }
+    }
+
+    private void validateReport(Report report) throws BadParametersException {
         if (anyIsNull(report)) {
             log.warning("Attempt to save null report.");
             throw new BadParametersException("Saving null report permitted.");
@@ -66,30 +574,318 @@ class ReportService extends Service {
             log.warning("Attempt to save report without username, text or sent date.");
             throw new BadParametersException("Saving report without username, text or sent date permitted.");
         }
+    }
+
+    // Moves report to the new state only if it's still in the expected one, in a single statement.
+    // Checking the lease the report must also be free of other moderators' leases, and its lease is cleared.
+    private boolean changeReportState(long id, Report.ProcessingState from, Report.ProcessingState to,
+                                      String dateField, String moderator, boolean checkLease) {
+        String queryText = String.format("UPDATE Report r SET r.state = :to, r.%s = :date, " +
+                "r.version = r.version + 1 WHERE r.id = :id AND r.state = :from", dateField);
+        if (checkLease) {
+            queryText = String.format("UPDATE Report r SET r.state = :to, r.%s = :date, r.leaseOwner = NULL, " +
+                    "r.leaseExpiresDate = NULL, r.version = r.version + 1 WHERE r.id = :id AND r.state = :from " +
+                    "AND (r.leaseOwner IS NULL OR r.leaseOwner = :moderator OR r.leaseExpiresDate < :date)",
+                    dateField);
+        }
+
+        Date changedDate = new Date();
+        int updated = 0;
+        EntityTransaction entityTransaction = entityManager.getTransaction();
+        try {
+            entityTransaction.begin();
+            Query query = entityManager.createQuery(queryText);
+            query.setParameter("to", to);
+            query.setParameter("date", changedDate, TemporalType.TIMESTAMP);
+            query.setParameter("id", id);
+            query.setParameter("from", from);
+            if (checkLease) {
+                query.setParameter("moderator", moderator);
+            }
+            updated = query.executeUpdate();
+            entityTransaction.commit();
+            bumpReportVersion(updated);
+        } catch (Exception e) {
+            log.severe(String.format("Error changing report (%d) state from (%s) to (%s): %s.", id, from, to,
+                    e.getMessage()));
+            entityTransaction.rollback();
+            CHANGE_REPORT_STATE.failed(e);
+            CHANGE_REPORT_STATE.rolledBack();
+            updated = 0;
+        }
+
+        if (updated == 0) {
+            return false;
+        }
+
+        refreshModel(Report.class, id);
+        notifyListeners(listener -> listener.reportStateChanged(id, from, to, changedDate, moderator));
+        return true;
+    }
+
+    private List<Long> getClaimableReportIds(long lastId, Date now, int count) {
+        Query query = entityManager.createQuery("SELECT r.id FROM Report r WHERE r.state = :state AND r.id > :id " +
+                "AND (r.leaseExpiresDate IS NULL OR r.leaseExpiresDate < :now) ORDER BY r.id");
+        query.setParameter("state", Report.ProcessingState.NEW);
+        query.setParameter("id", lastId);
+        query.setParameter("now", now, TemporalType.TIMESTAMP);
+        query.setMaxResults(count);
+
+        List<Long> ids = null;
+        try {
+            ids = getResults(query);
+        } catch (Exception e) {
+            log.severe(String.format("Error getting claimable reports: %s.", e.getMessage()));
+        }
+        return (ids != null) ? ids : new LinkedList<>();
+    }
+
+    // Leases the candidates in one conditional update committed on its own, so no row stays locked longer than
+    // that statement. A candidate another moderator leased since it was read no longer matches and is left out,
+    // a claim racing for the same rows waits only for the other statement to commit.
+    private List<Long> leaseReports(List<Long> candidateIds, String moderator, Date now, Date leaseExpiresDate) {
+        List<Long> leasedIds = new ArrayList<>(candidateIds.size());
+        String parameters = idParameters(candidateIds.size());
+        EntityTransaction entityTransaction = entityManager.getTransaction();
+        try {
+            entityTransaction.begin();
+            Query query = entityManager.createQuery("UPDATE Report r SET r.leaseOwner = :owner, " +
+                    "r.leaseExpiresDate = :expires, r.version = r.version + 1 WHERE r.state = :state " +
+                    "AND (r.leaseExpiresDate IS NULL OR r.leaseExpiresDate < :now) AND r.id IN (" + parameters + ")");
+            query.setParameter("owner", moderator);
+            query.setParameter("expires", leaseExpiresDate, TemporalType.TIMESTAMP);
+            query.setParameter("state", Report.ProcessingState.NEW);
+            query.setParameter("now", now, TemporalType.TIMESTAMP);
+            setIdParameters(query, candidateIds);
+            int leased = query.executeUpdate();
+
+            if (leased == candidateIds.size()) {
+                leasedIds.addAll(candidateIds);
+            } else if (leased > 0) {
+                Query leasedQuery = entityManager.createQuery("SELECT r.id FROM Report r WHERE r.leaseOwner = :owner " +
+                        "AND r.leaseExpiresDate = :expires AND r.id IN (" + parameters + ") ORDER BY r.id");
+                leasedQuery.setParameter("owner", moderator);
+                leasedQuery.setParameter("expires", leaseExpiresDate, TemporalType.TIMESTAMP);
+                setIdParameters(leasedQuery, candidateIds);
+                leasedIds.addAll(getResults(leasedQuery));
+            }
+            entityTransaction.commit();
+            bumpReportVersion(leasedIds.size());
+        } catch (Exception e) {
+            log.severe(String.format("Error leasing reports to (%s): %s.", moderator, e.getMessage()));
+            entityTransaction.rollback();
+            CLAIM_REPORTS.failed(e);
+            CLAIM_REPORTS.rolledBack();
+            leasedIds.clear();
+        }
+
+        for (Long id: leasedIds) {
+            refreshModel(Report.class, id);
+        }
+        return leasedIds;
+    }
+
+    private List<Report> getClaimedReports(String moderator, List<Long> claimedIds) {
+        if (claimedIds.isEmpty()) {
+            return new LinkedList<>();
+        }
+
+        Query query = entityManager.createQuery("SELECT r FROM Report r WHERE r.leaseOwner = :owner " +
+                "AND r.id BETWEEN :first AND :last ORDER BY r.id");
+        query.setParameter("owner", moderator);
+        query.setParameter("first", claimedIds.get(0));
+        query.setParameter("last", claimedIds.get(claimedIds.size() - 1));
+
+        Set<Long> ids = new HashSet<>(claimedIds);
+        List<Report> reports = new ArrayList<>(claimedIds.size());
+        for (Report report: this.<Report>getAllModels(query)) {
+            if (ids.contains(report.getId())) {
+                reports.add(report);
+            }
+        }
+        return reports;
+    }
+
+    private void collectStates(Query query, Map<Long, Report.ProcessingState> states) {
+        try {
+            for (Object row: query.getResultList()) {
+                Object[] columns = (Object[]) row;
+                states.put((Long) columns[0], (Report.ProcessingState) columns[1]);
+            }
+        } catch (Exception e) {
+            log.severe(String.format("Error getting reports to delete: %s.", e.getMessage()));
+        }
+    }
+
+    // The statements are conditioned on the state read before, a report whose state changed in the meantime
+    // stays, so listeners hear about exactly the reports deleted and in the state they were deleted in.
+    private int deleteReports(Map<Long, Report.ProcessingState> states, String actor) {
+        Map<Report.ProcessingState, List<Long>> idsByState = new EnumMap<>(Report.ProcessingState.class);
+        for (Map.Entry<Long, Report.ProcessingState> entry: states.entrySet()) {
+            idsByState.computeIfAbsent(entry.getValue(), key -> new ArrayList<>()).add(entry.getKey());
+        }
+
+        Map<Long, Report.ProcessingState> deleted = new HashMap<>();
+        List<Long> relinked;
+        EntityTransaction entityTransaction = entityManager.getTransaction();
+        try {
+            entityTransaction.begin();
+            for (Map.Entry<Report.ProcessingState, List<Long>> entry: idsByState.entrySet()) {
+                for (List<Long> chunk: chunkIds(entry.getValue())) {
+                    deleteReportsChunk(entry.getKey(), chunk, deleted);
+                }
+            }
+            relinked = relinkCopies(deleted.keySet());
+            entityTransaction.commit();
+            bumpReportVersion(deleted.size());
+        } catch (Exception e) {
+            log.severe(String.format("Error deleting (%d) reports: %s.", states.size(), e.getMessage()));
+            entityTransaction.rollback();
+            DELETE_REPORTS.failed(e);
+            DELETE_REPORTS.rolledBack();
+            return 0;
+        }
+
+        // bulk statements skip the persistence context, instances of deleted reports in it are stale now.
+        clearPersistenceContext();
+        invalidateModels(Report.class, deleted.keySet());
+        invalidateModels(Report.class, relinked);
+        invalidateAllModels(Attachment.class);
+        for (Map.Entry<Long, Report.ProcessingState> entry: deleted.entrySet()) {
+            notifyListeners(listener -> listener.reportDeleted(entry.getKey(), entry.getValue(), actor));
+        }
+        log.info(String.format("Deleted (%d) reports.", deleted.size()));
+        return deleted.size();
+    }
+
+    private void deleteReportsChunk(Report.ProcessingState state, List<Long> ids,
+                                    Map<Long, Report.ProcessingState> deleted) {
+        String parameters = idParameters(ids.size());
+        Query attachmentQuery = entityManager.createQuery("DELETE FROM Attachment a WHERE a.report.id IN " +
+                "(SELECT r.id FROM Report r WHERE r.state = :state AND r.id IN (" + parameters + "))");
+        attachmentQuery.setParameter("state", state);
+        setIdParameters(attachmentQuery, ids);
+        attachmentQuery.executeUpdate();
 
-        saveModel(report);
+        Query reportQuery = entityManager.createQuery("DELETE FROM Report r WHERE r.state = :state AND r.id IN (" +
+                parameters + ")");
+        reportQuery.setParameter("state", state);
+        setIdParameters(reportQuery, ids);
+        int deletedCount = reportQuery.executeUpdate();
+
+        Set<Long> remaining = new HashSet<>();
+        if (deletedCount < ids.size()) {
+            Query remainingQuery = entityManager.createQuery("SELECT r.id FROM Report r WHERE r.id IN (" +
+                    parameters + ")");
+            setIdParameters(remainingQuery, ids);
+            remaining.addAll(getResults(remainingQuery));
+        }
+        for (Long id: ids) {
+            if (!remaining.contains(id)) {
+                deleted.put(id, state);
+            }
+        }
     }
 
-    void deleteReport(long id) throws ModelNotFoundException {
-        Report report = getReportById(id);
+    // The oldest remaining copy of each deleted report becomes the first of its incident and the other copies
+    // point to it, as the duplicate detector relinks them. Returns the ids of the relinked reports.
+    private List<Long> relinkCopies(Collection<Long> deletedIds) {
+        List<Long> relinked = new ArrayList<>();
+        for (List<Long> chunk: chunkIds(deletedIds)) {
+            Query query = entityManager.createQuery("SELECT r.id, r.duplicateOf FROM Report r WHERE r.duplicateOf " +
+                    "IN (" + idParameters(chunk.size()) + ") ORDER BY r.sentDate, r.id");
+            setIdParameters(query, chunk);
+            Map<Long, Long> firstCopies = new HashMap<>();
+            for (Object[] columns: Service.<Object[]>getResults(query)) {
+                firstCopies.putIfAbsent((Long) columns[1], (Long) columns[0]);
+                relinked.add((Long) columns[0]);
+            }
+
+            for (Map.Entry<Long, Long> entry: firstCopies.entrySet()) {
+                Query firstQuery = entityManager.createQuery("UPDATE Report r SET r.duplicateOf = 0, " +
+                        "r.version = r.version + 1 WHERE r.id = :first");
+                firstQuery.setParameter("first", entry.getValue());
+                firstQuery.executeUpdate();
+
+                Query copiesQuery = entityManager.createQuery("UPDATE Report r SET r.duplicateOf = :first, " +
+                        "r.version = r.version + 1 WHERE r.duplicateOf = :deleted");
+                copiesQuery.setParameter("first", entry.getValue());
+                copiesQuery.setParameter("deleted", entry.getKey());
+                copiesQuery.executeUpdate();
+            }
+        }
+        if (!relinked.isEmpty()) {
+            log.info(String.format("Relinked (%d) copies of deleted reports.", relinked.size()));
+        }
+        return relinked;
+    }
+
+    private Report getArchivedReport(long id) {
+        if (archive == null) {
+            return null;
+        }
+
+        try {
+            return archive.find(id);
+        } catch (IOException e) {
+            log.severe(String.format("Error reading report (%d) from archive: %s.", id, e.getMessage()));
+            return null;
+        }
+    }
+
+    private int deleteArchivedReports(List<Long> ids) {
+        int deleted = 0;
+        EntityTransaction entityTransaction = entityManager.getTransaction();
         try {
-            deleteModel(report);
-        } catch (BadParametersException e) {
-            log.severe(String.format("Error deleting report due it's null: %s", e.getMessage()));
-            // todo: throw exception about error deleting report.
-        } catch (BadOperationException e) {
-            log.severe(String.format("Error deleting report due it doesn't exist by id (%d): %s.", id, e.getMessage()));
+            entityTransaction.begin();
+            Query query = entityManager.createQuery("DELETE FROM Report r WHERE r.state = :state AND r.id IN (" +
+                    idParameters(ids.size()) + ")");
+            query.setParameter("state", Report.ProcessingState.FINISHED);
+            setIdParameters(query, ids);
+            deleted = query.executeUpdate();
+            entityTransaction.commit();
+            bumpReportVersion(deleted);
+        } catch (Exception e) {
+            log.severe(String.format("Error deleting (%d) archived reports: %s.", ids.size(), e.getMessage()));
+            entityTransaction.rollback();
+            ARCHIVE_REPORTS.failed(e);
+            ARCHIVE_REPORTS.rolledBack();
+            return 0;
+        }
+
+        invalidateModels(Report.class, ids);
+        for (Long id: ids) {
+            notifyListeners(listener -> listener.reportArchived(id));
+        }
+        return deleted;
+    }
+
+    // Bulk statements bypass saveModel, so they bump the version themselves.
+    private void bumpReportVersion(int updated) {
+        if (updated > 0) {
+            ModelVersions.bump(Report.class);
+        }
+    }
+
+    private void notifyListeners(Consumer<ReportListener> notification) {
+        for (ReportListener listener: listeners) {
+            try {
+                notification.accept(listener);
+            } catch (RuntimeException e) {
+                log.severe(String.format("Report listener (%s) failed: %s.", listener.getClass().getName(),
+                        e.getMessage()));
+            }
         }
     }
 
-    private void saveNewReportState(Report.ProcessingState state, Report report) {
-        report.setState(state);
-        long id = report.getId();
+    private Report.ProcessingState getReportState(long id) throws ModelNotFoundException {
+        Query query = entityManager.createQuery("SELECT r.state FROM Report r WHERE r.id = :id");
+        query.setParameter("id", id);
         try {
-            saveModel(report);
-            log.info(String.format("Began moderating report (%d).", id));
-        } catch (BadParametersException e) {
-            log.severe(String.format("Error saving report (%d) new state (%s): %s.", id, state, e.getMessage()));
+            return (Report.ProcessingState) query.getSingleResult();
+        } catch (NoResultException e) {
+            log.severe(String.format("Report not found by id (%d).", id));
+            throw new ModelNotFoundException("Model not found!");
         }
     }
 }
@@ -0,0 +1,58 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Number of reports in every state, loaded once and then kept up to date from report events.
+public class ReportStateCounters implements ReportListener {
+    private final Map<Report.ProcessingState, LongAdder> counters = new EnumMap<>(Report.ProcessingState.class);
+
+    public ReportStateCounters() {
+        for (Report.ProcessingState state: Report.ProcessingState.values()) {
+            counters.put(state, new LongAdder());
+        }
+    }
+
+    public void reset(Map<Report.ProcessingState, Long> counts) {
+        for (Report.ProcessingState state: Report.ProcessingState.values()) {
+            LongAdder counter = counters.get(state);
+            counter.reset();
+            counter.add(counts.getOrDefault(state, 0L));
+        }
+    }
+
+    public long getCount(Report.ProcessingState state) {
+        return counters.get(state).sum();
+    }
+
+    public Map<Report.ProcessingState, Long> getCounts() {
+        Map<Report.ProcessingState, Long> counts = new EnumMap<>(Report.ProcessingState.class);
+        for (Report.ProcessingState state: Report.ProcessingState.values()) {
+            counts.put(state, getCount(state));
+        }
+        return counts;
+    }
+
+    @Override
+    public void reportSaved(Report report, boolean created) {
+        if (created) {
+            counters.get(report.getState()).increment();
+        }
+    }
+
+    @Override
+    public void reportStateChanged(long id, Report.ProcessingState from, Report.ProcessingState to,
+                                   Date changedDate, String actor) {
+        counters.get(from).decrement();
+        counters.get(to).increment();
+    }
+
+    @Override
+    public void reportDeleted(long id, Report.ProcessingState state, String actor) {
+        counters.get(state).decrement();
+    }
+}
@@ -0,0 +1,35 @@
+package ua.sumy.stpp.nobullying.service;
+
+import ua.sumy.stpp.nobullying.model.Model;
+
+public class SaveOutcome<M extends Model> {
+    public enum Status {
+        SAVED, INVALID, FAILED
+    }
+
+    private final M model;
+    private final Status status;
+    private final String message;
+
+    SaveOutcome(M model, Status status, String message) {
+        this.model = model;
+        this.status = status;
+        this.message = message;
+    }
+
+    public M getModel() {
+        return model;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isSaved() {
+        return status == Status.SAVED;
+    }
+}
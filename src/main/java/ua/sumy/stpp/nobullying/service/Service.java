@@ -4,102 +4,364 @@ import ua.sumy.stpp.nobullying.model.Model;
 import ua.sumy.stpp.nobullying.service.error.BadOperationException;
 import ua.sumy.stpp.nobullying.service.error.BadParametersException;
 import ua.sumy.stpp.nobullying.service.error.ModelNotFoundException;
+import ua.sumy.stpp.nobullying.service.metrics.OperationMetrics;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
 import javax.persistence.Query;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 class Service {
+    static final int MAX_PAGE_SIZE = 500;
+    static final int DEFAULT_BATCH_SIZE = 50;
+
+    private static final OperationMetrics GET_MODEL_BY_ID = ServiceMetrics.operation("Service.getModelById");
+    private static final OperationMetrics SAVE_MODEL = ServiceMetrics.operation("Service.saveModel");
+    private static final OperationMetrics SAVE_MODELS = ServiceMetrics.operation("Service.saveModels");
+    private static final OperationMetrics DELETE_MODEL = ServiceMetrics.operation("Service.deleteModel");
+
     private final EntityManager entityManager;
+    private final ModelCaches modelCaches;
     private final Logger log = Logger.getLogger(UserService.class.getName());
 
     Service(EntityManager entityManager) {
+        this(entityManager, new ModelCaches());
+    }
+
+    Service(EntityManager entityManager, ModelCaches modelCaches) {
         this.entityManager = entityManager;
+        this.modelCaches = modelCaches;
     }
 
     <M extends Model> M getModelById(Class<M> modelClass, long id) throws ModelNotFoundException {
-        if (!modelExists(modelClass, id)) {
+        return GET_MODEL_BY_ID.time(() -> {
+            ModelCache modelCache = modelCaches.of(modelClass);
+            Model cachedModel = modelCache.get(id);
+            if (cachedModel != null) {
+                return modelClass.cast(cachedModel);
+            }
+
+            M model = getManagedModelById(modelClass, id);
+            modelCache.put(id, model);
+            return model;
+        });
+    }
+
+    // Skips the shared cache, for paths that change the model and so need an instance of this entity manager.
+    <M extends Model> M getManagedModelById(Class<M> modelClass, long id) throws ModelNotFoundException {
+        M model = findModel(modelClass, id);
+        if (model == null) {
             log.severe(String.format("Model not found by id (%d).", id));
             throw new ModelNotFoundException("Model not found!");
         }
-
-        return entityManager.find(modelClass, id);
+        return model;
     }
 
     <M extends Model> List<M> getAllModels(String query) {
         List<M> models = null;
         try {
             Query namedQuery = entityManager.createNamedQuery(query);
-            models = (List<M>) namedQuery.getResultList();
+            models = getResults(namedQuery);
         } catch (Exception e) {
             log.severe(String.format("Error getting all models by query (%s): %s.", query, e.getMessage()));
         }
         return (models != null) ? models : new LinkedList<>();
     }
 
-    <M extends Model> void saveModel(M model) throws BadParametersException {
-        if (anyIsNull(model)) {
-            log.warning("Attempt to save null model.");
-            throw new BadParametersException("Saving null model permitted.");
+    <M extends Model> List<M> getAllModels(Query query) {
+        List<M> models = null;
+        try {
+            models = getResults(query);
+        } catch (Exception e) {
+            log.severe(String.format("Error getting models: %s.", e.getMessage()));
         }
+        return (models != null) ? models : new LinkedList<>();
+    }
 
-        long id = model.getId();
-        String modelName = model.getClass().getName();
-        EntityTransaction entityTransaction = entityManager.getTransaction();
+    // The one unchecked cast of query results, the query text decides what they are.
+    @SuppressWarnings("unchecked")
+    static <T> List<T> getResults(Query query) {
+        return (List<T>) query.getResultList();
+    }
+
+    <M extends Model> Page<M> getModelsPage(Query query, int pageSize, Function<M, String> cursorOf) {
         try {
-            entityTransaction.begin();
-            entityManager.persist(model);
-            entityTransaction.commit();
-            log.info(String.format("Saved (%s) with id (%d).", modelName, id));
+            return fetchModelsPage(query, pageSize, cursorOf);
+        } catch (BadOperationException e) {
+            log.severe(e.getMessage());
+            return new Page<>(new LinkedList<>(), null);
+        }
+    }
+
+    // Unlike getModelsPage() a failed query isn't taken for the last page, for callers walking all pages.
+    <M extends Model> Page<M> fetchModelsPage(Query query, int pageSize, Function<M, String> cursorOf)
+            throws BadOperationException {
+        List<M> models;
+        try {
+            query.setMaxResults(pageSize + 1);
+            models = getResults(query);
         } catch (Exception e) {
-            log.severe(String.format("Rolling back due to a %s (%d) saving error: %s.", modelName, id, e.getMessage()));
-            entityTransaction.rollback();
-            // todo: throw exception about saving error.
+            throw new BadOperationException(String.format("Error getting page of (%d) models: %s.", pageSize,
+                    e.getMessage()));
         }
+
+        if (models == null || models.size() <= pageSize) {
+            return new Page<>((models != null) ? models : new LinkedList<>(), null);
+        }
+
+        List<M> pageModels = new ArrayList<>(models.subList(0, pageSize));
+        return new Page<>(pageModels, cursorOf.apply(pageModels.get(pageSize - 1)));
     }
 
-    <M extends Model> void deleteModel(M model) throws BadParametersException, BadOperationException {
-        if (anyIsNull(model)) {
-            log.warning("Attempt to save null model.");
-            throw new BadParametersException("Deleting null model permitted.");
+    void checkPageSize(int pageSize) throws BadParametersException {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            log.warning(String.format("Attempt to get page of wrong size (%d).", pageSize));
+            throw new BadParametersException(String.format("Page size must be between 1 and %d.", MAX_PAGE_SIZE));
         }
+    }
 
-        long id = model.getId();
+    static Set<Long> uniqueIds(long[] ids) {
+        Set<Long> uniqueIds = new LinkedHashSet<>();
+        for (long id: ids) {
+            uniqueIds.add(id);
+        }
+        return uniqueIds;
+    }
 
-        if (!modelExists(model.getClass(), id)) {
-            log.warning(String.format("Attempt to delete not existing model by id (%d).", id));
-            throw new BadOperationException("Deleting not existing model permitted.");
+    // Bulk statements take ids as parameters ":id0, :id1, ...", at most MAX_PAGE_SIZE of them per statement.
+    static List<List<Long>> chunkIds(Collection<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        List<Long> chunk = new ArrayList<>(Math.min(ids.size(), MAX_PAGE_SIZE));
+        for (Long id: ids) {
+            if (chunk.size() == MAX_PAGE_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(MAX_PAGE_SIZE);
+            }
+            chunk.add(id);
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
         }
+        return chunks;
+    }
+
+    static String idParameters(int count) {
+        StringBuilder parameters = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            parameters.append((i > 0) ? ", :id" : ":id").append(i);
+        }
+        return parameters.toString();
+    }
+
+    static void setIdParameters(Query query, List<Long> ids) {
+        for (int i = 0; i < ids.size(); i++) {
+            query.setParameter("id" + i, ids.get(i));
+        }
+    }
+
+    <M extends Model> boolean saveModel(M model) throws BadParametersException {
+        return SAVE_MODEL.time(() -> {
+            if (anyIsNull(model)) {
+                log.warning("Attempt to save null model.");
+                throw new BadParametersException("Saving null model permitted.");
+            }
+
+            long id = model.getId();
+            String modelName = model.getClass().getName();
+            boolean saved = false;
+            EntityTransaction entityTransaction = entityManager.getTransaction();
+            try {
+                entityTransaction.begin();
+                entityManager.persist(model);
+                entityTransaction.commit();
+                ModelVersions.bump(model.getClass());
+                saved = true;
+                log.info(String.format("Saved (%s) with id (%d).", modelName, id));
+            } catch (Exception e) {
+                log.severe(String.format("Rolling back due to a %s (%d) saving error: %s.", modelName, id,
+                        e.getMessage()));
+                entityTransaction.rollback();
+                SAVE_MODEL.failed(e);
+                SAVE_MODEL.rolledBack();
+                // todo: throw exception about saving error.
+            } finally {
+                modelCaches.of(model.getClass()).invalidate(model.getId());
+            }
+            return saved;
+        });
+    }
+
+    // Saves valid models committing every batchSize of them, a failed batch is rolled back on its own.
+    <M extends Model> List<SaveOutcome<M>> saveModels(Collection<M> models, int batchSize,
+                                                      ModelValidator<M> validator) throws BadParametersException {
+        return SAVE_MODELS.time(() -> {
+            if (anyIsNull(models, validator)) {
+                log.warning("Attempt to save null models collection.");
+                throw new BadParametersException("Saving null models collection permitted.");
+            }
+
+            if (batchSize < 1) {
+                log.warning(String.format("Attempt to save models in batches of wrong size (%d).", batchSize));
+                throw new BadParametersException("Batch size must be positive.");
+            }
 
-        String modelName = model.getClass().getName();
+            List<SaveOutcome<M>> outcomes = new ArrayList<>(Collections.nCopies(models.size(), null));
+            List<M> batch = new ArrayList<>(batchSize);
+            int[] batchIndexes = new int[batchSize];
+            int index = 0;
+            for (M model: models) {
+                try {
+                    if (anyIsNull(model)) {
+                        throw new BadParametersException("Saving null model permitted.");
+                    }
+                    validator.validate(model);
+                    batchIndexes[batch.size()] = index;
+                    batch.add(model);
+                } catch (BadParametersException e) {
+                    outcomes.set(index, new SaveOutcome<>(model, SaveOutcome.Status.INVALID, e.getMessage()));
+                }
+
+                if (batch.size() == batchSize) {
+                    saveBatch(batch, batchIndexes, outcomes);
+                }
+                index++;
+            }
+
+            if (!batch.isEmpty()) {
+                saveBatch(batch, batchIndexes, outcomes);
+            }
+            return outcomes;
+        });
+    }
+
+    <M extends Model> boolean deleteModel(M model) throws BadParametersException, BadOperationException {
+        return DELETE_MODEL.<Boolean, BadParametersException, BadOperationException, RuntimeException,
+                RuntimeException>time(() -> {
+            if (anyIsNull(model)) {
+                log.warning("Attempt to save null model.");
+                throw new BadParametersException("Deleting null model permitted.");
+            }
+
+            long id = model.getId();
+
+            if (!modelExists(model.getClass(), id)) {
+                log.warning(String.format("Attempt to delete not existing model by id (%d).", id));
+                throw new BadOperationException("Deleting not existing model permitted.");
+            }
+
+            String modelName = model.getClass().getName();
+            boolean deleted = false;
+            EntityTransaction entityTransaction = entityManager.getTransaction();
+            try {
+                entityTransaction.begin();
+                entityManager.remove(entityManager.merge(model));
+                entityTransaction.commit();
+                ModelVersions.bump(model.getClass());
+                deleted = true;
+                log.info(String.format("Deleting %s with id (%d).", modelName, id));
+            } catch (Exception e) {
+                log.severe(String.format("Rolling back due to a %s (%d) delete error: %s.", modelName, id,
+                        e.getMessage()));
+                entityTransaction.rollback();
+                DELETE_MODEL.failed(e);
+                DELETE_MODEL.rolledBack();
+                // todo: throw exception about deleting error.
+            } finally {
+                modelCaches.of(model.getClass()).invalidate(id);
+            }
+            return deleted;
+        });
+    }
+
+    private <M extends Model> void saveBatch(List<M> batch, int[] batchIndexes, List<SaveOutcome<M>> outcomes) {
+        SaveOutcome.Status status = SaveOutcome.Status.SAVED;
+        String message = null;
         EntityTransaction entityTransaction = entityManager.getTransaction();
         try {
             entityTransaction.begin();
-            entityManager.remove(entityManager.merge(model));
+            for (M model: batch) {
+                entityManager.persist(model);
+            }
+            entityManager.flush();
             entityTransaction.commit();
-            log.info(String.format("Deleting %s with id (%d).", modelName, id));
+            ModelVersions.bump(batch.get(0).getClass());
+            log.info(String.format("Saved batch of (%d) models.", batch.size()));
         } catch (Exception e) {
-            log.severe(String.format("Rolling back due to a %s (%d) delete error: %s.", modelName, id, e.getMessage()));
+            log.severe(String.format("Rolling back due to a batch of (%d) models saving error: %s.", batch.size(),
+                    e.getMessage()));
             entityTransaction.rollback();
-            // todo: throw exception about deleting error.
+            SAVE_MODELS.failed(e);
+            SAVE_MODELS.rolledBack();
+            status = SaveOutcome.Status.FAILED;
+            message = e.getMessage();
+        } finally {
+            clearPersistenceContext();
         }
+
+        for (int i = 0; i < batch.size(); i++) {
+            outcomes.set(batchIndexes[i], new SaveOutcome<>(batch.get(i), status, message));
+        }
+        batch.clear();
     }
 
-    private <M extends Model> boolean modelExists(Class<M> modelClass, long id) {
-        boolean result = false;
+    // Brings an already loaded model up to date after it was changed by a bulk statement.
+    <M extends Model> void refreshModel(Class<M> modelClass, long id) {
+        ModelCache modelCache = modelCaches.of(modelClass);
+        Model model = modelCache.peek(id);
+        modelCache.invalidate(id);
+        if (model == null) {
+            return;
+        }
+
         try {
-            M model = entityManager.find(modelClass, id);
-            if (model != null) {
-                result = true;
+            if (entityManager.contains(model)) {
+                entityManager.refresh(model);
             }
+        } catch (Exception e) {
+            log.warning(String.format("Error refreshing model by id (%d): %s.", id, e.getMessage()));
+        }
+    }
+
+    // Cached models stay, whatever a bulk statement changed is invalidated by the path that ran it.
+    void clearPersistenceContext() {
+        entityManager.clear();
+    }
+
+    // For models changed or deleted by bulk statements, which skip saveModel() and deleteModel().
+    void invalidateModels(Class<? extends Model> modelClass, Collection<Long> ids) {
+        modelCaches.of(modelClass).invalidate(ids);
+    }
+
+    void invalidateAllModels(Class<? extends Model> modelClass) {
+        modelCaches.of(modelClass).invalidateAll();
+    }
+
+    ModelCache getModelCache(Class<? extends Model> modelClass) {
+        return modelCaches.of(modelClass);
+    }
+
+    private <M extends Model> boolean modelExists(Class<M> modelClass, long id) {
+        return findModel(modelClass, id) != null;
+    }
+
+    private <M extends Model> M findModel(Class<M> modelClass, long id) {
+        M model = null;
+        try {
+            model = entityManager.find(modelClass, id);
         } catch (Exception e) {
             log.warning(String.format("Error getting model by id (%d): %s.", id, e.getMessage()));
         }
-        return result;
+        return model;
     }
 
     // todo: move to another util class anyIsNull() and anyIsEmpty()
@@ -0,0 +1,11 @@
+package ua.sumy.stpp.nobullying.service;
+
+// Notified by UserService after a user change is committed, on the thread that made it.
+// actor is the login of the admin who made the change.
+public interface UserListener {
+    default void userPermissionsChanged(long id, boolean isAdmin, String actor) {
+    }
+
+    default void userDeleted(long id, String actor) {
+    }
+}
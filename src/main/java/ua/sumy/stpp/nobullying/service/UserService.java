@@ -2,110 +2,198 @@ package ua.sumy.stpp.nobullying.service;
 
 import ua.sumy.stpp.nobullying.model.User;
 import ua.sumy.stpp.nobullying.service.error.*;
+import ua.sumy.stpp.nobullying.service.metrics.OperationMetrics;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
 
 import javax.persistence.Query;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.OptimisticLockException;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
-class UserService extends Service {
+public class UserService extends Service {
+    private static final OperationMetrics GET_USER_BY_ID = ServiceMetrics.operation("UserService.getUserById");
+    private static final OperationMetrics GET_ALL_USERS = ServiceMetrics.operation("UserService.getAllUsers");
+    private static final OperationMetrics GET_USERS_PAGE = ServiceMetrics.operation("UserService.getUsersPage");
+    private static final OperationMetrics VERIFY = ServiceMetrics.operation("UserService.verify");
+    private static final OperationMetrics REGISTER_USER = ServiceMetrics.operation("UserService.registerUser");
+    private static final OperationMetrics IS_USER_ADMIN = ServiceMetrics.operation("UserService.isUserAdmin");
+    private static final OperationMetrics PROMOTE_USER = ServiceMetrics.operation("UserService.promoteUser");
+    private static final OperationMetrics DEGRADE_USER = ServiceMetrics.operation("UserService.degradeUser");
+    private static final OperationMetrics DELETE_USER = ServiceMetrics.operation("UserService.deleteUser");
+    private static final OperationMetrics DELETE_USERS = ServiceMetrics.operation("UserService.deleteUsers");
+    private static final OperationMetrics CHANGE_USERS_PERMISSIONS =
+            ServiceMetrics.operation("UserService.changeUsersPermissions");
+    private static final int MAX_BULK_ATTEMPTS = 3;
+
     private final EntityManager entityManager;
+    private final List<UserListener> listeners;
     private final Logger log = Logger.getLogger(UserService.class.getName());
 
-    UserService(EntityManager entityManager) {
-        super(entityManager);
+    public UserService(EntityManager entityManager) {
+        this(entityManager, Collections.emptyList());
+    }
+
+    public UserService(EntityManager entityManager, List<UserListener> listeners) {
+        this(entityManager, listeners, new ModelCaches());
+    }
+
+    public UserService(EntityManager entityManager, List<UserListener> listeners, ModelCaches modelCaches) {
+        super(entityManager, modelCaches);
         this.entityManager = entityManager;
+        this.listeners = listeners;
     }
 
     User getUserById(long id) throws ModelNotFoundException {
-        return getModelById(User.class, id);
+        return GET_USER_BY_ID.time(() -> getModelById(User.class, id));
     }
 
     List<User> getAllUsers() {
-        return getAllModels("fetchAllUsers");
+        return GET_ALL_USERS.time(() -> getAllModels("fetchAllUsers"));
+    }
+
+    public Page<User> getUsersPage(String cursor, int pageSize) throws BadParametersException {
+        return GET_USERS_PAGE.time(() -> {
+            checkPageSize(pageSize);
+
+            long[] position = PageCursor.decode(cursor, "ID", 1);
+            Query query;
+            if (position == null) {
+                query = entityManager.createQuery("SELECT u FROM User u ORDER BY u.id");
+            } else {
+                query = entityManager.createQuery("SELECT u FROM User u WHERE u.id > :id ORDER BY u.id");
+                query.setParameter("id", position[0]);
+            }
+
+            return getModelsPage(query, pageSize, (User user) -> PageCursor.encode("ID", user.getId()));
+        });
     }
 
     boolean verify(String login, String password) throws BadParametersException {
-        if (anyIsNull(login, password) || anyIsEmpty(login, password)) {
-            log.severe("Attempt to verify user with null or empty login or password.");
-            throw new BadParametersException("Verifying without login or password permitted.");
-        }
+        return VERIFY.time(() -> {
+            if (anyIsNull(login, password) || anyIsEmpty(login, password)) {
+                log.severe("Attempt to verify user with null or empty login or password.");
+                throw new BadParametersException("Verifying without login or password permitted.");
+            }
 
-        String queryText = "SELECT u FROM User u WHERE u.login = :login AND u.password = :password";
-        Query query = entityManager.createQuery(queryText);
-        query.setParameter("login", login);
-        query.setParameter("password", password);
+            String queryText = "SELECT u FROM User u WHERE u.login = :login AND u.password = :password";
+            Query query = entityManager.createQuery(queryText);
+            query.setParameter("login", login);
+            query.setParameter("password", password);
 
-        boolean result = false;
-        try {
-            User user = (User) query.getSingleResult();
-            if (user != null) {
-                result = true;
-                log.info(String.format("Successfully verified with login (%s) and password (%s).", login, password));
-            } else {
-                log.info(String.format("Verifying with login (%s) and password (%s) wasn't successful.", login,
-                        password));
+            boolean result = false;
+            try {
+                User user = (User) query.getSingleResult();
+                if (user != null) {
+                    result = true;
+                    log.info(String.format("Successfully verified with login (%s) and password (%s).", login,
+                            password));
+                } else {
+                    log.info(String.format("Verifying with login (%s) and password (%s) wasn't successful.", login,
+                            password));
+                }
+            } catch (Exception e) {
+                log.severe(String.format("Verifying with login (%s) and password (%s) ended with error: %s", login,
+                        password, e.getMessage()));
+                // todo: throw exception about verifying error.
             }
-        } catch (Exception e) {
-            log.severe(String.format("Verifying with login (%s) and password (%s) ended with error: %s", login,
-                    password, e.getMessage()));
-            // todo: throw exception about verifying error.
-        }
-        return result;
+            return result;
+        });
     }
 
     void registerUser(User user) throws BadOperationException, BadParametersException {
-        if (anyIsNull(user)) {
-            log.warning("Attempt to register null user.");
-            throw new BadParametersException("Registering null user permitted.");
-        }
+        REGISTER_USER.<BadOperationException, BadParametersException, RuntimeException, RuntimeException>run(() -> {
+            if (anyIsNull(user)) {
+                log.warning("Attempt to register null user.");
+                throw new BadParametersException("Registering null user permitted.");
+            }
 
-        String login = user.getLogin();
-        String password = user.getPassword();
-        String name = user.getName();
-        String surname = user.getSurname();
+            String login = user.getLogin();
+            String password = user.getPassword();
+            String name = user.getName();
+            String surname = user.getSurname();
 
-        if (anyIsNull(login, password, name, surname) || anyIsEmpty(login, password, name, surname)) {
-            log.warning("Attempt to register user without login, password, name or surname.");
-            throw new BadParametersException("Registering user without login, password, name or surname permitted.");
-        }
+            if (anyIsNull(login, password, name, surname) || anyIsEmpty(login, password, name, surname)) {
+                log.warning("Attempt to register user without login, password, name or surname.");
+                throw new BadParametersException(
+                        "Registering user without login, password, name or surname permitted.");
+            }
 
-        if (isUserAlreadyRegistered(login)) {
-            log.warning(String.format("Attempt to register user with existing login (%s).", login));
-            throw new BadOperationException("Registering with existing login permitted.");
-        }
+            if (isUserAlreadyRegistered(login)) {
+                log.warning(String.format("Attempt to register user with existing login (%s).", login));
+                throw new BadOperationException("Registering with existing login permitted.");
+            }
 
-        saveModel(user);
-        log.info(String.format("Registered new user (%s %s (%s:%s)).", name, surname, login, password));
+            saveModel(user);
+            log.info(String.format("Registered new user (%s %s (%s:%s)).", name, surname, login, password));
+        });
     }
 
     boolean isUserAdmin(long id) throws ModelNotFoundException {
-        User user = getUserById(id);
-        return user.isAdmin();
+        return IS_USER_ADMIN.time(() -> {
+            User user = getUserById(id);
+            return user.isAdmin();
+        });
     }
 
-    void promoteUser(long id) throws ModelNotFoundException, BadOperationException {
-        saveNewUserPermissions(getUserById(id), true);
+    void promoteUser(long id, String actor) throws ModelNotFoundException, BadOperationException {
+        PROMOTE_USER.<ModelNotFoundException, BadOperationException, RuntimeException, RuntimeException>run(() -> {
+            saveNewUserPermissions(getManagedModelById(User.class, id), true, actor);
+        });
     }
 
-    void degradeUser(long id) throws ModelNotFoundException, BadOperationException {
-        saveNewUserPermissions(getUserById(id), false);
+    void degradeUser(long id, String actor) throws ModelNotFoundException, BadOperationException {
+        DEGRADE_USER.<ModelNotFoundException, BadOperationException, RuntimeException, RuntimeException>run(() -> {
+            saveNewUserPermissions(getManagedModelById(User.class, id), false, actor);
+        });
     }
 
-    void deleteUser(long id) throws ModelNotFoundException {
-        User user = getModelById(User.class, id);
-        try {
-            deleteModel(user);
-        } catch (BadParametersException e) {
-            log.severe(String.format("Error deleting user due it's null: %s.", e.getMessage()));
-            // todo: throw exception about error deleting user.
-        } catch (BadOperationException e) {
-            log.severe(String.format("Error deleting user due it doesn't exist by id (%d): %s", id, e.getMessage()));
-        }
+    void deleteUser(long id, String actor) throws ModelNotFoundException {
+        DELETE_USER.run(() -> {
+            User user = getManagedModelById(User.class, id);
+            try {
+                if (deleteModel(user)) {
+                    notifyListeners(listener -> listener.userDeleted(id, actor));
+                }
+            } catch (BadParametersException e) {
+                log.severe(String.format("Error deleting user due it's null: %s.", e.getMessage()));
+                // todo: throw exception about error deleting user.
+            } catch (BadOperationException e) {
+                log.severe(String.format("Error deleting user due it doesn't exist by id (%d): %s", id,
+                        e.getMessage()));
+            }
+        });
     }
 
-    private void saveNewUserPermissions(User user, boolean isAdmin) throws BadOperationException {
+    // Deletes the users in one transaction and returns how many there were, ids of missing users are skipped.
+    public int deleteUsers(long[] ids, String actor) {
+        return DELETE_USERS.time(() -> {
+            List<Long> deletedIds = changeUsers(ids, DELETE_USERS, this::deleteUsersChunk);
+            clearPersistenceContext();
+            invalidateModels(User.class, deletedIds);
+            for (Long id: deletedIds) {
+                notifyListeners(listener -> listener.userDeleted(id, actor));
+            }
+            log.info(String.format("Deleted (%d) users.", deletedIds.size()));
+            return deletedIds.size();
+        });
+    }
+
+    public int promoteUsers(long[] ids, String actor) {
+        return changeUsersPermissions(ids, true, actor);
+    }
+
+    public int degradeUsers(long[] ids, String actor) {
+        return changeUsersPermissions(ids, false, actor);
+    }
+
+    private void saveNewUserPermissions(User user, boolean isAdmin, String actor) throws BadOperationException {
         long id = user.getId();
 
         if (isAdmin == user.isAdmin()) {
@@ -116,13 +204,106 @@ class UserService extends Service {
         user.setAdmin(isAdmin);
 
         try {
-            saveModel(user);
-            log.info(String.format("User (%d) is%s admin now.", id, (isAdmin) ? "" : "n't"));
+            if (saveModel(user)) {
+                log.info(String.format("User (%d) is%s admin now.", id, (isAdmin) ? "" : "n't"));
+                notifyListeners(listener -> listener.userPermissionsChanged(id, isAdmin, actor));
+            }
         } catch (BadParametersException e) {
             log.severe(String.format("Error saving user (%d) new permissions: %s", id, e.getMessage()));
         }
     }
 
+    // Only users that don't have the permissions yet are changed and counted, like promoteUser() refuses them.
+    private int changeUsersPermissions(long[] ids, boolean isAdmin, String actor) {
+        return CHANGE_USERS_PERMISSIONS.time(() -> {
+            List<Long> changedIds = changeUsers(ids, CHANGE_USERS_PERMISSIONS,
+                    chunk -> changeUsersPermissionsChunk(chunk, isAdmin));
+            clearPersistenceContext();
+            invalidateModels(User.class, changedIds);
+            for (Long id: changedIds) {
+                notifyListeners(listener -> listener.userPermissionsChanged(id, isAdmin, actor));
+            }
+            log.info(String.format("(%d) users are%s admins now.", changedIds.size(), (isAdmin) ? "" : "n't"));
+            return changedIds.size();
+        });
+    }
+
+    // Runs the statements on every chunk of ids in one transaction and returns the ids they changed, none if it
+    // failed. A chunk whose rows changed between its select and its statement fails the attempt, the next one
+    // selects again, so callers only hear about rows this transaction changed.
+    private List<Long> changeUsers(long[] ids, OperationMetrics metrics,
+                                   Function<List<Long>, List<Long>> statements) {
+        for (int attempt = 1; attempt <= MAX_BULK_ATTEMPTS; attempt++) {
+            List<Long> changedIds = new ArrayList<>();
+            EntityTransaction entityTransaction = entityManager.getTransaction();
+            try {
+                entityTransaction.begin();
+                for (List<Long> chunk: chunkIds(uniqueIds(ids))) {
+                    changedIds.addAll(statements.apply(chunk));
+                }
+                entityTransaction.commit();
+                bumpUserVersion(changedIds.size());
+                return changedIds;
+            } catch (OptimisticLockException e) {
+                log.warning(String.format("Rolling back attempt (%d) to change (%d) users: %s.", attempt, ids.length,
+                        e.getMessage()));
+                entityTransaction.rollback();
+                metrics.rolledBack();
+            } catch (Exception e) {
+                log.severe(String.format("Error changing (%d) users: %s.", ids.length, e.getMessage()));
+                entityTransaction.rollback();
+                metrics.failed(e);
+                metrics.rolledBack();
+                return Collections.emptyList();
+            }
+        }
+
+        log.severe(String.format("Users kept changing concurrently, (%d) users left as they were.", ids.length));
+        return Collections.emptyList();
+    }
+
+    private List<Long> deleteUsersChunk(List<Long> chunk) {
+        String parameters = idParameters(chunk.size());
+        Query selectQuery = entityManager.createQuery("SELECT u.id FROM User u WHERE u.id IN (" + parameters + ")");
+        setIdParameters(selectQuery, chunk);
+        List<Long> existingIds = getResults(selectQuery);
+
+        Query deleteQuery = entityManager.createQuery("DELETE FROM User u WHERE u.id IN (" + parameters + ")");
+        setIdParameters(deleteQuery, chunk);
+        if (deleteQuery.executeUpdate() != existingIds.size()) {
+            throw new OptimisticLockException("Users were deleted concurrently.");
+        }
+        return existingIds;
+    }
+
+    private List<Long> changeUsersPermissionsChunk(List<Long> chunk, boolean isAdmin) {
+        Query selectQuery = entityManager.createQuery("SELECT u.id FROM User u WHERE u.isAdmin = :current " +
+                "AND u.id IN (" + idParameters(chunk.size()) + ")");
+        selectQuery.setParameter("current", !isAdmin);
+        setIdParameters(selectQuery, chunk);
+        List<Long> selectedIds = getResults(selectQuery);
+        if (selectedIds.isEmpty()) {
+            return selectedIds;
+        }
+
+        Query updateQuery = entityManager.createQuery("UPDATE User u SET u.isAdmin = :admin WHERE u.isAdmin = " +
+                ":current AND u.id IN (" + idParameters(selectedIds.size()) + ")");
+        updateQuery.setParameter("admin", isAdmin);
+        updateQuery.setParameter("current", !isAdmin);
+        setIdParameters(updateQuery, selectedIds);
+        if (updateQuery.executeUpdate() != selectedIds.size()) {
+            throw new OptimisticLockException("User permissions were changed concurrently.");
+        }
+        return selectedIds;
+    }
+
+    // Bulk statements bypass saveModel, so they bump the version themselves.
+    private void bumpUserVersion(int updated) {
+        if (updated > 0) {
+            ModelVersions.bump(User.class);
+        }
+    }
+
     private boolean isUserAlreadyRegistered(String login) {
         String queryText = "SELECT u FROM User u WHERE u.login = :login";
         Query query = entityManager.createQuery(queryText);
@@ -139,4 +320,15 @@ class UserService extends Service {
         }
         return result;
     }
+
+    private void notifyListeners(Consumer<UserListener> notification) {
+        for (UserListener listener: listeners) {
+            try {
+                notification.accept(listener);
+            } catch (RuntimeException e) {
+                log.severe(String.format("User listener (%s) failed: %s.", listener.getClass().getName(),
+                        e.getMessage()));
+            }
+        }
+    }
 }
@@ -0,0 +1,408 @@
+package ua.sumy.stpp.nobullying.service.archive;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+// Append-only store of reports moved out of the database, in segment files of deflate-compressed blocks.
+// Every block header carries the id and sent date range of its reports, the headers are kept in memory as
+// a sparse index, so a lookup reads and inflates only the blocks whose range can hold the report.
+// Block layout: magic (4), count (4), first id (8), last id (8), first sent (8), last sent (8),
+// payload length (4), payload checksum (4), payload.
+public final class ReportArchive {
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    public static final int DEFAULT_CACHED_BLOCKS = 16;
+
+    private static final String SUFFIX = ".archive";
+    private static final int MAGIC = 0x4E425241;
+    private static final int HEADER_SIZE = 48;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final List<Block> blocks = new CopyOnWriteArrayList<>();
+    private final Map<Block, byte[]> cachedBlocks;
+    private Path segment;
+    private long segmentNumber;
+    private final Logger log = Logger.getLogger(ReportArchive.class.getName());
+
+    public ReportArchive(Path directory, long segmentBytes, int cachedBlocks) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.cachedBlocks = new LinkedHashMap<Block, byte[]>(cachedBlocks, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Block, byte[]> eldest) {
+                return size() > cachedBlocks;
+            }
+        };
+
+        List<Path> segments = listSegments();
+        for (Path path: segments) {
+            loadIndex(path, path.equals(segments.get(segments.size() - 1)));
+        }
+        if (!segments.isEmpty()) {
+            segment = segments.get(segments.size() - 1);
+            segmentNumber = numberOf(segment);
+        }
+        log.info(String.format("Opened report archive with (%d) reports in (%d) blocks.", size(), blocks.size()));
+
+        ServiceMetrics.getDefault().registerGauge("nobullying_archived_reports",
+                "Reports moved from the database to the archive.", this::size);
+    }
+
+    // Writes the reports as one block and forces it to disk before returning.
+    public synchronized void append(List<Report> reports) throws IOException {
+        if (reports.isEmpty()) {
+            return;
+        }
+
+        Block block = new Block();
+        byte[] payload = compress(reports, block);
+        if (segment == null || Files.size(segment) >= segmentBytes) {
+            segmentNumber++;
+            segment = directory.resolve(String.format("%020d%s", segmentNumber, SUFFIX));
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(MAGIC).putInt(reports.size()).putLong(block.firstId).putLong(block.lastId)
+                .putLong(block.firstSentTime).putLong(block.lastSentTime).putInt(payload.length)
+                .putInt((int) crc.getValue()).put(payload).flip();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            block.offset = channel.size();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        block.path = segment;
+        block.count = reports.size();
+        block.length = payload.length;
+        block.checksum = (int) crc.getValue();
+        blocks.add(block);
+    }
+
+    // The newest copy of the report, null if it was never archived.
+    public Report find(long id) throws IOException {
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            Block block = blocks.get(i);
+            if (id < block.firstId || id > block.lastId) {
+                continue;
+            }
+            for (Report report: readBlock(block)) {
+                if (report.getId() == id) {
+                    return report;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Reports sent in [from, to), ordered by sent date and id.
+    public List<Report> findSentBetween(Date from, Date to) throws IOException {
+        Map<Long, Report> found = new LinkedHashMap<>();
+        for (Block block: blocks) {
+            if (block.lastSentTime < from.getTime() || block.firstSentTime >= to.getTime()) {
+                continue;
+            }
+            for (Report report: readBlock(block)) {
+                if (report.getSentDate() == null) {
+                    continue;
+                }
+                long sentTime = report.getSentDate().getTime();
+                if (sentTime >= from.getTime() && sentTime < to.getTime()) {
+                    found.put(report.getId(), report);
+                }
+            }
+        }
+
+        List<Report> reports = new ArrayList<>(found.values());
+        reports.sort(Comparator.comparing(Report::getSentDate).thenComparingLong(Report::getId));
+        return reports;
+    }
+
+    // Reports archived twice by a run interrupted between writing and deleting are counted twice.
+    public long size() {
+        long size = 0;
+        for (Block block: blocks) {
+            size += block.count;
+        }
+        return size;
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    // Passes every archived report to the consumer block by block, without pushing lookups out of the cache.
+    public long scan(Consumer<Report> consumer) throws IOException {
+        long scanned = 0;
+        for (Block block: blocks) {
+            for (Report report: decode(block, inflate(block, readPayload(block.path, block.offset + HEADER_SIZE,
+                    block.length)))) {
+                consumer.accept(report);
+                scanned++;
+            }
+        }
+        return scanned;
+    }
+
+    private List<Report> readBlock(Block block) throws IOException {
+        byte[] records;
+        synchronized (cachedBlocks) {
+            records = cachedBlocks.get(block);
+        }
+        if (records == null) {
+            records = inflate(block, readPayload(block.path, block.offset + HEADER_SIZE, block.length));
+            synchronized (cachedBlocks) {
+                cachedBlocks.put(block, records);
+            }
+        }
+        return decode(block, records);
+    }
+
+    private static List<Report> decode(Block block, byte[] records) throws IOException {
+        List<Report> reports = new ArrayList<>(block.count);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(records));
+        for (int i = 0; i < block.count; i++) {
+            reports.add(readReport(in));
+        }
+        return reports;
+    }
+
+    // A block torn by a crash can only be the last one written, it is cut off so appending continues cleanly.
+    private void loadIndex(Path path, boolean last) throws IOException {
+        long size = Files.size(path);
+        long offset = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (offset < size) {
+                header.clear();
+                Block block = (size - offset >= HEADER_SIZE && readFully(channel, header, offset)) ?
+                        readHeader(header, path, offset) : null;
+                if (block == null || offset + HEADER_SIZE + block.length > size ||
+                        (last && offset + HEADER_SIZE + block.length == size && !checksumMatches(block))) {
+                    break;
+                }
+                blocks.add(block);
+                offset += HEADER_SIZE + block.length;
+            }
+        }
+
+        if (offset < size) {
+            if (!last) {
+                throw new IOException(String.format("Archive segment (%s) is corrupt at (%d).", path, offset));
+            }
+            log.warning(String.format("Truncating torn block at (%d) of archive segment (%s).", offset, path));
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+            }
+        }
+    }
+
+    private Block readHeader(ByteBuffer header, Path path, long offset) {
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            return null;
+        }
+        Block block = new Block();
+        block.path = path;
+        block.offset = offset;
+        block.count = header.getInt();
+        block.firstId = header.getLong();
+        block.lastId = header.getLong();
+        block.firstSentTime = header.getLong();
+        block.lastSentTime = header.getLong();
+        block.length = header.getInt();
+        block.checksum = header.getInt();
+        return (block.count > 0 && block.length > 0) ? block : null;
+    }
+
+    private boolean checksumMatches(Block block) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(readPayload(block.path, block.offset + HEADER_SIZE, block.length));
+        return (int) crc.getValue() == block.checksum;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path path: stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static long numberOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static byte[] readPayload(Path path, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (!readFully(channel, buffer, offset)) {
+                throw new IOException(String.format("Archive block at (%d) of (%s) is cut short.", offset, path));
+            }
+        }
+        return buffer.array();
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] compress(List<Report> reports, Block block) throws IOException {
+        block.firstId = Long.MAX_VALUE;
+        block.lastId = Long.MIN_VALUE;
+        block.firstSentTime = Long.MAX_VALUE;
+        block.lastSentTime = Long.MIN_VALUE;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            for (Report report: reports) {
+                block.firstId = Math.min(block.firstId, report.getId());
+                block.lastId = Math.max(block.lastId, report.getId());
+                // legacy rows without a sent date are archived but left out of the sent date range.
+                if (report.getSentDate() != null) {
+                    block.firstSentTime = Math.min(block.firstSentTime, report.getSentDate().getTime());
+                    block.lastSentTime = Math.max(block.lastSentTime, report.getSentDate().getTime());
+                }
+                writeReport(out, report);
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] inflate(Block block, byte[] payload) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException(String.format("Archive block at (%d) of (%s) is cut short.",
+                            block.offset, block.path));
+                }
+                bytes.write(buffer, 0, inflated);
+            }
+            return bytes.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("Archive block at (%d) of (%s) is corrupt.", block.offset,
+                    block.path), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeReport(DataOutputStream out, Report report) throws IOException {
+        out.writeLong(report.getId());
+        writeString(out, report.getUsername());
+        writeString(out, report.getText());
+        out.writeByte(report.getState().ordinal());
+        writeDate(out, report.getSentDate());
+        writeDate(out, report.getBeginMentoringDate());
+        writeDate(out, report.getFinishedDate());
+        out.writeInt(report.getPriority());
+        out.writeLong(report.getDuplicateOf());
+        out.writeLong(report.getVersion());
+    }
+
+    private static Report readReport(DataInputStream in) throws IOException {
+        Report report = new Report();
+        report.setId(in.readLong());
+        report.setUsername(readString(in));
+        report.setText(readString(in));
+        report.setState(Report.ProcessingState.values()[in.readByte()]);
+        report.setSentDate(readDate(in));
+        report.setBeginMentoringDate(readDate(in));
+        report.setFinishedDate(readDate(in));
+        report.setPriority(in.readInt());
+        report.setDuplicateOf(in.readLong());
+        report.setVersion(in.readLong());
+        return report;
+    }
+
+    // writeUTF is limited to 64 kilobytes, report texts aren't.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(DataOutputStream out, Date date) throws IOException {
+        out.writeLong((date != null) ? date.getTime() : NO_DATE);
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        long time = in.readLong();
+        return (time != NO_DATE) ? new Date(time) : null;
+    }
+
+    // Identity equality on purpose, every block is one object in the index and the cache.
+    private static final class Block {
+        Path path;
+        long offset;
+        int count;
+        int length;
+        int checksum;
+        long firstId;
+        long lastId;
+        long firstSentTime;
+        long lastSentTime;
+    }
+}
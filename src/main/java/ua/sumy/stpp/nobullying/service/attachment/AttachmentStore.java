@@ -0,0 +1,145 @@
+package ua.sumy.stpp.nobullying.service.attachment;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Logger;
+
+// Files addressed by the SHA-256 of their content, so the same upload is kept once however often it's attached.
+// Stored files are never changed, the hash doubles as a strong validator for them. Images are stored and served
+// without their metadata, a photo of a child mustn't give away where it was taken.
+public final class AttachmentStore {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path directory;
+    private final Path uploads;
+    private final Path thumbnails;
+    private final Logger log = Logger.getLogger(AttachmentStore.class.getName());
+
+    public AttachmentStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.uploads = Files.createDirectories(directory.resolve("uploads"));
+        this.thumbnails = Files.createDirectories(directory.resolve("thumbnails"));
+    }
+
+    // Streams the content to a temporary file while hashing it, then moves it under its hash. Images are rewritten
+    // without their metadata first and hashed as they are stored.
+    public StoredContent store(InputStream content, long maxSize) throws IOException {
+        MessageDigest digest = newDigest();
+        Path upload = createTemporaryFile();
+        Path stripped = null;
+        long size = 0;
+        try {
+            try (OutputStream output = Files.newOutputStream(upload)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxSize) {
+                        throw new ContentTooLargeException(maxSize);
+                    }
+                    digest.update(buffer, 0, read);
+                    output.write(buffer, 0, read);
+                }
+            }
+
+            Path stored = upload;
+            MetadataStripper stripper = MetadataStripper.of(upload);
+            if (stripper != null) {
+                stripped = createTemporaryFile();
+                digest = newDigest();
+                try (OutputStream output = new BufferedOutputStream(new DigestOutputStream(
+                        Files.newOutputStream(stripped), digest), BUFFER_SIZE)) {
+                    stripper.strip(output);
+                }
+                stored = stripped;
+                size = Files.size(stripped);
+            }
+
+            String sha256 = toHex(digest.digest());
+            Path path = resolve(sha256);
+            if (Files.exists(path)) {
+                log.info(String.format("Content (%s) is already stored.", sha256));
+                return new StoredContent(sha256, size);
+            }
+
+            Files.createDirectories(path.getParent());
+            try {
+                Files.move(stored, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // the same content was stored concurrently.
+            }
+            log.info(String.format("Stored content (%s) of (%d) bytes.", sha256, size));
+            return new StoredContent(sha256, size);
+        } finally {
+            Files.deleteIfExists(upload);
+            if (stripped != null) {
+                Files.deleteIfExists(stripped);
+            }
+        }
+    }
+
+    // Two levels of hash prefix directories keep any single directory small.
+    public Path resolve(String sha256) {
+        if (!isSha256(sha256)) {
+            throw new IllegalArgumentException("Not a SHA-256 hex digest.");
+        }
+        return directory.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    public boolean contains(String sha256) {
+        return isSha256(sha256) && Files.exists(resolve(sha256));
+    }
+
+    // Downscaled JPEG preview of the content, present once the thumbnail pipeline processed it.
+    public Path resolveThumbnail(String sha256) {
+        if (!isSha256(sha256)) {
+            throw new IllegalArgumentException("Not a SHA-256 hex digest.");
+        }
+        return thumbnails.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256 + ".jpg");
+    }
+
+    // Temporary file next to the store, so finished files can be moved in atomically.
+    Path createTemporaryFile() throws IOException {
+        return Files.createTempFile(uploads, "upload", ".tmp");
+    }
+
+    private static boolean isSha256(String value) {
+        if (value == null || value.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,9 @@
+package ua.sumy.stpp.nobullying.service.attachment;
+
+import java.io.IOException;
+
+public class ContentTooLargeException extends IOException {
+    public ContentTooLargeException(long maxSize) {
+        super(String.format("Content is larger than (%d) bytes.", maxSize));
+    }
+}
@@ -0,0 +1,9 @@
+package ua.sumy.stpp.nobullying.service.attachment;
+
+import java.io.IOException;
+
+public class MalformedContentException extends IOException {
+    public MalformedContentException(String format) {
+        super(String.format("Content isn't a well-formed %s image.", format));
+    }
+}
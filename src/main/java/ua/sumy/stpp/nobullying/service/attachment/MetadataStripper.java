@@ -0,0 +1,480 @@
+package ua.sumy.stpp.nobullying.service.attachment;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+// Rewrites an image without the metadata cameras and editors put into it, EXIF location included. Only the
+// container is parsed, the pixel data is copied as it is and nothing is re-encoded.
+final class MetadataStripper {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int JPEG_TEM = 0x01;
+    private static final int JPEG_RST0 = 0xD0;
+    private static final int JPEG_RST7 = 0xD7;
+    private static final int JPEG_SOI = 0xD8;
+    private static final int JPEG_EOI = 0xD9;
+    private static final int JPEG_SOS = 0xDA;
+    private static final int JPEG_APP0 = 0xE0;
+    private static final int JPEG_APP1 = 0xE1;
+    private static final int JPEG_APP2 = 0xE2;
+    private static final int JPEG_APP14 = 0xEE;
+    private static final int JPEG_APP15 = 0xEF;
+    private static final int JPEG_COM = 0xFE;
+    private static final byte[] ICC_PROFILE = "ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXIF = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+    private static final int EXIF_ORIENTATION = 0x0112;
+    private static final int EXIF_UPRIGHT = 1;
+    private static final int TIFF_SHORT = 3;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int PNG_END = fourCc("IEND");
+    private static final Set<Integer> PNG_METADATA = new HashSet<>(Arrays.asList(fourCc("tEXt"), fourCc("zTXt"),
+            fourCc("iTXt"), fourCc("eXIf"), fourCc("tIME")));
+
+    private static final int GIF_HEADER_SIZE = 13;
+    private static final int GIF_IMAGE_DESCRIPTOR_SIZE = 9;
+    private static final int GIF_EXTENSION = 0x21;
+    private static final int GIF_IMAGE = 0x2C;
+    private static final int GIF_TRAILER = 0x3B;
+    private static final int GIF_COMMENT = 0xFE;
+    private static final int GIF_APPLICATION = 0xFF;
+    private static final Set<String> GIF_ANIMATION = new HashSet<>(Arrays.asList("NETSCAPE2.0", "ANIMEXTS1.0"));
+
+    private static final int RIFF = fourCc("RIFF");
+    private static final int WEBP = fourCc("WEBP");
+    private static final int WEBP_EXTENDED = fourCc("VP8X");
+    private static final int WEBP_EXIF_AND_XMP_FLAGS = 0x0C;
+    private static final Set<Integer> WEBP_METADATA = new HashSet<>(Arrays.asList(fourCc("EXIF"), fourCc("XMP ")));
+
+    private enum Format {
+        JPEG, PNG, GIF, WEBP
+    }
+
+    private final Path source;
+    private final Format format;
+
+    private MetadataStripper(Path source, Format format) {
+        this.source = source;
+        this.format = format;
+    }
+
+    // Null when the content isn't an image format that carries metadata.
+    static MetadataStripper of(Path source) throws IOException {
+        byte[] header = new byte[12];
+        int read = 0;
+        try (InputStream in = Files.newInputStream(source)) {
+            int count;
+            while (read < header.length && (count = in.read(header, read, header.length - read)) != -1) {
+                read += count;
+            }
+        }
+
+        Format format = null;
+        if (read >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == JPEG_SOI && (header[2] & 0xFF) == 0xFF) {
+            format = Format.JPEG;
+        } else if (read >= PNG_SIGNATURE.length && startsWith(header, PNG_SIGNATURE)) {
+            format = Format.PNG;
+        } else if (read >= 4 && startsWith(header, "GIF8".getBytes(StandardCharsets.US_ASCII))) {
+            format = Format.GIF;
+        } else if (read == header.length && intAt(header, 0) == RIFF && intAt(header, 8) == WEBP) {
+            format = Format.WEBP;
+        }
+        return (format != null) ? new MetadataStripper(source, format) : null;
+    }
+
+    void strip(OutputStream target) throws IOException {
+        DataOutputStream out = new DataOutputStream(target);
+        try (DataInputStream in = open()) {
+            switch (format) {
+                case JPEG:
+                    stripJpeg(in, out);
+                    break;
+                case PNG:
+                    stripPng(in, out);
+                    break;
+                case GIF:
+                    stripGif(in, out);
+                    break;
+                case WEBP:
+                    stripWebp(in, out, keptWebpSize());
+                    break;
+            }
+        } catch (EOFException e) {
+            throw new MalformedContentException(format.name());
+        }
+        out.flush();
+    }
+
+    // Orientation of a jpeg, upright for anything else. Decoders hand out the pixels as they're stored and leave
+    // turning them upright to the caller.
+    static int jpegOrientation(Path source) throws IOException {
+        MetadataStripper stripper = of(source);
+        if (stripper == null || stripper.format != Format.JPEG) {
+            return EXIF_UPRIGHT;
+        }
+
+        try (DataInputStream in = stripper.open()) {
+            in.readUnsignedShort();
+            int marker = readJpegMarker(in);
+            while (marker != JPEG_SOS && marker != JPEG_EOI) {
+                if (marker != JPEG_TEM && (marker < JPEG_RST0 || marker > JPEG_RST7)) {
+                    int length = in.readUnsignedShort();
+                    if (length < 2) {
+                        throw new MalformedContentException(Format.JPEG.name());
+                    }
+                    byte[] segment = new byte[length - 2];
+                    in.readFully(segment);
+                    if (marker == JPEG_APP1 && startsWith(segment, EXIF)) {
+                        return exifOrientation(segment);
+                    }
+                }
+                marker = readJpegMarker(in);
+            }
+        } catch (EOFException e) {
+            throw new MalformedContentException(Format.JPEG.name());
+        }
+        return EXIF_UPRIGHT;
+    }
+
+    // Whatever follows the end of the image goes too, multi-picture files keep their other images there.
+    private static void stripJpeg(DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeShort(in.readUnsignedShort());
+        int marker = readJpegMarker(in);
+        while (marker != JPEG_EOI) {
+            if (marker == JPEG_TEM || (marker >= JPEG_RST0 && marker <= JPEG_RST7)) {
+                out.write(0xFF);
+                out.write(marker);
+                marker = readJpegMarker(in);
+                continue;
+            }
+
+            int length = in.readUnsignedShort();
+            if (length < 2) {
+                throw new MalformedContentException(Format.JPEG.name());
+            }
+            byte[] segment = new byte[length - 2];
+            in.readFully(segment);
+            if (isJpegMetadata(marker, segment)) {
+                int orientation = (marker == JPEG_APP1) ? exifOrientation(segment) : EXIF_UPRIGHT;
+                if (orientation != EXIF_UPRIGHT) {
+                    writeExifOrientation(out, orientation);
+                }
+                marker = readJpegMarker(in);
+                continue;
+            }
+
+            out.write(0xFF);
+            out.write(marker);
+            out.writeShort(length);
+            out.write(segment);
+            marker = (marker == JPEG_SOS) ? copyJpegScan(in, out) : readJpegMarker(in);
+        }
+        out.write(0xFF);
+        out.write(JPEG_EOI);
+    }
+
+    // Kept are JFIF, color profiles and the Adobe color transform, the pixels don't decode right without them.
+    // Every other application segment and comment goes, Exif, XMP and IPTC included, except for the Exif orientation
+    // which is written back on its own, portrait photos of phones show sideways without it.
+    private static boolean isJpegMetadata(int marker, byte[] segment) {
+        if (marker == JPEG_COM) {
+            return true;
+        }
+        if (marker < JPEG_APP0 || marker > JPEG_APP15 || marker == JPEG_APP0 || marker == JPEG_APP14) {
+            return false;
+        }
+        return marker != JPEG_APP2 || !startsWith(segment, ICC_PROFILE);
+    }
+
+    // The orientation of the first image directory, upright when the segment isn't Exif or has none that's valid.
+    private static int exifOrientation(byte[] segment) {
+        int tiff = EXIF.length;
+        if (!startsWith(segment, EXIF) || segment.length < tiff + 8) {
+            return EXIF_UPRIGHT;
+        }
+        boolean littleEndian = segment[tiff] == 'I' && segment[tiff + 1] == 'I';
+        if (!littleEndian && (segment[tiff] != 'M' || segment[tiff + 1] != 'M')) {
+            return EXIF_UPRIGHT;
+        }
+
+        int directoryOffset = intAt(segment, tiff + 4);
+        long directory = tiff + Integer.toUnsignedLong(littleEndian ? Integer.reverseBytes(directoryOffset) :
+                directoryOffset);
+        if (directory + 2 > segment.length) {
+            return EXIF_UPRIGHT;
+        }
+        int entries = shortAt(segment, (int) directory, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) directory + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                break;
+            }
+            if (shortAt(segment, entry, littleEndian) == EXIF_ORIENTATION) {
+                int orientation = shortAt(segment, entry + 8, littleEndian);
+                boolean isValid = shortAt(segment, entry + 2, littleEndian) == TIFF_SHORT && orientation >= 1 &&
+                        orientation <= 8;
+                return isValid ? orientation : EXIF_UPRIGHT;
+            }
+        }
+        return EXIF_UPRIGHT;
+    }
+
+    // A big endian tiff header and a single image directory with nothing in it but the orientation.
+    private static void writeExifOrientation(DataOutputStream out, int orientation) throws IOException {
+        out.write(0xFF);
+        out.write(JPEG_APP1);
+        out.writeShort(2 + EXIF.length + 8 + 2 + 12 + 4);
+        out.write(EXIF);
+        out.writeBytes("MM");
+        out.writeShort(42);
+        out.writeInt(8);
+        out.writeShort(1);
+        out.writeShort(EXIF_ORIENTATION);
+        out.writeShort(TIFF_SHORT);
+        out.writeInt(1);
+        out.writeShort(orientation);
+        out.writeShort(0);
+        // no directory follows.
+        out.writeInt(0);
+    }
+
+    private static int readJpegMarker(DataInputStream in) throws IOException {
+        if (in.readUnsignedByte() != 0xFF) {
+            throw new MalformedContentException(Format.JPEG.name());
+        }
+        return skipJpegFill(in);
+    }
+
+    private static int skipJpegFill(DataInputStream in) throws IOException {
+        int marker = in.readUnsignedByte();
+        while (marker == 0xFF) {
+            marker = in.readUnsignedByte();
+        }
+        return marker;
+    }
+
+    // Entropy-coded data runs up to the next marker that isn't a stuffed 0xFF or a restart, that one is returned.
+    private static int copyJpegScan(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            int value = in.readUnsignedByte();
+            if (value != 0xFF) {
+                out.write(value);
+                continue;
+            }
+
+            int marker = skipJpegFill(in);
+            if (marker != 0x00 && (marker < JPEG_RST0 || marker > JPEG_RST7)) {
+                return marker;
+            }
+            out.write(0xFF);
+            out.write(marker);
+        }
+    }
+
+    private static void stripPng(DataInputStream in, DataOutputStream out) throws IOException {
+        copy(in, out, PNG_SIGNATURE.length);
+        int type;
+        do {
+            int length = in.readInt();
+            type = in.readInt();
+            if (length < 0) {
+                throw new MalformedContentException(Format.PNG.name());
+            }
+
+            // the chunk data is followed by its crc.
+            if (PNG_METADATA.contains(type)) {
+                skip(in, length + 4L);
+            } else {
+                out.writeInt(length);
+                out.writeInt(type);
+                copy(in, out, length + 4L);
+            }
+        } while (type != PNG_END);
+    }
+
+    private static void stripGif(DataInputStream in, DataOutputStream out) throws IOException {
+        byte[] header = new byte[GIF_HEADER_SIZE];
+        in.readFully(header);
+        out.write(header);
+        copy(in, out, colorTableSize(header[10]));
+
+        while (true) {
+            int block = in.readUnsignedByte();
+            if (block == GIF_TRAILER) {
+                out.write(block);
+                return;
+            }
+
+            if (block == GIF_IMAGE) {
+                byte[] descriptor = new byte[GIF_IMAGE_DESCRIPTOR_SIZE];
+                in.readFully(descriptor);
+                out.write(block);
+                out.write(descriptor);
+                copy(in, out, colorTableSize(descriptor[8]));
+                // the minimum code size of the compressed pixels.
+                out.write(in.readUnsignedByte());
+                copyGifSubBlocks(in, out);
+            } else if (block == GIF_EXTENSION) {
+                int label = in.readUnsignedByte();
+                if (label == GIF_COMMENT) {
+                    copyGifSubBlocks(in, null);
+                } else if (label == GIF_APPLICATION) {
+                    byte[] identifier = new byte[in.readUnsignedByte()];
+                    in.readFully(identifier);
+                    boolean isAnimation = GIF_ANIMATION.contains(new String(identifier, StandardCharsets.US_ASCII));
+                    if (isAnimation) {
+                        out.write(block);
+                        out.write(label);
+                        out.write(identifier.length);
+                        out.write(identifier);
+                    }
+                    copyGifSubBlocks(in, isAnimation ? out : null);
+                } else {
+                    out.write(block);
+                    out.write(label);
+                    copyGifSubBlocks(in, out);
+                }
+            } else {
+                throw new MalformedContentException(Format.GIF.name());
+            }
+        }
+    }
+
+    private static long colorTableSize(byte flags) {
+        return ((flags & 0x80) != 0) ? 3L << ((flags & 0x07) + 1) : 0L;
+    }
+
+    // Skipped when out is null.
+    private static void copyGifSubBlocks(DataInputStream in, DataOutputStream out) throws IOException {
+        int size;
+        do {
+            size = in.readUnsignedByte();
+            if (out != null) {
+                out.write(size);
+                copy(in, out, size);
+            } else {
+                skip(in, size);
+            }
+        } while (size != 0);
+    }
+
+    // The riff header carries the size of what follows it, so it's worked out in a pass of its own.
+    private long keptWebpSize() throws IOException {
+        long size = 4L;
+        try (DataInputStream in = open()) {
+            long remaining = readWebpHeader(in);
+            while (remaining > 0) {
+                int type = in.readInt();
+                long padded = padded(readWebpChunkSize(in, remaining));
+                if (!WEBP_METADATA.contains(type)) {
+                    size += 8L + padded;
+                }
+                skip(in, padded);
+                remaining -= 8L + padded;
+            }
+        }
+        return size;
+    }
+
+    private static void stripWebp(DataInputStream in, DataOutputStream out, long size) throws IOException {
+        long remaining = readWebpHeader(in);
+        out.writeInt(RIFF);
+        out.writeInt(Integer.reverseBytes((int) size));
+        out.writeInt(WEBP);
+
+        while (remaining > 0) {
+            int type = in.readInt();
+            long chunkSize = readWebpChunkSize(in, remaining);
+            long padded = padded(chunkSize);
+            remaining -= 8L + padded;
+            if (WEBP_METADATA.contains(type)) {
+                skip(in, padded);
+                continue;
+            }
+
+            out.writeInt(type);
+            out.writeInt(Integer.reverseBytes((int) chunkSize));
+            if (type == WEBP_EXTENDED && chunkSize > 0) {
+                out.write(in.readUnsignedByte() & ~WEBP_EXIF_AND_XMP_FLAGS);
+                copy(in, out, padded - 1);
+            } else {
+                copy(in, out, padded);
+            }
+        }
+    }
+
+    private static long readWebpHeader(DataInputStream in) throws IOException {
+        in.readInt();
+        long size = Integer.toUnsignedLong(Integer.reverseBytes(in.readInt()));
+        in.readInt();
+        return size - 4L;
+    }
+
+    private static long readWebpChunkSize(DataInputStream in, long remaining) throws IOException {
+        long size = Integer.toUnsignedLong(Integer.reverseBytes(in.readInt()));
+        if (padded(size) > remaining - 8L) {
+            throw new MalformedContentException(Format.WEBP.name());
+        }
+        return size;
+    }
+
+    // Chunk data is padded to an even length in the file.
+    private static long padded(long size) {
+        return size + (size & 1L);
+    }
+
+    private DataInputStream open() throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(source), BUFFER_SIZE));
+    }
+
+    private static void copy(DataInputStream in, DataOutputStream out, long count) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(count, BUFFER_SIZE)];
+        while (count > 0) {
+            int length = (int) Math.min(count, buffer.length);
+            in.readFully(buffer, 0, length);
+            out.write(buffer, 0, length);
+            count -= length;
+        }
+    }
+
+    private static void skip(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                in.readByte();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        return bytes.length >= prefix.length && Arrays.equals(Arrays.copyOf(bytes, prefix.length), prefix);
+    }
+
+    private static int intAt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) |
+                ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static int shortAt(byte[] bytes, int offset, boolean littleEndian) {
+        int first = bytes[offset] & 0xFF;
+        int second = bytes[offset + 1] & 0xFF;
+        return littleEndian ? (second << 8) | first : (first << 8) | second;
+    }
+
+    private static int fourCc(String name) {
+        return intAt(name.getBytes(StandardCharsets.US_ASCII), 0);
+    }
+}
@@ -0,0 +1,19 @@
+package ua.sumy.stpp.nobullying.service.attachment;
+
+public final class StoredContent {
+    private final String sha256;
+    private final long size;
+
+    StoredContent(String sha256, long size) {
+        this.sha256 = sha256;
+        this.size = size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
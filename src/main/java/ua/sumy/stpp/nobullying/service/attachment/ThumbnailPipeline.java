@@ -0,0 +1,295 @@
+package ua.sumy.stpp.nobullying.service.attachment;
+
+import ua.sumy.stpp.nobullying.model.Attachment;
+import ua.sumy.stpp.nobullying.service.AttachmentListener;
+import ua.sumy.stpp.nobullying.service.metrics.OperationMetrics;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// Generates JPEG thumbnails of image attachments on a bounded worker pool. Every job is a file in the queue
+// directory until its thumbnail exists, so jobs left behind by a restart or a full pool are picked up by a sweep.
+// Thumbnails are re-encoded pixels only, turned upright by the Exif orientation the attachment store keeps when it
+// strips the metadata of the originals.
+public final class ThumbnailPipeline implements AttachmentListener {
+    public static final int DEFAULT_THUMBNAIL_SIZE = 320;
+
+    private static final String JOB_SUFFIX = ".job";
+    private static final long SWEEP_INTERVAL_SECONDS = 5;
+    private static final long MAX_PIXELS = 50_000_000L;
+    private static final OperationMetrics PROCESS = ServiceMetrics.operation("ThumbnailPipeline.process");
+
+    private final AttachmentStore attachmentStore;
+    private final Path pending;
+    private final Path failed;
+    private final int thumbnailSize;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService sweeper;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Logger log = Logger.getLogger(ThumbnailPipeline.class.getName());
+
+    public ThumbnailPipeline(AttachmentStore attachmentStore, Path queueDirectory, int workerCount, int queueCapacity,
+                             int thumbnailSize) throws IOException {
+        this.attachmentStore = attachmentStore;
+        this.pending = Files.createDirectories(queueDirectory.resolve("pending"));
+        this.failed = Files.createDirectories(queueDirectory.resolve("failed"));
+        this.thumbnailSize = thumbnailSize;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail-worker-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        sweeper.scheduleWithFixedDelay(this::sweep, 0L, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        ServiceMetrics.getDefault().registerGauge("nobullying_thumbnail_backlog",
+                "Thumbnail jobs waiting or being processed.", this::getBacklog);
+    }
+
+    // Running jobs are finished, queued ones stay on disk for the next start.
+    public void stop() {
+        sweeper.shutdownNow();
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void attachmentSaved(Attachment attachment) {
+        String contentType = attachment.getContentType();
+        if (contentType == null || !contentType.startsWith("image/")) {
+            return;
+        }
+
+        String sha256 = attachment.getSha256();
+        if (Files.exists(attachmentStore.resolveThumbnail(sha256))) {
+            return;
+        }
+
+        try {
+            Files.write(pending.resolve(sha256 + JOB_SUFFIX), contentType.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.severe(String.format("Error queueing thumbnail of (%s): %s.", sha256, e.getMessage()));
+            return;
+        }
+        submit(sha256);
+    }
+
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    public long getFailedCount() {
+        return failures.sum();
+    }
+
+    // Job files on disk, those waiting for a sweep while the pool is saturated as well as queued and running ones.
+    public int getBacklog() {
+        int jobs = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(pending, "*" + JOB_SUFFIX)) {
+            for (Path ignored: stream) {
+                jobs++;
+            }
+        } catch (IOException e) {
+            log.warning(String.format("Error counting thumbnail jobs: %s.", e.getMessage()));
+            return inFlight.size();
+        }
+        return jobs;
+    }
+
+    private void sweep() {
+        try (DirectoryStream<Path> jobs = Files.newDirectoryStream(pending, "*" + JOB_SUFFIX)) {
+            for (Path job: jobs) {
+                String name = job.getFileName().toString();
+                if (!submit(name.substring(0, name.length() - JOB_SUFFIX.length()))) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.warning(String.format("Error sweeping thumbnail jobs: %s.", e.getMessage()));
+        }
+    }
+
+    // False when the pool is saturated, the job then waits on disk for the next sweep.
+    private boolean submit(String sha256) {
+        if (!inFlight.add(sha256)) {
+            return true;
+        }
+
+        try {
+            workers.execute(() -> process(sha256));
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(sha256);
+            return false;
+        }
+    }
+
+    private void process(String sha256) {
+        long started = System.nanoTime();
+        Path job = pending.resolve(sha256 + JOB_SUFFIX);
+        try {
+            Path thumbnail = attachmentStore.resolveThumbnail(sha256);
+            if (!Files.exists(thumbnail)) {
+                writeThumbnail(attachmentStore.resolve(sha256), thumbnail);
+            }
+            Files.deleteIfExists(job);
+            processed.increment();
+        } catch (Exception e) {
+            PROCESS.failed(e);
+            failures.increment();
+            log.warning(String.format("Error generating thumbnail of (%s): %s.", sha256, e.getMessage()));
+            try {
+                Files.move(job, failed.resolve(job.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveError) {
+                log.severe(String.format("Error moving failed thumbnail job (%s): %s.", sha256,
+                        moveError.getMessage()));
+            }
+        } finally {
+            inFlight.remove(sha256);
+            PROCESS.record(started);
+        }
+    }
+
+    private void writeThumbnail(Path source, Path thumbnail) throws IOException {
+        BufferedImage image = readSubsampled(source);
+        double scale = Math.min(1.0, (double) thumbnailSize / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        BufferedImage oriented = orient(scaled, MetadataStripper.jpegOrientation(source));
+        Path temporary = attachmentStore.createTemporaryFile();
+        try {
+            if (!ImageIO.write(oriented, "jpg", temporary.toFile())) {
+                throw new IOException("No JPEG writer available.");
+            }
+            Files.createDirectories(thumbnail.getParent());
+            Files.move(temporary, thumbnail, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Orientations 2 to 8 are the flips and quarter turns that bring the stored pixels upright.
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        AffineTransform transform;
+        switch (orientation) {
+            case 2:
+                transform = new AffineTransform(-1, 0, 0, 1, width, 0);
+                break;
+            case 3:
+                transform = new AffineTransform(-1, 0, 0, -1, width, height);
+                break;
+            case 4:
+                transform = new AffineTransform(1, 0, 0, -1, 0, height);
+                break;
+            case 5:
+                transform = new AffineTransform(0, 1, 1, 0, 0, 0);
+                break;
+            case 6:
+                transform = new AffineTransform(0, 1, -1, 0, height, 0);
+                break;
+            case 7:
+                transform = new AffineTransform(0, -1, -1, 0, height, width);
+                break;
+            default:
+                transform = new AffineTransform(0, -1, 1, 0, 0, width);
+                break;
+        }
+
+        // from 5 on the image is transposed.
+        boolean isTransposed = orientation >= 5;
+        BufferedImage oriented = new BufferedImage(isTransposed ? height : width, isTransposed ? width : height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    // Checks the dimensions before decoding and skips source pixels a thumbnail can't show anyway.
+    private BufferedImage readSubsampled(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = (input != null) ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Not a supported image.");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_PIXELS) {
+                    throw new IOException(String.format("Image of (%dx%d) pixels is too large.", width, height));
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.max(width, height) / (thumbnailSize * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
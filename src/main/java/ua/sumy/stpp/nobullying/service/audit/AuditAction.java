@@ -0,0 +1,12 @@
+package ua.sumy.stpp.nobullying.service.audit;
+
+// Stored by ordinal in journal records, so new actions may only be appended.
+public enum AuditAction {
+    REPORT_MODERATION_BEGAN,
+    REPORT_MODERATION_FINISHED,
+    REPORT_DELETED,
+    USER_PROMOTED,
+    USER_DEGRADED,
+    USER_DELETED,
+    REPORT_ARCHIVED
+}
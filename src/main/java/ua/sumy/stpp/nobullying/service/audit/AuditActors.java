@@ -0,0 +1,107 @@
+package ua.sumy.stpp.nobullying.service.audit;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Logins of the users who acted, each written once to the actors file of the journal before any record
+// refers to it by its position. Position 0 is nobody, the application acting on its own.
+final class AuditActors {
+    static final int NOBODY = 0;
+
+    private static final String FILE_NAME = "actors";
+
+    private final Path path;
+    private final List<String> names = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+
+    private AuditActors(Path path) {
+        this.path = path;
+    }
+
+    // A login torn by a crash is cut off, no record can refer to it as it was never synced.
+    static AuditActors load(Path directory) throws IOException {
+        AuditActors actors = new AuditActors(directory.resolve(FILE_NAME));
+        if (!Files.exists(actors.path)) {
+            return actors;
+        }
+
+        long intactSize = 0L;
+        try (InputStream in = Files.newInputStream(actors.path);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            while (true) {
+                String name = data.readUTF();
+                actors.add(name);
+                intactSize += 2 + encodedLength(name);
+            }
+        } catch (EOFException | UTFDataFormatException e) {
+            // the end of the file or of its intact part.
+        }
+
+        if (intactSize < Files.size(actors.path)) {
+            try (FileChannel channel = FileChannel.open(actors.path, StandardOpenOption.WRITE)) {
+                channel.truncate(intactSize);
+            }
+        }
+        return actors;
+    }
+
+    int indexOf(String actor) throws IOException {
+        if (actor == null) {
+            return NOBODY;
+        }
+
+        Integer index = indexes.get(actor);
+        return (index != null) ? index : write(actor);
+    }
+
+    String nameOf(int index) {
+        return (index > NOBODY && index <= names.size()) ? names.get(index - 1) : null;
+    }
+
+    private synchronized int write(String actor) throws IOException {
+        Integer index = indexes.get(actor);
+        if (index != null) {
+            return index;
+        }
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        new DataOutputStream(entry).writeUTF(actor);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND, StandardOpenOption.DSYNC)) {
+            channel.write(ByteBuffer.wrap(entry.toByteArray()));
+        }
+        return add(actor);
+    }
+
+    private int add(String actor) {
+        names.add(actor);
+        int index = names.size();
+        indexes.put(actor, index);
+        return index;
+    }
+
+    // Length of the modified UTF-8 writeUTF() uses.
+    private static int encodedLength(String name) {
+        int length = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c > 0x07FF) ? 3 : 2;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,360 @@
+package ua.sumy.stpp.nobullying.service.audit;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.ReportListener;
+import ua.sumy.stpp.nobullying.service.UserListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+// Append-only journal of moderation and admin actions. Actions are claimed and copied into a ring buffer
+// without locks on the calling thread, a single writer thread moves them into memory-mapped segment files.
+public final class AuditJournal implements ReportListener, UserListener {
+    public static final int DEFAULT_RING_CAPACITY = 1 << 16;
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 17;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long FORCE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long WRITTEN_STEP_MASK = 63L;
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final int maxSegments;
+    private final long maxAgeMillis;
+
+    private final int mask;
+    private final AtomicLongArray published;
+    private final long[] times;
+    private final long[] subjectIds;
+    private final int[] actionDetails;
+    private final int[] actors;
+    private final AtomicLong claimed;
+    private volatile long written;
+    private volatile boolean running = false;
+
+    private final AuditActors actorNames;
+    private AuditSegment segment;
+    private Thread writer;
+    private final Logger log = Logger.getLogger(AuditJournal.class.getName());
+
+    // maxSegments and maxAgeMillis bound what is retained, zero keeps segments forever.
+    public AuditJournal(Path directory, int ringCapacity, int segmentRecords, int maxSegments, long maxAgeMillis)
+            throws IOException {
+        if (Integer.bitCount(ringCapacity) != 1 || segmentRecords < 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two and segments not empty.");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentRecords = segmentRecords;
+        this.maxSegments = maxSegments;
+        this.maxAgeMillis = maxAgeMillis;
+        this.mask = ringCapacity - 1;
+        this.published = new AtomicLongArray(ringCapacity);
+        this.times = new long[ringCapacity];
+        this.subjectIds = new long[ringCapacity];
+        this.actionDetails = new int[ringCapacity];
+        this.actors = new int[ringCapacity];
+        this.actorNames = AuditActors.load(this.directory);
+
+        long lastSequence = recover();
+        this.claimed = new AtomicLong(lastSequence);
+        this.written = lastSequence;
+        for (int i = 0; i < ringCapacity; i++) {
+            published.set(i, -1L);
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeRecords, "audit-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Writes out every action appended before the call and forces the current segment to disk.
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    // Returns false only if the journal isn't running. Blocks while the ring is full, and on the first action
+    // of an actor while its login is written out.
+    public boolean append(AuditAction action, long subjectId, int detail, long time, String actor) {
+        if (!running) {
+            return false;
+        }
+
+        int actorIndex;
+        try {
+            actorIndex = actorNames.indexOf(actor);
+        } catch (IOException e) {
+            log.severe(String.format("Error writing audit actor (%s), action is recorded without it: %s.", actor,
+                    e.getMessage()));
+            actorIndex = AuditActors.NOBODY;
+        }
+
+        long sequence = claimed.incrementAndGet();
+        while (sequence - written > published.length()) {
+            Thread.onSpinWait();
+        }
+
+        int slot = (int) sequence & mask;
+        times[slot] = time;
+        subjectIds[slot] = subjectId;
+        actionDetails[slot] = AuditSegment.packActionDetail(action, detail);
+        actors[slot] = actorIndex;
+        // publishing the sequence releases the plain writes above to the writer thread.
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    public long getLastSequence() {
+        return claimed.get();
+    }
+
+    public long getWrittenSequence() {
+        return written;
+    }
+
+    // Records from the sequence on that were written when the call was made, oldest first.
+    public Iterator<AuditRecord> read(long fromSequence) throws IOException {
+        return read(fromSequence, Long.MAX_VALUE);
+    }
+
+    // Looks at the records in [fromSequence, toSequence] only, opening just the segments that hold them.
+    public List<AuditRecord> find(long fromSequence, long toSequence, int limit, Predicate<AuditRecord> filter)
+            throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        Iterator<AuditRecord> iterator = read(fromSequence, toSequence);
+        while (records.size() < limit && iterator.hasNext()) {
+            AuditRecord record = iterator.next();
+            if (filter.test(record)) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public void reportStateChanged(long id, Report.ProcessingState from, Report.ProcessingState to,
+                                   Date changedDate, String actor) {
+        append((to == Report.ProcessingState.FINISHED) ? AuditAction.REPORT_MODERATION_FINISHED :
+                AuditAction.REPORT_MODERATION_BEGAN, id, from.ordinal(), changedDate.getTime(), actor);
+    }
+
+    @Override
+    public void reportDeleted(long id, Report.ProcessingState state, String actor) {
+        append(AuditAction.REPORT_DELETED, id, state.ordinal(), System.currentTimeMillis(), actor);
+    }
+
+    @Override
+    public void reportArchived(long id) {
+        append(AuditAction.REPORT_ARCHIVED, id, Report.ProcessingState.FINISHED.ordinal(), System.currentTimeMillis(),
+                null);
+    }
+
+    @Override
+    public void userPermissionsChanged(long id, boolean isAdmin, String actor) {
+        append(isAdmin ? AuditAction.USER_PROMOTED : AuditAction.USER_DEGRADED, id, 0,
+                System.currentTimeMillis(), actor);
+    }
+
+    @Override
+    public void userDeleted(long id, String actor) {
+        append(AuditAction.USER_DELETED, id, 0, System.currentTimeMillis(), actor);
+    }
+
+    private Iterator<AuditRecord> read(long fromSequence, long toSequence) throws IOException {
+        return new SegmentIterator(AuditSegment.list(directory), actorNames, Math.max(fromSequence, 1L),
+                Math.min(toSequence, written));
+    }
+
+    // Continues the newest segment after its last intact record.
+    private long recover() throws IOException {
+        List<Path> paths = AuditSegment.list(directory);
+        if (paths.isEmpty()) {
+            return 0L;
+        }
+
+        segment = AuditSegment.open(paths.get(paths.size() - 1), true);
+        long lastSequence = segment.findLastSequence();
+        log.info(String.format("Recovered audit journal at sequence (%d).", lastSequence));
+        return lastSequence;
+    }
+
+    private void writeRecords() {
+        boolean dirty = false;
+        long forcedNanos = System.nanoTime();
+        long sequence = written + 1;
+        while (true) {
+            int slot = (int) sequence & mask;
+            if (published.get(slot) == sequence) {
+                writeRecord(sequence, slot);
+                // producers only wait on this when the ring is full, so it's published in steps.
+                if ((sequence & WRITTEN_STEP_MASK) == 0) {
+                    written = sequence;
+                }
+                sequence++;
+                dirty = true;
+                continue;
+            }
+
+            written = sequence - 1;
+            if (!running && sequence > claimed.get()) {
+                break;
+            }
+
+            if (dirty && System.nanoTime() - forcedNanos > FORCE_INTERVAL_NANOS) {
+                segment.force();
+                dirty = false;
+                forcedNanos = System.nanoTime();
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    private void writeRecord(long sequence, int slot) {
+        try {
+            if (segment == null || !segment.contains(sequence)) {
+                rollSegment(sequence);
+            }
+            segment.write(sequence, times[slot], subjectIds[slot], actionDetails[slot], actors[slot]);
+        } catch (IOException e) {
+            log.severe(String.format("Error writing audit record (%d): %s.", sequence, e.getMessage()));
+        }
+    }
+
+    private void rollSegment(long firstSequence) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        segment = AuditSegment.create(directory, firstSequence, segmentRecords);
+        applyRetention();
+    }
+
+    // Drops whole segments, oldest first, never the one being written.
+    private void applyRetention() {
+        try {
+            List<Path> paths = AuditSegment.list(directory);
+            paths.remove(segment.getPath());
+            long cutoff = System.currentTimeMillis() - maxAgeMillis;
+            int remaining = paths.size() + 1;
+            for (Path path: paths) {
+                if (maxSegments > 0 && remaining > maxSegments) {
+                    Files.deleteIfExists(path);
+                } else if (maxAgeMillis > 0 && isOlderThan(path, cutoff)) {
+                    Files.deleteIfExists(path);
+                } else {
+                    break;
+                }
+                remaining--;
+                log.info(String.format("Dropped audit segment (%s).", path.getFileName()));
+            }
+        } catch (IOException e) {
+            log.warning(String.format("Error applying audit retention: %s.", e.getMessage()));
+        }
+    }
+
+    private static boolean isOlderThan(Path path, long cutoff) throws IOException {
+        return AuditSegment.open(path, false).findLastTime() < cutoff;
+    }
+
+    private static final class SegmentIterator implements Iterator<AuditRecord> {
+        private final List<Path> paths;
+        private final AuditActors actors;
+        private final long lastSequence;
+        private long sequence;
+        private int pathIndex;
+        private AuditSegment segment;
+        private AuditRecord next;
+
+        SegmentIterator(List<Path> paths, AuditActors actors, long fromSequence, long lastSequence) {
+            this.paths = paths;
+            this.actors = actors;
+            this.sequence = fromSequence;
+            this.lastSequence = lastSequence;
+            this.pathIndex = paths.isEmpty() ? 0 : AuditSegment.indexOf(paths, fromSequence);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && sequence <= lastSequence) {
+                if (segment == null || !segment.contains(sequence)) {
+                    if (!openSegment()) {
+                        return false;
+                    }
+                }
+
+                next = segment.read(sequence, actors);
+                if (next == null) {
+                    // a gap left by a crash or a failed write, the rest lives in the next segment.
+                    segment = null;
+                    pathIndex++;
+                    if (pathIndex < paths.size()) {
+                        sequence = Math.max(sequence, AuditSegment.firstSequenceOf(paths.get(pathIndex)));
+                    }
+                    continue;
+                }
+                sequence++;
+            }
+            return next != null;
+        }
+
+        @Override
+        public AuditRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            AuditRecord record = next;
+            next = null;
+            return record;
+        }
+
+        private boolean openSegment() {
+            while (pathIndex < paths.size()) {
+                Path path = paths.get(pathIndex);
+                try {
+                    segment = AuditSegment.open(path, false);
+                    sequence = Math.max(sequence, segment.getFirstSequence());
+                    if (segment.contains(sequence)) {
+                        return true;
+                    }
+                } catch (NoSuchFileException e) {
+                    // dropped by retention after the listing.
+                } catch (IOException e) {
+                    return false;
+                }
+                pathIndex++;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ua.sumy.stpp.nobullying.service.audit;
+
+public final class AuditRecord {
+    private final long sequence;
+    private final long time;
+    private final AuditAction action;
+    private final long subjectId;
+    private final int detail;
+    private final String actor;
+
+    AuditRecord(long sequence, long time, AuditAction action, long subjectId, int detail, String actor) {
+        this.sequence = sequence;
+        this.time = time;
+        this.action = action;
+        this.subjectId = subjectId;
+        this.detail = detail;
+        this.actor = actor;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Milliseconds since the epoch.
+    public long getTime() {
+        return time;
+    }
+
+    public AuditAction getAction() {
+        return action;
+    }
+
+    // Id of the report or user the action was applied to.
+    public long getSubjectId() {
+        return subjectId;
+    }
+
+    // Action specific, the previous report state ordinal for report actions.
+    public int getDetail() {
+        return detail;
+    }
+
+    // Login of the moderator or admin who acted, null for the application acting on its own.
+    public String getActor() {
+        return actor;
+    }
+}
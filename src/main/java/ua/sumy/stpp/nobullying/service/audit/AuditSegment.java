@@ -0,0 +1,173 @@
+package ua.sumy.stpp.nobullying.service.audit;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// One memory-mapped journal file of fixed-size records, named by the sequence of its first record.
+// Record layout: sequence (8), time (8), subject id (8), action (2), detail (2), actor (4), checksum (4).
+final class AuditSegment {
+    static final int RECORD_SIZE = 36;
+
+    private static final String SUFFIX = ".audit";
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private final Path path;
+    private final long firstSequence;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private AuditSegment(Path path, long firstSequence, MappedByteBuffer buffer) {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity() / RECORD_SIZE;
+    }
+
+    static AuditSegment create(Path directory, long firstSequence, int capacity) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", firstSequence, SUFFIX));
+        return new AuditSegment(path, firstSequence, map(path, FileChannel.MapMode.READ_WRITE,
+                (long) capacity * RECORD_SIZE));
+    }
+
+    static AuditSegment open(Path path, boolean writable) throws IOException {
+        long size = Files.size(path) / RECORD_SIZE * RECORD_SIZE;
+        return new AuditSegment(path, firstSequenceOf(path),
+                map(path, writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, size));
+    }
+
+    // Segment files of the directory, oldest first.
+    static List<Path> list(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path path: stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    // Position of the segment holding the sequence in the listing, a binary search by the names of the files.
+    // Sequences before the first segment map to it, those after the last one to the last one.
+    static int indexOf(List<Path> paths, long sequence) {
+        int low = 0;
+        int high = paths.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (firstSequenceOf(paths.get(middle)) <= sequence) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    static long firstSequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    // The mapping stays valid after its channel is closed, so no file handle is held per segment.
+    private static MappedByteBuffer map(Path path, FileChannel.MapMode mode, long size) throws IOException {
+        if (mode == FileChannel.MapMode.READ_ONLY) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(mode, 0, size);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    boolean contains(long sequence) {
+        return sequence >= firstSequence && sequence - firstSequence < capacity;
+    }
+
+    // The checksum goes last, so a record torn by a crash reads as missing rather than as garbage.
+    void write(long sequence, long time, long subjectId, int actionDetail, int actor) {
+        int offset = (int) (sequence - firstSequence) * RECORD_SIZE;
+        buffer.putLong(offset, sequence);
+        buffer.putLong(offset + 8, time);
+        buffer.putLong(offset + 16, subjectId);
+        buffer.putInt(offset + 24, actionDetail);
+        buffer.putInt(offset + 28, actor);
+        buffer.putInt(offset + 32, checksum(sequence, time, subjectId, actionDetail, actor));
+    }
+
+    AuditRecord read(long sequence, AuditActors actors) {
+        if (!isIntact(sequence)) {
+            return null;
+        }
+
+        int offset = (int) (sequence - firstSequence) * RECORD_SIZE;
+        int actionDetail = buffer.getInt(offset + 24);
+        return new AuditRecord(sequence, buffer.getLong(offset + 8), AuditAction.values()[actionDetail >>> 16],
+                buffer.getLong(offset + 16), (short) actionDetail, actors.nameOf(buffer.getInt(offset + 28)));
+    }
+
+    // Sequence of the last intact record, or the one before the first when the segment is empty.
+    long findLastSequence() {
+        long sequence = firstSequence;
+        while (isIntact(sequence)) {
+            sequence++;
+        }
+        return sequence - 1;
+    }
+
+    // Time of the last intact record, 0 when the segment is empty.
+    long findLastTime() {
+        long lastSequence = findLastSequence();
+        return (lastSequence < firstSequence) ? 0L
+                : buffer.getLong((int) (lastSequence - firstSequence) * RECORD_SIZE + 8);
+    }
+
+    private boolean isIntact(long sequence) {
+        if (!contains(sequence)) {
+            return false;
+        }
+
+        int offset = (int) (sequence - firstSequence) * RECORD_SIZE;
+        long time = buffer.getLong(offset + 8);
+        long subjectId = buffer.getLong(offset + 16);
+        int actionDetail = buffer.getInt(offset + 24);
+        int actor = buffer.getInt(offset + 28);
+        return buffer.getLong(offset) == sequence
+                && buffer.getInt(offset + 32) == checksum(sequence, time, subjectId, actionDetail, actor)
+                && actionDetail >>> 16 < AuditAction.values().length;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    static int packActionDetail(AuditAction action, int detail) {
+        return (action.ordinal() << 16) | (detail & 0xFFFF);
+    }
+
+    private static int checksum(long sequence, long time, long subjectId, int actionDetail, int actor) {
+        long hash = sequence * MIX;
+        hash = (hash ^ time) * MIX;
+        hash = (hash ^ subjectId) * MIX;
+        hash = (hash ^ actionDetail) * MIX;
+        hash = (hash ^ actor) * MIX;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
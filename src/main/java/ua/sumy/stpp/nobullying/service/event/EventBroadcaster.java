@@ -0,0 +1,145 @@
+package ua.sumy.stpp.nobullying.service.event;
+
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// Fans server-sent events out to every subscriber from a single thread. Each event is framed and encoded
+// once, subscribers only get a reference in their own bounded queue. One whose queue is full has fallen
+// too far behind and is dropped, it reconnects and reloads instead of holding the others back.
+public class EventBroadcaster {
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final int DEFAULT_SUBSCRIBER_CAPACITY = 256;
+    public static final long DEFAULT_HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GREETING = String.format(": connected\nretry: %d\n\n", RETRY_MILLIS)
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final BlockingQueue<byte[]> events;
+    private final Set<EventSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final int subscriberCapacity;
+    private final long heartbeatMillis;
+    private final AtomicLong lastEventId = new AtomicLong();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder droppedSubscribers;
+
+    private volatile boolean running = false;
+    private Thread broadcaster;
+    private final Logger log = Logger.getLogger(EventBroadcaster.class.getName());
+
+    public EventBroadcaster(int capacity, int subscriberCapacity, long heartbeatMillis) {
+        this.events = new ArrayBlockingQueue<>(capacity);
+        this.subscriberCapacity = subscriberCapacity;
+        this.heartbeatMillis = heartbeatMillis;
+        this.droppedSubscribers = ServiceMetrics.getDefault().counter("nobullying_event_subscribers_dropped_total",
+                "Event subscribers dropped for falling behind.", "reason=\"slow\"");
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        broadcaster = new Thread(this::broadcastEvents, "event-broadcaster");
+        broadcaster.setDaemon(true);
+        broadcaster.start();
+        ServiceMetrics.getDefault().registerGauge("nobullying_event_subscribers",
+                "Connected event subscribers.", subscriptions::size);
+    }
+
+    // Pending events are discarded, subscribers are disconnected and reconnect to the next start.
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        broadcaster.interrupt();
+        try {
+            broadcaster.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        broadcaster = null;
+
+        for (EventSubscription subscription: subscriptions) {
+            subscription.close();
+        }
+    }
+
+    // Never blocks the publisher, an event that doesn't fit is dropped and counted. Returns its id or 0.
+    public long publish(String event, String data) {
+        long id = lastEventId.incrementAndGet();
+        StringBuilder builder = new StringBuilder(data.length() + 48);
+        builder.append("id: ").append(id).append("\nevent: ").append(event).append('\n');
+        for (String line: data.split("\n", -1)) {
+            builder.append("data: ").append(line).append('\n');
+        }
+        builder.append('\n');
+
+        if (!events.offer(builder.toString().getBytes(StandardCharsets.UTF_8))) {
+            droppedEvents.increment();
+            return 0L;
+        }
+        return id;
+    }
+
+    // The subscription starts draining once the sink's write listener reports it can write.
+    public EventSubscription subscribe(EventSink sink) {
+        EventSubscription subscription = new EventSubscription(this, sink, subscriberCapacity);
+        subscription.offer(GREETING);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    public long getDroppedEventCount() {
+        return droppedEvents.sum();
+    }
+
+    public long getDroppedSubscriberCount() {
+        return droppedSubscribers.sum();
+    }
+
+    void unsubscribe(EventSubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    // Heartbeats keep proxies from closing idle streams and bring out connections that are gone.
+    private void broadcastEvents() {
+        while (running) {
+            byte[] frame;
+            try {
+                frame = events.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            broadcast((frame != null) ? frame : HEARTBEAT);
+        }
+    }
+
+    void broadcast(byte[] frame) {
+        for (EventSubscription subscription: subscriptions) {
+            if (!subscription.offer(frame)) {
+                log.warning(String.format("Dropping event subscriber with (%d) pending events.",
+                        subscription.getPendingCount()));
+                droppedSubscribers.increment();
+                subscription.close();
+                continue;
+            }
+            subscription.drain();
+        }
+    }
+}
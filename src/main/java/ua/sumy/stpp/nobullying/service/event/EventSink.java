@@ -0,0 +1,14 @@
+package ua.sumy.stpp.nobullying.service.event;
+
+import java.io.IOException;
+
+// Non-blocking connection of one subscriber, written only while it reports being ready.
+public interface EventSink {
+    boolean isReady();
+
+    void write(byte[] frame) throws IOException;
+
+    void flush() throws IOException;
+
+    void close();
+}
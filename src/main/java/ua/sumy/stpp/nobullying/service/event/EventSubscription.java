@@ -0,0 +1,73 @@
+package ua.sumy.stpp.nobullying.service.event;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Frames waiting for one subscriber. Drained by the broadcaster when frames arrive and by the container
+// when the connection can take more, whichever comes first, one at a time.
+public final class EventSubscription {
+    private final EventBroadcaster broadcaster;
+    private final EventSink sink;
+    private final BlockingQueue<byte[]> pending;
+
+    private volatile boolean writable = false;
+    private volatile boolean closed = false;
+
+    EventSubscription(EventBroadcaster broadcaster, EventSink sink, int capacity) {
+        this.broadcaster = broadcaster;
+        this.sink = sink;
+        this.pending = new ArrayBlockingQueue<>(capacity);
+    }
+
+    // Called by the container's write listener, the sink can't be asked whether it's ready before that.
+    public void writePossible() {
+        writable = true;
+        drain();
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        broadcaster.unsubscribe(this);
+        pending.clear();
+        sink.close();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    boolean offer(byte[] frame) {
+        return pending.offer(frame);
+    }
+
+    synchronized void drain() {
+        if (!writable || closed) {
+            return;
+        }
+
+        try {
+            boolean written = false;
+            while (sink.isReady()) {
+                byte[] frame = pending.poll();
+                if (frame == null) {
+                    if (written) {
+                        sink.flush();
+                    }
+                    return;
+                }
+                sink.write(frame);
+                written = true;
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ua.sumy.stpp.nobullying.service.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-bucket latency histogram, recording is a short scan and two uncontended adds.
+public final class LatencyHistogram {
+    static final long[] BUCKET_BOUNDS_NANOS = {
+            50_000L, 100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+    static final String[] BUCKET_LABELS = new String[BUCKET_BOUNDS_NANOS.length + 1];
+
+    static {
+        for (int i = 0; i < BUCKET_BOUNDS_NANOS.length; i++) {
+            BUCKET_LABELS[i] = BigDecimal.valueOf(BUCKET_BOUNDS_NANOS[i], 9).stripTrailingZeros().toPlainString();
+        }
+        BUCKET_LABELS[BUCKET_BOUNDS_NANOS.length] = "+Inf";
+    }
+
+    private final LongAdder[] counts = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    // Count of values in the bucket itself, not cumulative.
+    public long getCount(int bucket) {
+        return counts[bucket].sum();
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (LongAdder count: counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+}
@@ -0,0 +1,85 @@
+package ua.sumy.stpp.nobullying.service.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class OperationMetrics {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final ConcurrentMap<Class<? extends Throwable>, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder rollbacks = new LongAdder();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    // Runs the operation timing it and counting its failure. Java infers one checked exception of the body at
+    // most, a body throwing several has to name them as type arguments, unused ones as RuntimeException.
+    public <T, E1 extends Exception, E2 extends Exception, E3 extends Exception, E4 extends Exception> T time(
+            Operation<T, E1, E2, E3, E4> operation) throws E1, E2, E3, E4 {
+        long started = System.nanoTime();
+        try {
+            return operation.call();
+        } catch (Exception e) {
+            failed(e);
+            throw e;
+        } finally {
+            record(started);
+        }
+    }
+
+    public <E1 extends Exception, E2 extends Exception, E3 extends Exception, E4 extends Exception> void run(
+            Action<E1, E2, E3, E4> action) throws E1, E2, E3, E4 {
+        this.<Void, E1, E2, E3, E4>time(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public void record(long startedNanos) {
+        latency.record(System.nanoTime() - startedNanos);
+    }
+
+    public void failed(Throwable error) {
+        errors.computeIfAbsent(error.getClass(), errorClass -> new LongAdder()).increment();
+    }
+
+    public void rolledBack() {
+        rollbacks.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getErrorCount(Class<? extends Throwable> errorClass) {
+        LongAdder count = errors.get(errorClass);
+        return (count != null) ? count.sum() : 0L;
+    }
+
+    public long getRollbackCount() {
+        return rollbacks.sum();
+    }
+
+    Map<Class<? extends Throwable>, LongAdder> getErrors() {
+        return errors;
+    }
+
+    @FunctionalInterface
+    public interface Operation<T, E1 extends Exception, E2 extends Exception, E3 extends Exception,
+            E4 extends Exception> {
+        T call() throws E1, E2, E3, E4;
+    }
+
+    @FunctionalInterface
+    public interface Action<E1 extends Exception, E2 extends Exception, E3 extends Exception,
+            E4 extends Exception> {
+        void run() throws E1, E2, E3, E4;
+    }
+}
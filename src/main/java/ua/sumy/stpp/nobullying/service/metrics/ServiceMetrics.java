@@ -0,0 +1,147 @@
+package ua.sumy.stpp.nobullying.service.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Registry of service operation metrics, obtained once per operation like a Logger and kept in static fields.
+public final class ServiceMetrics {
+    private static final ServiceMetrics DEFAULT = new ServiceMetrics();
+
+    private static final String DURATION = "nobullying_service_operation_duration_seconds";
+    private static final String ERRORS = "nobullying_service_operation_errors_total";
+    private static final String ROLLBACKS = "nobullying_service_transaction_rollbacks_total";
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+
+    ServiceMetrics() {
+    }
+
+    public static ServiceMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    public static OperationMetrics operation(String name) {
+        return DEFAULT.getOperation(name);
+    }
+
+    public OperationMetrics getOperation(String name) {
+        return operations.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    // The value is read on every scrape, a gauge registered again under the same name replaces the old one.
+    public void registerGauge(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    // Counters of one name share the help text and differ by labels, e.g. route="login".
+    public LongAdder counter(String name, String help, String labels) {
+        Counter counter = counters.computeIfAbsent(name, key -> new Counter(help));
+        return counter.values.computeIfAbsent(labels, key -> new LongAdder());
+    }
+
+    // Writes all metrics in the Prometheus text exposition format straight to the writer.
+    public void write(Writer writer) throws IOException {
+        writer.write("# HELP " + DURATION + " Latency of service operations.\n");
+        writer.write("# TYPE " + DURATION + " histogram\n");
+        for (OperationMetrics operation: operations.values()) {
+            LatencyHistogram latency = operation.getLatency();
+            long cumulative = 0;
+            for (int i = 0; i < latency.getBucketCount(); i++) {
+                cumulative += latency.getCount(i);
+                writeSample(writer, DURATION + "_bucket", operation, ",le=\"", LatencyHistogram.BUCKET_LABELS[i]);
+                writer.write(Long.toString(cumulative));
+                writer.write('\n');
+            }
+            writeSample(writer, DURATION + "_sum", operation, null, null);
+            writer.write(Double.toString(latency.getSumNanos() / NANOS_PER_SECOND));
+            writer.write('\n');
+            writeSample(writer, DURATION + "_count", operation, null, null);
+            writer.write(Long.toString(cumulative));
+            writer.write('\n');
+        }
+
+        writer.write("# HELP " + ERRORS + " Failed service operations by exception type.\n");
+        writer.write("# TYPE " + ERRORS + " counter\n");
+        for (OperationMetrics operation: operations.values()) {
+            for (Map.Entry<Class<? extends Throwable>, LongAdder> error: operation.getErrors().entrySet()) {
+                writeSample(writer, ERRORS, operation, ",exception=\"", error.getKey().getSimpleName());
+                writer.write(Long.toString(error.getValue().sum()));
+                writer.write('\n');
+            }
+        }
+
+        writer.write("# HELP " + ROLLBACKS + " Rolled back service transactions.\n");
+        writer.write("# TYPE " + ROLLBACKS + " counter\n");
+        for (OperationMetrics operation: operations.values()) {
+            writeSample(writer, ROLLBACKS, operation, null, null);
+            writer.write(Long.toString(operation.getRollbackCount()));
+            writer.write('\n');
+        }
+
+        for (Map.Entry<String, Gauge> gauge: gauges.entrySet()) {
+            String name = gauge.getKey();
+            writer.write("# HELP " + name + " " + gauge.getValue().help + "\n");
+            writer.write("# TYPE " + name + " gauge\n");
+            writer.write(name);
+            writer.write(' ');
+            writer.write(Long.toString(gauge.getValue().value.getAsLong()));
+            writer.write('\n');
+        }
+
+        for (Map.Entry<String, Counter> counter: counters.entrySet()) {
+            String name = counter.getKey();
+            writer.write("# HELP " + name + " " + counter.getValue().help + "\n");
+            writer.write("# TYPE " + name + " counter\n");
+            for (Map.Entry<String, LongAdder> value: counter.getValue().values.entrySet()) {
+                writer.write(name);
+                writer.write('{');
+                writer.write(value.getKey());
+                writer.write("} ");
+                writer.write(Long.toString(value.getValue().sum()));
+                writer.write('\n');
+            }
+        }
+    }
+
+    // Operation and exception names are java identifiers, so label values need no escaping.
+    private static void writeSample(Writer writer, String metric, OperationMetrics operation, String label,
+                                    String value) throws IOException {
+        writer.write(metric);
+        writer.write("{operation=\"");
+        writer.write(operation.getName());
+        writer.write('"');
+        if (label != null) {
+            writer.write(label);
+            writer.write(value);
+            writer.write('"');
+        }
+        writer.write("} ");
+    }
+
+    private static final class Gauge {
+        private final String help;
+        private final LongSupplier value;
+
+        Gauge(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    private static final class Counter {
+        private final String help;
+        private final ConcurrentMap<String, LongAdder> values = new ConcurrentSkipListMap<>();
+
+        Counter(String help) {
+            this.help = help;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package ua.sumy.stpp.nobullying.service.priority;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Aho-Corasick automaton finding all dictionary keywords in a text in one pass. The trie lives in flat
+// arrays: the edges of a state are a sorted run of edgeChars/edgeTargets starting at firstEdge[state],
+// found by binary search, so a dictionary of thousands of phrases takes a few hundred kilobytes.
+// Immutable once built, any number of threads can score with it.
+final class KeywordAutomaton {
+    private static final int ROOT = 0;
+
+    private final int[] firstEdge;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] failure;
+    // keyword ending at the state, -1 if none, and the nearest state down the failure chain that has one.
+    private final int[] keywordAt;
+    private final int[] outputLink;
+
+    private final int[] keywordWeights;
+    private final int[] keywordLengths;
+    private final boolean[] keywordPrefixes;
+
+    private KeywordAutomaton(int[] firstEdge, char[] edgeChars, int[] edgeTargets, int[] failure, int[] keywordAt,
+                             int[] outputLink, int[] keywordWeights, int[] keywordLengths,
+                             boolean[] keywordPrefixes) {
+        this.firstEdge = firstEdge;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.failure = failure;
+        this.keywordAt = keywordAt;
+        this.outputLink = outputLink;
+        this.keywordWeights = keywordWeights;
+        this.keywordLengths = keywordLengths;
+        this.keywordPrefixes = keywordPrefixes;
+    }
+
+    // Keywords match whole words, one ending with '*' matches any word starting with it.
+    static KeywordAutomaton build(Map<String, Integer> weights) {
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> keywords = new ArrayList<>();
+        children.add(new TreeMap<>());
+        keywords.add(-1);
+
+        int[] keywordWeights = new int[weights.size()];
+        int[] keywordLengths = new int[weights.size()];
+        boolean[] keywordPrefixes = new boolean[weights.size()];
+        int keyword = 0;
+        for (Map.Entry<String, Integer> entry: weights.entrySet()) {
+            String phrase = entry.getKey().toLowerCase(Locale.ROOT);
+            keywordPrefixes[keyword] = phrase.endsWith("*");
+            if (keywordPrefixes[keyword]) {
+                phrase = phrase.substring(0, phrase.length() - 1);
+            }
+            if (phrase.isEmpty()) {
+                throw new IllegalArgumentException("Keyword can't be empty.");
+            }
+
+            int state = ROOT;
+            for (int i = 0; i < phrase.length(); i++) {
+                Integer next = children.get(state).get(phrase.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.get(state).put(phrase.charAt(i), next);
+                    children.add(new TreeMap<>());
+                    keywords.add(-1);
+                }
+                state = next;
+            }
+            keywords.set(state, keyword);
+            keywordWeights[keyword] = entry.getValue();
+            keywordLengths[keyword] = phrase.length();
+            keyword++;
+        }
+
+        int states = children.size();
+        int[] firstEdge = new int[states + 1];
+        char[] edgeChars = new char[states - 1];
+        int[] edgeTargets = new int[states - 1];
+        int edge = 0;
+        for (int state = 0; state < states; state++) {
+            firstEdge[state] = edge;
+            for (Map.Entry<Character, Integer> child: children.get(state).entrySet()) {
+                edgeChars[edge] = child.getKey();
+                edgeTargets[edge] = child.getValue();
+                edge++;
+            }
+        }
+        firstEdge[states] = edge;
+
+        int[] keywordAt = new int[states];
+        for (int state = 0; state < states; state++) {
+            keywordAt[state] = keywords.get(state);
+        }
+        int[] failure = new int[states];
+        int[] outputLink = new int[states];
+        Arrays.fill(outputLink, -1);
+        KeywordAutomaton automaton = new KeywordAutomaton(firstEdge, edgeChars, edgeTargets, failure, keywordAt,
+                outputLink, keywordWeights, keywordLengths, keywordPrefixes);
+        automaton.linkFailures();
+        return automaton;
+    }
+
+    int getKeywordCount() {
+        return keywordWeights.length;
+    }
+
+    // Sum of the weights of distinct keywords found in the text.
+    int score(String text) {
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        boolean[] found = new boolean[keywordWeights.length];
+        int score = 0;
+        int state = ROOT;
+        for (int i = 0; i < lowerCase.length(); i++) {
+            state = next(state, lowerCase.charAt(i));
+            for (int output = (keywordAt[state] >= 0) ? state : outputLink[state]; output >= 0;
+                 output = outputLink[output]) {
+                int keyword = keywordAt[output];
+                if (!found[keyword] && isWholeMatch(lowerCase, i, keyword)) {
+                    found[keyword] = true;
+                    score += keywordWeights[keyword];
+                }
+            }
+        }
+        return score;
+    }
+
+    private boolean isWholeMatch(String text, int end, int keyword) {
+        int start = end - keywordLengths[keyword] + 1;
+        if (start > 0 && Character.isLetterOrDigit(text.charAt(start - 1))) {
+            return false;
+        }
+        return keywordPrefixes[keyword] || end + 1 == text.length()
+                || !Character.isLetterOrDigit(text.charAt(end + 1));
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            int target = child(state, c);
+            if (target >= 0) {
+                return target;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failure[state];
+        }
+    }
+
+    private int child(int state, char c) {
+        int low = firstEdge[state];
+        int high = firstEdge[state + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char edge = edgeChars[middle];
+            if (edge < c) {
+                low = middle + 1;
+            } else if (edge > c) {
+                high = middle - 1;
+            } else {
+                return edgeTargets[middle];
+            }
+        }
+        return -1;
+    }
+
+    // Breadth first, so the failure target of every state is done before the state itself.
+    private void linkFailures() {
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int edge = firstEdge[ROOT]; edge < firstEdge[ROOT + 1]; edge++) {
+            failure[edgeTargets[edge]] = ROOT;
+            queue.add(edgeTargets[edge]);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int edge = firstEdge[state]; edge < firstEdge[state + 1]; edge++) {
+                int target = edgeTargets[edge];
+                failure[target] = next(failure[state], edgeChars[edge]);
+                int fallback = failure[target];
+                outputLink[target] = (keywordAt[fallback] >= 0) ? fallback : outputLink[fallback];
+                queue.add(target);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ua.sumy.stpp.nobullying.service.priority;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.ReportListener;
+import ua.sumy.stpp.nobullying.service.metrics.OperationMetrics;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Scores new reports by the keywords of a dictionary file, one "<weight> <phrase>" per line, '#' starts a
+// comment. The file is checked for changes every few seconds and a changed one replaces the automaton
+// in one volatile write, scoring never waits for a reload and a broken file keeps the previous dictionary.
+public class PriorityScorer implements ReportListener {
+    public static final String DEFAULT_DICTIONARY = "/priority-keywords.txt";
+
+    private static final long RELOAD_INTERVAL_SECONDS = 10;
+    private static final OperationMetrics SCORE = ServiceMetrics.operation("PriorityScorer.score");
+
+    private final Path dictionary;
+    private final ScheduledExecutorService reloader;
+    private volatile KeywordAutomaton automaton = KeywordAutomaton.build(new LinkedHashMap<>());
+    private FileTime loadedModifiedTime;
+    private final Logger log = Logger.getLogger(PriorityScorer.class.getName());
+
+    // A missing dictionary is created from the bundled default, which admins then edit in place.
+    public PriorityScorer(Path dictionary) throws IOException {
+        this.dictionary = dictionary;
+        if (!Files.exists(dictionary)) {
+            Files.createDirectories(dictionary.toAbsolutePath().getParent());
+            try (InputStream in = PriorityScorer.class.getResourceAsStream(DEFAULT_DICTIONARY)) {
+                Files.copy(in, dictionary);
+            }
+        }
+        this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "priority-dictionary-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reload();
+    }
+
+    public void start() {
+        reloader.scheduleWithFixedDelay(this::reloadIfModified, RELOAD_INTERVAL_SECONDS, RELOAD_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        reloader.shutdownNow();
+    }
+
+    public int score(String text) {
+        return SCORE.time(() -> (text != null) ? automaton.score(text) : 0);
+    }
+
+    public int getKeywordCount() {
+        return automaton.getKeywordCount();
+    }
+
+    @Override
+    public void reportSaving(Report report) {
+        report.setPriority(score(report.getText()));
+    }
+
+    synchronized boolean reload() {
+        try {
+            FileTime modifiedTime = Files.getLastModifiedTime(dictionary);
+            automaton = KeywordAutomaton.build(parse(Files.readAllLines(dictionary, StandardCharsets.UTF_8)));
+            loadedModifiedTime = modifiedTime;
+            log.info(String.format("Loaded (%d) priority keywords from (%s).", automaton.getKeywordCount(),
+                    dictionary));
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            log.severe(String.format("Error loading priority keywords from (%s): %s.", dictionary, e.getMessage()));
+            return false;
+        }
+    }
+
+    synchronized void reloadIfModified() {
+        try {
+            if (!Files.getLastModifiedTime(dictionary).equals(loadedModifiedTime)) {
+                reload();
+            }
+        } catch (IOException e) {
+            log.warning(String.format("Error checking priority keywords (%s): %s.", dictionary, e.getMessage()));
+        }
+    }
+
+    static Map<String, Integer> parse(List<String> lines) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] parts = line.split("\\s+", 2);
+            if (parts.length < 2) {
+                throw new IllegalArgumentException(String.format("Line %d has no keyword.", i + 1));
+            }
+            try {
+                weights.put(parts[1], Integer.parseInt(parts[0]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("Line %d has wrong weight.", i + 1));
+            }
+        }
+        return weights;
+    }
+}
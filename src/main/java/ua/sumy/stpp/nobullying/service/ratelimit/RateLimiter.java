@@ -0,0 +1,89 @@
+package ua.sumy.stpp.nobullying.service.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Token bucket per key, holding up to capacity tokens and refilling them all over one period.
+// A bucket is kept as the single time its next token is due (GCRA), so acquiring is one CAS and
+// never blocks. Keys are spread over stripes, each swept of full buckets every so many calls.
+public class RateLimiter {
+    private static final int STRIPES = 16;
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final long emissionIntervalNanos;
+    private final long toleranceNanos;
+    private final LongSupplier clock;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public RateLimiter(int capacity, long period, TimeUnit unit) {
+        this(capacity, period, unit, System::nanoTime);
+    }
+
+    RateLimiter(int capacity, long period, TimeUnit unit, LongSupplier clock) {
+        if (capacity < 1 || period < 1) {
+            throw new IllegalArgumentException("Capacity and period must be positive.");
+        }
+
+        this.emissionIntervalNanos = Math.max(1L, unit.toNanos(period) / capacity);
+        this.toleranceNanos = emissionIntervalNanos * capacity;
+        this.clock = clock;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // Returns 0 when the key had a token, otherwise nanos until it gets one. A rejected call takes nothing.
+    public long tryAcquire(String key) {
+        Stripe stripe = stripes[spread(key.hashCode()) & (STRIPES - 1)];
+        long now = clock.getAsLong();
+        if (stripe.calls.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            stripe.sweep(now);
+        }
+
+        AtomicLong bucket = stripe.buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long due = bucket.get();
+            long nextDue = Math.max(due, now) + emissionIntervalNanos;
+            long wait = nextDue - now - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(due, nextDue)) {
+                return 0L;
+            }
+        }
+    }
+
+    void sweep() {
+        long now = clock.getAsLong();
+        for (Stripe stripe: stripes) {
+            stripe.sweep(now);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe: stripes) {
+            size += stripe.buckets.size();
+        }
+        return size;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Stripe {
+        private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        // A bucket due in the past is full again and forgetting it changes nothing. One raced by a
+        // concurrent acquire may lose that token, it is recreated full on the next call.
+        private void sweep(long now) {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+    }
+}
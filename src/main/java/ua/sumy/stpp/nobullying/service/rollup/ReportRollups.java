@@ -0,0 +1,140 @@
+package ua.sumy.stpp.nobullying.service.rollup;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.ReportListener;
+import ua.sumy.stpp.nobullying.service.ReportService;
+import ua.sumy.stpp.nobullying.service.archive.ReportArchive;
+import ua.sumy.stpp.nobullying.service.error.BadOperationException;
+import ua.sumy.stpp.nobullying.service.error.BadParametersException;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+
+// Report volume and moderation turnaround per hour, day and week, backfilled once from a scan of the
+// database and the archive and then kept up to date from report events. A range query touches only the
+// buckets in the range, however many reports there are.
+public class ReportRollups implements ReportListener {
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private final ZoneId zone;
+    private final Map<RollupResolution, ConcurrentSkipListMap<Long, RollupBucket>> buckets =
+            new EnumMap<>(RollupResolution.class);
+    // sent times of reports not finished yet, the state events don't carry them.
+    private final Map<Long, Long> sentTimes = new ConcurrentHashMap<>();
+    private final Logger log = Logger.getLogger(ReportRollups.class.getName());
+
+    public ReportRollups(ZoneId zone) {
+        this.zone = zone;
+        for (RollupResolution resolution: RollupResolution.values()) {
+            buckets.put(resolution, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    // Archived reports are counted too, history doesn't shrink when reports leave the database.
+    public void rebuild(ReportService reportService, ReportArchive archive) throws BadParametersException,
+            BadOperationException, IOException {
+        clear();
+        long added = reportService.streamReports(REBUILD_BATCH_SIZE, reports -> {
+            for (Report report: reports) {
+                add(report);
+            }
+        });
+        if (archive != null) {
+            added += archive.scan(this::add);
+        }
+        log.info(String.format("Rolled up (%d) reports.", added));
+    }
+
+    // Buckets overlapping [from, to) with anything in them, oldest first.
+    public List<RollupBucket> getRange(RollupResolution resolution, Date from, Date to) {
+        ConcurrentNavigableMap<Long, RollupBucket> range = buckets.get(resolution)
+                .subMap(resolution.bucketStart(from.getTime(), zone), true, to.getTime(), false);
+        return new ArrayList<>(range.values());
+    }
+
+    @Override
+    public void reportSaved(Report report, boolean created) {
+        if (created) {
+            add(report);
+        }
+    }
+
+    @Override
+    public void reportStateChanged(long id, Report.ProcessingState from, Report.ProcessingState to,
+                                   Date changedDate, String actor) {
+        long changedTime = changedDate.getTime();
+        Long sentTime = (to == Report.ProcessingState.FINISHED) ? sentTimes.remove(id) : sentTimes.get(id);
+        for (RollupBucket bucket: bucketsOf(changedTime)) {
+            bucket.entered(to);
+            if (sentTime == null) {
+                continue;
+            }
+            if (to == Report.ProcessingState.MODERATING) {
+                bucket.responded(changedTime - sentTime);
+            } else if (to == Report.ProcessingState.FINISHED) {
+                bucket.resolved(changedTime - sentTime);
+            }
+        }
+    }
+
+    // Counts stay as they were, a deleted report is still something that happened in its buckets.
+    @Override
+    public void reportDeleted(long id, Report.ProcessingState state, String actor) {
+        sentTimes.remove(id);
+    }
+
+    // A row written around the service without a sent date has no bucket to go to.
+    private void add(Report report) {
+        if (report.getSentDate() == null) {
+            return;
+        }
+
+        long sentTime = report.getSentDate().getTime();
+        for (RollupBucket bucket: bucketsOf(sentTime)) {
+            bucket.entered(Report.ProcessingState.NEW);
+        }
+
+        Date began = report.getBeginMentoringDate();
+        if (began != null) {
+            for (RollupBucket bucket: bucketsOf(began.getTime())) {
+                bucket.entered(Report.ProcessingState.MODERATING);
+                bucket.responded(began.getTime() - sentTime);
+            }
+        }
+
+        Date finished = report.getFinishedDate();
+        if (finished != null && report.getState() == Report.ProcessingState.FINISHED) {
+            for (RollupBucket bucket: bucketsOf(finished.getTime())) {
+                bucket.entered(Report.ProcessingState.FINISHED);
+                bucket.resolved(finished.getTime() - sentTime);
+            }
+        } else {
+            sentTimes.put(report.getId(), sentTime);
+        }
+    }
+
+    private List<RollupBucket> bucketsOf(long time) {
+        List<RollupBucket> timeBuckets = new ArrayList<>(buckets.size());
+        for (Map.Entry<RollupResolution, ConcurrentSkipListMap<Long, RollupBucket>> entry: buckets.entrySet()) {
+            timeBuckets.add(entry.getValue().computeIfAbsent(entry.getKey().bucketStart(time, zone),
+                    RollupBucket::new));
+        }
+        return timeBuckets;
+    }
+
+    private void clear() {
+        for (ConcurrentSkipListMap<Long, RollupBucket> resolutionBuckets: buckets.values()) {
+            resolutionBuckets.clear();
+        }
+        sentTimes.clear();
+    }
+}
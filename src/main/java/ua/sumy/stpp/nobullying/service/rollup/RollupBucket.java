@@ -0,0 +1,56 @@
+package ua.sumy.stpp.nobullying.service.rollup;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Reports that entered every state within one bucket, and the moderation turnaround completed within it:
+// response is sent to beginning moderation, resolution is sent to finished.
+public final class RollupBucket {
+    private final long start;
+    private final LongAdder[] entered = new LongAdder[Report.ProcessingState.values().length];
+    private final LongAdder responseMillis = new LongAdder();
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder resolutionMillis = new LongAdder();
+    private final LongAdder resolutions = new LongAdder();
+
+    RollupBucket(long start) {
+        this.start = start;
+        for (int i = 0; i < entered.length; i++) {
+            entered[i] = new LongAdder();
+        }
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getCount(Report.ProcessingState state) {
+        return entered[state.ordinal()].sum();
+    }
+
+    // 0 when no report had its turnaround completed in the bucket.
+    public long getAverageResponseMillis() {
+        long count = responses.sum();
+        return (count > 0) ? responseMillis.sum() / count : 0L;
+    }
+
+    public long getAverageResolutionMillis() {
+        long count = resolutions.sum();
+        return (count > 0) ? resolutionMillis.sum() / count : 0L;
+    }
+
+    void entered(Report.ProcessingState state) {
+        entered[state.ordinal()].increment();
+    }
+
+    void responded(long millis) {
+        responseMillis.add(millis);
+        responses.increment();
+    }
+
+    void resolved(long millis) {
+        resolutionMillis.add(millis);
+        resolutions.increment();
+    }
+}
@@ -0,0 +1,29 @@
+package ua.sumy.stpp.nobullying.service.rollup;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+// Bucket sizes of the rollups, aligned to local time, so a day bucket starts at midnight and a week on Monday.
+public enum RollupResolution {
+    HOUR, DAY, WEEK;
+
+    public long bucketStart(long time, ZoneId zone) {
+        ZonedDateTime dateTime = Instant.ofEpochMilli(time).atZone(zone);
+        switch (this) {
+            case HOUR:
+                dateTime = dateTime.truncatedTo(ChronoUnit.HOURS);
+                break;
+            case DAY:
+                dateTime = dateTime.truncatedTo(ChronoUnit.DAYS);
+                break;
+            default:
+                dateTime = dateTime.truncatedTo(ChronoUnit.DAYS)
+                        .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+        return dateTime.toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,282 @@
+package ua.sumy.stpp.nobullying.service.search;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.ReportListener;
+import ua.sumy.stpp.nobullying.service.ReportService;
+import ua.sumy.stpp.nobullying.service.error.BadOperationException;
+import ua.sumy.stpp.nobullying.service.error.BadParametersException;
+import ua.sumy.stpp.nobullying.service.metrics.OperationMetrics;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+// Links a new report to an earlier one sent within the window whose text is nearly the same, so that an
+// incident reported many times is moderated once. MinHash signatures are split into BANDS bands of ROWS
+// values and only reports sharing a whole band are compared: texts 80% alike share one almost surely,
+// texts 30% alike rarely do. Reports are kept in buckets by sent time, buckets leaving the window are dropped.
+// Copies saved in the same batch don't see each other yet, the next copy links to the first of them.
+public class DuplicateDetector implements ReportListener {
+    public static final long DEFAULT_WINDOW_MILLIS = TimeUnit.DAYS.toMillis(7);
+    public static final long DEFAULT_BUCKET_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    static final double MIN_SIMILARITY = 0.6;
+    private static final int ROWS = 4;
+    private static final int BANDS = MinHash.SIGNATURE_LENGTH / ROWS;
+    private static final int MIN_WORDS = 4;
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private static final OperationMetrics FIND_DUPLICATE = ServiceMetrics.operation("DuplicateDetector.findDuplicate");
+
+    private final long windowMillis;
+    private final long bucketMillis;
+    private final NavigableMap<Long, Bucket> buckets = new TreeMap<>();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final LongAdder linked = new LongAdder();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Logger log = Logger.getLogger(DuplicateDetector.class.getName());
+
+    private long newestSentTime = Long.MIN_VALUE;
+
+    public DuplicateDetector(long windowMillis, long bucketMillis) {
+        this.windowMillis = windowMillis;
+        this.bucketMillis = bucketMillis;
+    }
+
+    // Only reports sent within the window before now are worth indexing.
+    public void rebuild(ReportService reportService) throws BadParametersException, BadOperationException,
+            IOException {
+        clear();
+        long since = System.currentTimeMillis() - windowMillis;
+        long indexed = reportService.streamReports(REBUILD_BATCH_SIZE, reports -> {
+            for (Report report: reports) {
+                if (report.getSentDate() != null && report.getSentDate().getTime() >= since) {
+                    add(report);
+                }
+            }
+        });
+        log.info(String.format("Fingerprinted (%d) of (%d) reports.", size(), indexed));
+    }
+
+    // Returns the id of the first report of the incident the text repeats, 0 if it's new.
+    public long findDuplicate(String text, long sentTime) {
+        return FIND_DUPLICATE.time(() -> {
+            List<String> words = ReportTextIndex.words(text);
+            if (words.size() < MIN_WORDS) {
+                return 0L;
+            }
+            int[] signature = MinHash.signature(words);
+
+            lock.readLock().lock();
+            try {
+                Entry match = null;
+                double matchSimilarity = 0.0;
+                for (Bucket bucket: buckets.subMap(toBucket(sentTime - windowMillis), true,
+                        toBucket(sentTime + windowMillis), true).values()) {
+                    for (int band = 0; band < BANDS; band++) {
+                        List<Entry> candidates = bucket.bands.get(band).get(bandKey(signature, band));
+                        if (candidates == null) {
+                            continue;
+                        }
+
+                        for (Entry candidate: candidates) {
+                            double similarity = MinHash.similarity(signature, candidate.signature);
+                            if (similarity < MIN_SIMILARITY
+                                    || Math.abs(candidate.sentTime - sentTime) > windowMillis) {
+                                continue;
+                            }
+                            if (match == null || similarity > matchSimilarity
+                                    || (similarity == matchSimilarity && candidate.id < match.id)) {
+                                match = candidate;
+                                matchSimilarity = similarity;
+                            }
+                        }
+                    }
+                }
+                return (match == null) ? 0L : (match.duplicateOf != 0) ? match.duplicateOf : match.id;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getLinkedCount() {
+        return linked.sum();
+    }
+
+    @Override
+    public void reportSaving(Report report) {
+        if (report.getDuplicateOf() != 0 || report.getText() == null) {
+            return;
+        }
+
+        long sentTime = (report.getSentDate() != null) ? report.getSentDate().getTime() : System.currentTimeMillis();
+        long duplicateOf = findDuplicate(report.getText(), sentTime);
+        if (duplicateOf != 0) {
+            report.setDuplicateOf(duplicateOf);
+            linked.increment();
+        }
+    }
+
+    @Override
+    public void reportSaved(Report report, boolean created) {
+        add(report);
+    }
+
+    // Copies of a deleted report are linked to the oldest of them from now on, it becomes the first report.
+    @Override
+    public void reportDeleted(long id, Report.ProcessingState state, String actor) {
+        lock.writeLock().lock();
+        try {
+            removeEntry(id);
+            relinkCopies(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void add(Report report) {
+        if (report.getText() == null || report.getSentDate() == null) {
+            return;
+        }
+
+        List<String> words = ReportTextIndex.words(report.getText());
+        if (words.size() < MIN_WORDS) {
+            return;
+        }
+
+        Entry entry = new Entry(report.getId(), MinHash.signature(words), report.getDuplicateOf(),
+                report.getSentDate().getTime());
+        lock.writeLock().lock();
+        try {
+            removeEntry(entry.id);
+            if (entry.sentTime > newestSentTime) {
+                newestSentTime = entry.sentTime;
+                Map<Long, Bucket> expired = buckets.headMap(toBucket(newestSentTime - windowMillis));
+                for (Bucket bucket: expired.values()) {
+                    bucket.entries.forEach(expiredEntry -> entries.remove(expiredEntry.id));
+                }
+                expired.clear();
+            }
+            if (entry.sentTime < newestSentTime - windowMillis) {
+                return;
+            }
+
+            Bucket bucket = buckets.computeIfAbsent(toBucket(entry.sentTime), key -> new Bucket());
+            bucket.entries.add(entry);
+            for (int band = 0; band < BANDS; band++) {
+                bucket.bands.get(band).computeIfAbsent(bandKey(entry.signature, band), key -> new ArrayList<>())
+                        .add(entry);
+            }
+            entries.put(entry.id, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clear() {
+        lock.writeLock().lock();
+        try {
+            buckets.clear();
+            entries.clear();
+            newestSentTime = Long.MIN_VALUE;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeEntry(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+
+        Bucket bucket = buckets.get(toBucket(entry.sentTime));
+        if (bucket == null) {
+            return;
+        }
+        bucket.entries.remove(entry);
+        for (int band = 0; band < BANDS; band++) {
+            List<Entry> candidates = bucket.bands.get(band).get(bandKey(entry.signature, band));
+            if (candidates != null) {
+                candidates.remove(entry);
+            }
+        }
+    }
+
+    private void relinkCopies(long deletedId) {
+        Entry first = null;
+        List<Entry> copies = new ArrayList<>();
+        for (Entry entry: entries.values()) {
+            if (entry.duplicateOf != deletedId) {
+                continue;
+            }
+            copies.add(entry);
+            if (first == null || entry.sentTime < first.sentTime
+                    || (entry.sentTime == first.sentTime && entry.id < first.id)) {
+                first = entry;
+            }
+        }
+
+        for (Entry copy: copies) {
+            copy.duplicateOf = (copy == first) ? 0L : first.id;
+        }
+    }
+
+    private long toBucket(long time) {
+        return Math.floorDiv(time, bucketMillis);
+    }
+
+    // Different bands of equal keys are never mixed up, each band has a map of its own.
+    private static long bandKey(int[] signature, int band) {
+        long key = 0L;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            key = key * 0x100000001b3L ^ signature[i];
+        }
+        return key;
+    }
+
+    private static final class Bucket {
+        private final List<Entry> entries = new ArrayList<>();
+        private final List<Map<Long, List<Entry>>> bands = new ArrayList<>(BANDS);
+
+        private Bucket() {
+            for (int band = 0; band < BANDS; band++) {
+                bands.add(new HashMap<>());
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final long id;
+        private final int[] signature;
+        private final long sentTime;
+        private long duplicateOf;
+
+        private Entry(long id, int[] signature, long duplicateOf, long sentTime) {
+            this.id = id;
+            this.signature = signature;
+            this.duplicateOf = duplicateOf;
+            this.sentTime = sentTime;
+        }
+    }
+}
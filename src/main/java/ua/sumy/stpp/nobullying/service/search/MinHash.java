@@ -0,0 +1,72 @@
+package ua.sumy.stpp.nobullying.service.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+// MinHash signature over the words and word pairs of a text. The share of equal signature values
+// estimates the Jaccard similarity of two texts, the overlap of their word sets, within a few percent.
+final class MinHash {
+    static final int SIGNATURE_LENGTH = 64;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private MinHash() {
+    }
+
+    static int[] signature(List<String> words) {
+        int[] signature = new int[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        long previous = 0L;
+        for (int i = 0; i < words.size(); i++) {
+            long hash = hash(words.get(i));
+            addFeature(signature, hash);
+            if (i > 0) {
+                // pairs keep some word order, otherwise a shuffled text would look the same.
+                addFeature(signature, previous * FNV_PRIME ^ hash);
+            }
+            previous = hash;
+        }
+        return signature;
+    }
+
+    static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIGNATURE_LENGTH;
+    }
+
+    // Every position takes the minimum of its own hash function, all derived from the feature hash by seeding.
+    private static void addFeature(int[] signature, long feature) {
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            int value = (int) (mix(feature + (i + 1) * GOLDEN_GAMMA) >>> 33);
+            if (value < signature[i]) {
+                signature[i] = value;
+            }
+        }
+    }
+
+    private static long hash(String word) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < word.length(); i++) {
+            hash ^= word.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // The murmur3 finalizer, spreads every input bit over the whole result.
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
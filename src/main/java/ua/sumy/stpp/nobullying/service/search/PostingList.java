@@ -0,0 +1,88 @@
+package ua.sumy.stpp.nobullying.service.search;
+
+import java.util.Arrays;
+
+// Sorted document ids stored as variable-length deltas.
+final class PostingList {
+    private byte[] data = new byte[8];
+    private int length;
+    private int size;
+    private int last = -1;
+
+    int size() {
+        return size;
+    }
+
+    void add(int id) {
+        if (id > last) {
+            append((last < 0) ? id : id - last);
+            last = id;
+            size++;
+            return;
+        }
+
+        int[] ids = toArray();
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return;
+        }
+
+        position = -position - 1;
+        int[] updated = new int[ids.length + 1];
+        System.arraycopy(ids, 0, updated, 0, position);
+        updated[position] = id;
+        System.arraycopy(ids, position, updated, position + 1, ids.length - position);
+        encode(updated, updated.length);
+    }
+
+    void remove(int id) {
+        int[] ids = toArray();
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
+            return;
+        }
+
+        System.arraycopy(ids, position + 1, ids, position, ids.length - position - 1);
+        encode(ids, ids.length - 1);
+    }
+
+    int[] toArray() {
+        int[] ids = new int[size];
+        int value = 0;
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                delta |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value += delta;
+            ids[i] = value;
+        }
+        return ids;
+    }
+
+    private void encode(int[] ids, int count) {
+        length = 0;
+        size = 0;
+        last = -1;
+        for (int i = 0; i < count; i++) {
+            add(ids[i]);
+        }
+    }
+
+    private void append(int delta) {
+        if (length + 5 > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+
+        while ((delta & ~0x7f) != 0) {
+            data[length++] = (byte) ((delta & 0x7f) | 0x80);
+            delta >>>= 7;
+        }
+        data[length++] = (byte) delta;
+    }
+}
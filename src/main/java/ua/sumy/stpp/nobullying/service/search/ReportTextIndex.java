@@ -0,0 +1,300 @@
+package ua.sumy.stpp.nobullying.service.search;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.ReportListener;
+import ua.sumy.stpp.nobullying.service.ReportService;
+import ua.sumy.stpp.nobullying.service.error.BadOperationException;
+import ua.sumy.stpp.nobullying.service.error.BadParametersException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+// Inverted index over report texts: term -> posting list of report ids, kept current from report events.
+public class ReportTextIndex implements ReportListener {
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int REBUILD_BATCH_SIZE = 500;
+    private static final String OR = "OR";
+
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<PostingList> postings = new ArrayList<>();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Logger log = Logger.getLogger(ReportTextIndex.class.getName());
+
+    public void rebuild(ReportService reportService) throws BadParametersException, BadOperationException,
+            IOException {
+        clear();
+        long indexed = reportService.streamReports(REBUILD_BATCH_SIZE, reports -> {
+            for (Report report: reports) {
+                add(report);
+            }
+        });
+        log.info(String.format("Indexed (%d) reports.", indexed));
+    }
+
+    // Terms are ANDed, "OR" separates alternatives: "a b OR c" matches (a AND b) OR c. Most recent first.
+    public long[] search(String query, Report.ProcessingState state, int limit) {
+        List<List<String>> alternatives = parse(query);
+        if (alternatives.isEmpty() || limit < 1) {
+            return new long[0];
+        }
+
+        lock.readLock().lock();
+        try {
+            int[] matches = new int[0];
+            for (List<String> terms: alternatives) {
+                matches = union(matches, matchAll(terms));
+            }
+            return rank(matches, state, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void reportSaved(Report report, boolean created) {
+        add(report);
+    }
+
+    @Override
+    public void reportStateChanged(long id, Report.ProcessingState from, Report.ProcessingState to,
+                                   Date changedDate, String actor) {
+        lock.writeLock().lock();
+        try {
+            Document document = documents.get(toDocumentId(id));
+            if (document != null) {
+                document.state = to;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reportDeleted(long id, Report.ProcessingState state, String actor) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(toDocumentId(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Search covers the database only, like the pages its results are shown on.
+    @Override
+    public void reportArchived(long id) {
+        reportDeleted(id, Report.ProcessingState.FINISHED, null);
+    }
+
+    void add(Report report) {
+        if (report.getId() > Integer.MAX_VALUE || report.getText() == null) {
+            log.warning(String.format("Report (%d) cannot be indexed.", report.getId()));
+            return;
+        }
+
+        int id = (int) report.getId();
+        Set<String> terms = tokenize(report.getText());
+        long sentTime = (report.getSentDate() != null) ? report.getSentDate().getTime() : 0L;
+
+        lock.writeLock().lock();
+        try {
+            removeDocument(id);
+            int[] documentTerms = new int[terms.size()];
+            int i = 0;
+            for (String term: terms) {
+                Integer termId = termIds.get(term);
+                if (termId == null) {
+                    termId = postings.size();
+                    termIds.put(term, termId);
+                    postings.add(new PostingList());
+                }
+                postings.get(termId).add(id);
+                documentTerms[i++] = termId;
+            }
+            documents.put(id, new Document(documentTerms, report.getState(), sentTime));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clear() {
+        lock.writeLock().lock();
+        try {
+            termIds.clear();
+            postings.clear();
+            documents.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeDocument(int id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+
+        for (int termId: document.terms) {
+            postings.get(termId).remove(id);
+        }
+    }
+
+    private int[] matchAll(List<String> terms) {
+        PostingList[] lists = new PostingList[terms.size()];
+        for (int i = 0; i < lists.length; i++) {
+            Integer termId = termIds.get(terms.get(i));
+            if (termId == null) {
+                return new int[0];
+            }
+            lists[i] = postings.get(termId);
+        }
+
+        // intersect starting from the rarest term so intermediate results stay small.
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+        int[] matches = lists[0].toArray();
+        for (int i = 1; i < lists.length && matches.length > 0; i++) {
+            matches = intersect(matches, lists[i].toArray());
+        }
+        return matches;
+    }
+
+    private long[] rank(int[] matches, Report.ProcessingState state, int limit) {
+        // (sent second, id) packed into one long: sorting keys orders by recency without boxing.
+        long[] keys = new long[matches.length];
+        int count = 0;
+        for (int id: matches) {
+            Document document = documents.get(id);
+            if (document != null && (state == null || document.state == state)) {
+                long sentSecond = TimeUnit.MILLISECONDS.toSeconds(document.sentTime) & 0xffffffffL;
+                keys[count++] = (sentSecond << 31) | id;
+            }
+        }
+
+        Arrays.sort(keys, 0, count);
+        long[] ids = new long[Math.min(limit, count)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = keys[count - 1 - i] & Integer.MAX_VALUE;
+        }
+        return ids;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[count++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[count++] = b[j++];
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static List<List<String>> parse(String query) {
+        List<List<String>> alternatives = new ArrayList<>();
+        if (query == null) {
+            return alternatives;
+        }
+
+        List<String> terms = new ArrayList<>();
+        for (String word: query.trim().split("\\s+")) {
+            if (OR.equals(word)) {
+                if (!terms.isEmpty()) {
+                    alternatives.add(terms);
+                }
+                terms = new ArrayList<>();
+            } else {
+                terms.addAll(tokenize(word));
+            }
+        }
+        if (!terms.isEmpty()) {
+            alternatives.add(terms);
+        }
+        return alternatives;
+    }
+
+    static Set<String> tokenize(String text) {
+        return new LinkedHashSet<>(words(text));
+    }
+
+    // Lower-cased words in text order, repeats included.
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                if (i - start >= MIN_TERM_LENGTH) {
+                    words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static int toDocumentId(long id) {
+        return (id > Integer.MAX_VALUE) ? -1 : (int) id;
+    }
+
+    private static final class Document {
+        private final int[] terms;
+        private Report.ProcessingState state;
+        private final long sentTime;
+
+        private Document(int[] terms, Report.ProcessingState state, long sentTime) {
+            this.terms = terms;
+            this.state = state;
+            this.sentTime = sentTime;
+        }
+    }
+}
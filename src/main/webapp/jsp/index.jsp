@@ -1,3 +1,6 @@
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+
 <!DOCTYPE html>
 <html lang="ru">
 <head>
@@ -5,8 +8,9 @@
   <meta name="viewport" content="width=device-width, initial-scale=1.0">
   <meta http-equiv="X-UA-Compatible" content="ie=edge">
   <title>FORM</title>
-  <link rel="stylesheet" href="../css/style.css">
-  <link rel="stylesheet" href="../css/reset.css">
+  <c:set var="root" value="${pageContext.request.contextPath}" />
+  <link rel="stylesheet" href="${root}${staticAssets['/css/style.css']}">
+  <link rel="stylesheet" href="${root}${staticAssets['/css/reset.css']}">
 </head>
 <body>
   <div class="container">
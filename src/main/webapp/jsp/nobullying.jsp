@@ -5,8 +5,8 @@
 <html>
     <head>
         <c:set var="root" value="${pageContext.request.contextPath}" />
-        <link rel="stylesheet" href="${root}/css/bootstrap.min.css">
-        <script src="${root}/js/bootstrap.min.js"></script>
+        <link rel="stylesheet" href="${root}${staticAssets['/css/reset.css']}">
+        <link rel="stylesheet" href="${root}${staticAssets['/css/style.css']}">
 
         <meta name="viewport" content="width=device-width, initial-scale=1, shrink-to-fit=no">
     </head>
@@ -0,0 +1,87 @@
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+
+<!DOCTYPE html PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN" "http://www.w3.org/TR/html4/loose.dtd">
+<html>
+    <head>
+        <c:set var="root" value="${pageContext.request.contextPath}" />
+        <link rel="stylesheet" href="${root}${staticAssets['/css/reset.css']}">
+        <link rel="stylesheet" href="${root}${staticAssets['/css/style.css']}">
+
+        <meta name="viewport" content="width=device-width, initial-scale=1, shrink-to-fit=no">
+    </head>
+    <body>
+        <div class="container">
+            <table class="table" id="reports">
+                <tr>
+                    <th>#</th>
+                    <th>Username</th>
+                    <th>Text</th>
+                    <th>State</th>
+                    <th>Sent</th>
+                    <th>Duplicate of</th>
+                    <th>Priority</th>
+                </tr>
+                <c:forEach var="report" items="${reports}">
+                    <tr id="report-${report.id}">
+                        <td>${report.id}</td>
+                        <td><c:out value="${report.username}" /></td>
+                        <td><c:out value="${report.text}" /></td>
+                        <td>${report.state}</td>
+                        <td>${report.sentDate}</td>
+                        <td>
+                            <c:if test="${report.duplicateOf != 0}">
+                                <a href="${root}/reports?duplicatesOf=${report.duplicateOf}">#${report.duplicateOf}</a>
+                            </c:if>
+                        </td>
+                        <td>${report.priority}</td>
+                    </tr>
+                </c:forEach>
+            </table>
+            <c:if test="${not empty nextCursor}">
+                <c:url var="nextPage" value="/reports">
+                    <c:param name="order" value="${param.order}" />
+                    <c:param name="state" value="${param.state}" />
+                    <c:param name="size" value="${param.size}" />
+                    <c:param name="duplicates" value="${param.duplicates}" />
+                    <c:param name="cursor" value="${nextCursor}" />
+                </c:url>
+                <a href="${nextPage}">Next</a>
+            </c:if>
+            <a href="${root}/reports?duplicates=hide">Hide duplicates</a>
+            <a href="${root}/reports?order=priority&amp;duplicates=hide">Most urgent first</a>
+            <a href="${root}/reports?export=csv">CSV</a>
+            <a href="${root}/reports?export=ndjson">NDJSON</a>
+        </div>
+        <script>
+            // new reports and state changes arrive as server-sent events instead of reloading the page.
+            (function () {
+                var table = document.getElementById("reports");
+                var events = new EventSource("${root}/reports");
+                events.addEventListener("report-created", function (event) {
+                    var report = JSON.parse(event.data);
+                    var row = table.insertRow(1);
+                    row.id = "report-" + report.id;
+                    var values = [report.id, report.username, report.text, report.state, report.sentDate,
+                        report.duplicateOf ? "#" + report.duplicateOf : "", report.priority];
+                    values.forEach(function (value) {
+                        row.insertCell().textContent = value;
+                    });
+                });
+                events.addEventListener("report-state-changed", function (event) {
+                    var change = JSON.parse(event.data);
+                    var row = document.getElementById("report-" + change.id);
+                    if (row) {
+                        row.cells[3].textContent = change.to;
+                    }
+                });
+                events.addEventListener("report-deleted", function (event) {
+                    var row = document.getElementById("report-" + JSON.parse(event.data).id);
+                    if (row) {
+                        row.parentNode.removeChild(row);
+                    }
+                });
+            })();
+        </script>
+    </body>
+</html>
@@ -0,0 +1,42 @@
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+
+<!DOCTYPE html PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN" "http://www.w3.org/TR/html4/loose.dtd">
+<html>
+    <head>
+        <c:set var="root" value="${pageContext.request.contextPath}" />
+        <link rel="stylesheet" href="${root}${staticAssets['/css/reset.css']}">
+        <link rel="stylesheet" href="${root}${staticAssets['/css/style.css']}">
+
+        <meta name="viewport" content="width=device-width, initial-scale=1, shrink-to-fit=no">
+    </head>
+    <body>
+        <div class="container">
+            <table class="table">
+                <tr>
+                    <th>#</th>
+                    <th>Login</th>
+                    <th>Name</th>
+                    <th>Surname</th>
+                    <th>Admin</th>
+                </tr>
+                <c:forEach var="user" items="${users}">
+                    <tr>
+                        <td>${user.id}</td>
+                        <td><c:out value="${user.login}" /></td>
+                        <td><c:out value="${user.name}" /></td>
+                        <td><c:out value="${user.surname}" /></td>
+                        <td>${user.admin}</td>
+                    </tr>
+                </c:forEach>
+            </table>
+            <c:if test="${not empty nextCursor}">
+                <c:url var="nextPage" value="/users">
+                    <c:param name="size" value="${param.size}" />
+                    <c:param name="cursor" value="${nextCursor}" />
+                </c:url>
+                <a href="${nextPage}">Next</a>
+            </c:if>
+        </div>
+    </body>
+</html>
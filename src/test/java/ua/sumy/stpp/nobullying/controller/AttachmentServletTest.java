@@ -0,0 +1,97 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AttachmentServletTest {
+    private static final String ETAG = "\"abc\"";
+
+    private Path file;
+    private HttpServletRequest req;
+    private HttpServletResponse resp;
+    private ByteArrayOutputStream body;
+
+    @BeforeEach
+    void setup() throws IOException {
+        file = Files.createTempFile("attachment", ".txt");
+        Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+
+        req = mock(HttpServletRequest.class);
+        when(req.getMethod()).thenReturn("GET");
+        resp = mock(HttpServletResponse.class);
+        body = new ByteArrayOutputStream();
+        when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void getWithoutConditionalHeaders() throws IOException {
+        new AttachmentServlet().sendFile(file, ETAG, "text/plain", "note.txt", req, resp);
+
+        verify(resp, never()).setStatus(anyInt());
+        verify(resp).setContentLengthLong(7L);
+        assertEquals("content", new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void getNotRenderableContent() throws IOException {
+        new AttachmentServlet().sendFile(file, ETAG, "text/html", "page.html", req, resp);
+
+        verify(resp).setHeader("X-Content-Type-Options", "nosniff");
+        verify(resp).setHeader("Content-Disposition", "attachment; filename=\"page.html\"");
+    }
+
+    @Test
+    void getImage() throws IOException {
+        new AttachmentServlet().sendFile(file, ETAG, "image/png", "photo.png", req, resp);
+
+        verify(resp).setHeader("Content-Disposition", "inline; filename=\"photo.png\"");
+    }
+
+    @Test
+    void getWithMatchingETag() throws IOException {
+        when(req.getHeader("If-None-Match")).thenReturn(ETAG);
+
+        new AttachmentServlet().sendFile(file, ETAG, "text/plain", "note.txt", req, resp);
+
+        verify(resp).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    void matchesMissingHeader() {
+        assertFalse(ConditionalGet.matches(null, ETAG));
+    }
+}
@@ -0,0 +1,52 @@
+package ua.sumy.stpp.nobullying.controller;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CompressionFilterTest {
+    @Test
+    @SuppressWarnings("unchecked")
+    void linkListedAssetVersioned() throws ServletException {
+        ServletContext context = mock(ServletContext.class);
+        when(context.getResourceAsStream(CompressionFilter.MANIFEST)).thenReturn(new ByteArrayInputStream(
+                "/css/style.css=0123456789abcdef0123\n".getBytes(StandardCharsets.ISO_8859_1)));
+        when(context.getResourceAsStream("/css/style.css")).thenReturn(new ByteArrayInputStream(new byte[]{1}));
+
+        Map<String, String> staticAssets = (Map<String, String>) initFilter(context);
+
+        assertEquals("/css/style.css?v=0123456789abcdef", staticAssets.get("/css/style.css"));
+        assertEquals("/css/reset.css", staticAssets.get("/css/reset.css"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void linkUnversionedWithoutManifest() throws ServletException {
+        Map<String, String> staticAssets = (Map<String, String>) initFilter(mock(ServletContext.class));
+
+        assertEquals("/css/style.css", staticAssets.get("/css/style.css"));
+    }
+
+    private static Object initFilter(ServletContext context) throws ServletException {
+        FilterConfig filterConfig = mock(FilterConfig.class);
+        when(filterConfig.getServletContext()).thenReturn(context);
+        new CompressionFilter().init(filterConfig);
+
+        return captureStaticAssets(context);
+    }
+
+    private static Object captureStaticAssets(ServletContext context) {
+        ArgumentCaptor<Object> staticAssets = ArgumentCaptor.forClass(Object.class);
+        verify(context).setAttribute(eq(CompressionFilter.STATIC_ASSETS_ATTRIBUTE), staticAssets.capture());
+        return staticAssets.getValue();
+    }
+}
@@ -0,0 +1,88 @@
+package ua.sumy.stpp.nobullying.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Attachment;
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.attachment.AttachmentStore;
+import ua.sumy.stpp.nobullying.service.error.BadParametersException;
+import ua.sumy.stpp.nobullying.service.error.ModelNotFoundException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AttachmentServiceTest {
+    private Path directory;
+    private EntityManager entityManager;
+    private AttachmentService attachmentService;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("attachments");
+        entityManager = mock(EntityManager.class);
+        attachmentService = new AttachmentService(entityManager, new AttachmentStore(directory));
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void attachWithoutName() {
+        assertThrows(BadParametersException.class, () -> attachmentService.attachToReport(1L, "", "image/png",
+                new ByteArrayInputStream(new byte[1]), 10L));
+    }
+
+    @Test
+    void attachScriptableContentType() {
+        assertThrows(BadParametersException.class, () -> attachmentService.attachToReport(1L, "photo.svg",
+                "image/svg+xml", new ByteArrayInputStream(new byte[1]), 10L));
+        assertThrows(BadParametersException.class, () -> attachmentService.attachToReport(1L, "page.html",
+                "text/html; charset=utf-8", new ByteArrayInputStream(new byte[1]), 10L));
+    }
+
+    @Test
+    void attachToNotExistingReport() {
+        when(entityManager.find(Report.class, 1L)).thenReturn(null);
+
+        assertThrows(ModelNotFoundException.class, () -> attachmentService.attachToReport(1L, "photo.png",
+                "image/png", new ByteArrayInputStream(new byte[1]), 10L));
+    }
+
+    @Test
+    void attachToReport() throws Exception {
+        Report report = new Report("Anonymous", "Text", new Date());
+        report.setId(1L);
+
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(entityManager.find(Report.class, 1L)).thenReturn(report);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        Attachment attachment = attachmentService.attachToReport(1L, "photo.png", "Image/PNG",
+                new ByteArrayInputStream(new byte[] {1, 2, 3}), 10L);
+
+        assertSame(report, attachment.getReport());
+        assertEquals("image/png", attachment.getContentType());
+        assertEquals(3L, attachment.getSize());
+        assertEquals(1, report.getAttachments().size());
+        assertTrue(Files.exists(attachmentService.getContentPath(attachment)));
+        verify(entityManager).persist(attachment);
+        verify(entityTransaction).commit();
+    }
+}
@@ -0,0 +1,87 @@
+package ua.sumy.stpp.nobullying.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.model.User;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelCacheTest {
+    private AtomicLong time;
+    private ModelCache modelCache;
+
+    @BeforeEach
+    void setup() {
+        time = new AtomicLong();
+        modelCache = new ModelCache(2, 1000L, time::get);
+    }
+
+    @Test
+    void getMissingModel() {
+        assertNull(modelCache.get(1L));
+        assertEquals(1, modelCache.getMisses());
+        assertEquals(0, modelCache.getHits());
+    }
+
+    @Test
+    void getCachedModel() {
+        Report report = new Report();
+        modelCache.put(1L, report);
+
+        assertSame(report, modelCache.get(1L));
+        assertNull(modelCache.get(2L));
+        assertEquals(1, modelCache.getHits());
+        assertEquals(1, modelCache.getMisses());
+    }
+
+    @Test
+    void evictLeastRecentlyUsedModel() {
+        modelCache.put(1L, new Report());
+        modelCache.put(2L, new Report());
+        modelCache.get(1L);
+        modelCache.put(3L, new Report());
+
+        assertNotNull(modelCache.get(1L));
+        assertNull(modelCache.get(2L));
+        assertEquals(1, modelCache.getEvictions());
+        assertEquals(2, modelCache.size());
+    }
+
+    @Test
+    void expireModel() {
+        modelCache.put(1L, new Report());
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(1001L));
+
+        assertNull(modelCache.get(1L));
+        assertEquals(1, modelCache.getEvictions());
+        assertEquals(0, modelCache.size());
+    }
+
+    @Test
+    void invalidateModels() {
+        modelCache.put(1L, new Report());
+        modelCache.put(2L, new Report());
+        modelCache.put(3L, new Report());
+
+        modelCache.invalidate(1L);
+        assertNull(modelCache.get(1L));
+        assertNotNull(modelCache.get(2L));
+
+        modelCache.invalidate(Arrays.asList(2L, 3L));
+        assertEquals(0, modelCache.size());
+    }
+
+    @Test
+    void shareCachePerModelType() {
+        ModelCaches modelCaches = new ModelCaches();
+
+        assertSame(modelCaches.of(Report.class), modelCaches.of(Report.class));
+        assertNotSame(modelCaches.of(Report.class), modelCaches.of(User.class));
+    }
+}
@@ -0,0 +1,91 @@
+package ua.sumy.stpp.nobullying.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.metrics.ServiceMetrics;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReportIntakeTest {
+    private EntityManager entityManager;
+    private ReportIntake reportIntake;
+
+    @BeforeEach
+    void setup() {
+        entityManager = mock(EntityManager.class);
+        when(entityManager.getTransaction()).thenReturn(mock(EntityTransaction.class));
+        reportIntake = new ReportIntake(new ReportService(entityManager), 2, 10);
+    }
+
+    @Test
+    void rejectReportWhenStopped() {
+        assertFalse(reportIntake.submit(new Report("Anonymous", "Text", new Date()), outcome -> fail("Completed.")));
+        assertEquals(1, reportIntake.getRejected());
+    }
+
+    @Test
+    void commitSubmittedReports() {
+        List<SaveOutcome<Report>> outcomes = new CopyOnWriteArrayList<>();
+
+        reportIntake.start();
+        assertTrue(reportIntake.submit(new Report("Anonymous1", "Text 1", new Date()), outcomes::add));
+        assertTrue(reportIntake.submit(new Report(), outcomes::add));
+        reportIntake.stop();
+
+        assertEquals(2, outcomes.size());
+        assertEquals(1, outcomes.stream().filter(SaveOutcome::isSaved).count());
+        assertEquals(1, reportIntake.getCommittedReports());
+        assertEquals(0, reportIntake.getQueueDepth());
+        assertTrue(reportIntake.getCommits() >= 1);
+        assertTrue(reportIntake.getMaxCommitNanos() > 0);
+    }
+
+    @Test
+    void rejectReportSubmittedWhileStopping() {
+        AtomicReference<ReportIntake> intake = new AtomicReference<>();
+        ArrayBlockingQueue<ReportIntake.Submission> queue = new ArrayBlockingQueue<ReportIntake.Submission>(2) {
+            @Override
+            public boolean offer(ReportIntake.Submission submission) {
+                // the writer finds the queue empty and quits before the submission gets in.
+                intake.get().stop();
+                return super.offer(submission);
+            }
+        };
+        intake.set(new ReportIntake(new ReportService(entityManager), queue, 10));
+
+        intake.get().start();
+        assertFalse(intake.get().submit(new Report("Anonymous", "Text", new Date()), outcome -> fail("Completed.")));
+        assertEquals(0, intake.get().getQueueDepth());
+        assertEquals(1, intake.get().getRejected());
+    }
+
+    @Test
+    void exportQueueDepthAndCommitLatency() throws IOException {
+        reportIntake.start();
+        assertTrue(reportIntake.submit(new Report("Anonymous", "Text", new Date()), outcome -> {}));
+        reportIntake.stop();
+
+        StringWriter writer = new StringWriter();
+        ServiceMetrics.getDefault().write(writer);
+        String text = writer.toString();
+
+        assertTrue(text.contains("nobullying_report_intake_queue_depth 0\n"));
+        assertTrue(text.contains("nobullying_report_intake_capacity 2\n"));
+        assertTrue(text.contains("nobullying_service_operation_duration_seconds_count" +
+                "{operation=\"ReportIntake.commit\"}"));
+    }
+}
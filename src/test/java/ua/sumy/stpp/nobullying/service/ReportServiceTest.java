@@ -4,17 +4,29 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 
 import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.archive.ReportArchive;
 import ua.sumy.stpp.nobullying.service.error.BadOperationException;
 import ua.sumy.stpp.nobullying.service.error.BadParametersException;
 import ua.sumy.stpp.nobullying.service.error.ModelNotFoundException;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
+import javax.persistence.NoResultException;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
-
+import javax.persistence.TemporalType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -81,91 +93,385 @@ class ReportServiceTest {
         assertEquals(testReports, allReports);
     }
 
+    @Test
+    void getReportsByIds() {
+        List<Report> testReports = new LinkedList<>();
+        for (long id = 1; id <= 2; id++) {
+            Report report = new Report("Anonymous", "Text " + id, new Date());
+            report.setId(id);
+            testReports.add(report);
+        }
+
+        Query query = mock(Query.class);
+
+        when(query.getResultList()).thenReturn(testReports);
+        when(entityManager.createQuery("SELECT r FROM Report r WHERE r.id IN (:id0, :id1, :id2)")).thenReturn(query);
+
+        List<Report> reports = reportService.getReportsByIds(new long[]{2L, 3L, 1L});
+
+        assertEquals(2, reports.size());
+        assertEquals(2L, reports.get(0).getId());
+        assertEquals(1L, reports.get(1).getId());
+        verify(query).setParameter("id1", 3L);
+    }
+
+    @Test
+    void getReportsPageWithWrongSize() {
+        assertThrows(BadParametersException.class, () -> reportService.getReportsPage(ReportOrder.ID, null, null, 0));
+        assertThrows(BadParametersException.class, () -> reportService.getReportsPage(ReportOrder.ID, null, null,
+                Service.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    void getReportsPageWithMalformedCursor() {
+        assertThrows(BadParametersException.class, () -> reportService.getReportsPage(ReportOrder.ID, null,
+                "not a cursor", 10));
+    }
+
+    @Test
+    void getReportsPageWithCursorOfAnotherOrder() {
+        String cursor = PageCursor.encode(ReportOrder.ID.name(), 1L);
+
+        assertThrows(BadParametersException.class, () -> reportService.getReportsPage(ReportOrder.SENT_DATE, null,
+                cursor, 10));
+    }
+
+    @Test
+    void getFirstReportsPage() {
+        List<Report> testReports = new LinkedList<>();
+        for (long id = 1; id <= 3; id++) {
+            Report report = new Report("Anonymous", "Text " + id, new Date());
+            report.setId(id);
+            testReports.add(report);
+        }
+
+        Query query = mock(Query.class);
+        String queryText = "SELECT r FROM Report r WHERE r.state = :state ORDER BY r.id";
+
+        when(query.getResultList()).thenReturn(testReports);
+        when(entityManager.createQuery(queryText)).thenReturn(query);
+
+        Page<Report> page = assertDoesNotThrow(() -> reportService.getReportsPage(ReportOrder.ID,
+                Report.ProcessingState.NEW, null, 2));
+
+        assertEquals(testReports.subList(0, 2), page.getModels());
+        assertTrue(page.hasNext());
+
+        verify(query).setParameter("state", Report.ProcessingState.NEW);
+        verify(query).setMaxResults(3);
+    }
+
+    @Test
+    void getNextReportsPage() {
+        Report report = new Report("Anonymous", "Text", new Date());
+        report.setId(3L);
+        List<Report> testReports = new LinkedList<>();
+        testReports.add(report);
+
+        Query query = mock(Query.class);
+        String queryText = "SELECT r FROM Report r WHERE r.sentDate IS NOT NULL AND (r.sentDate > :sentDate " +
+                "OR (r.sentDate = :sentDate AND r.id > :id)) ORDER BY r.sentDate, r.id";
+        String cursor = PageCursor.encode(ReportOrder.SENT_DATE.name(), 1000L, 2L);
+
+        when(query.getResultList()).thenReturn(testReports);
+        when(entityManager.createQuery(queryText)).thenReturn(query);
+
+        Page<Report> page = assertDoesNotThrow(() -> reportService.getReportsPage(ReportOrder.SENT_DATE, null,
+                cursor, 2));
+
+        assertEquals(testReports, page.getModels());
+        assertFalse(page.hasNext());
+        assertNull(page.getNextCursor());
+
+        verify(query).setParameter("sentDate", new Date(1000L), TemporalType.TIMESTAMP);
+        verify(query).setParameter("id", 2L);
+    }
+
+    @Test
+    void getReportsPageByPriority() {
+        List<Report> testReports = new LinkedList<>();
+        for (long id = 5L; id <= 7L; id++) {
+            Report report = new Report("Anonymous", "Text", new Date());
+            report.setId(id);
+            report.setPriority(40);
+            testReports.add(report);
+        }
+
+        Query query = mock(Query.class);
+        String queryText = "SELECT r FROM Report r WHERE (r.priority < :priority OR (r.priority = :priority " +
+                "AND r.id > :id)) ORDER BY r.priority DESC, r.id";
+        String cursor = PageCursor.encode(ReportOrder.PRIORITY.name(), 80L, 2L);
+
+        when(query.getResultList()).thenReturn(testReports);
+        when(entityManager.createQuery(queryText)).thenReturn(query);
+
+        Page<Report> page = assertDoesNotThrow(() -> reportService.getReportsPage(ReportOrder.PRIORITY, null,
+                cursor, 2));
+
+        assertEquals(testReports.subList(0, 2), page.getModels());
+        assertEquals(PageCursor.encode(ReportOrder.PRIORITY.name(), 40L, 6L), page.getNextCursor());
+
+        verify(query).setParameter("priority", 80);
+        verify(query).setParameter("id", 2L);
+    }
+
+    @Test
+    void streamReportsInBatches() {
+        List<Report> testReports = new LinkedList<>();
+        for (long id = 1; id <= 3; id++) {
+            Report report = new Report("Anonymous", "Text " + id, new Date());
+            report.setId(id);
+            testReports.add(report);
+        }
+
+        Query firstQuery = mock(Query.class);
+        Query nextQuery = mock(Query.class);
+
+        when(firstQuery.getResultList()).thenReturn(testReports);
+        when(nextQuery.getResultList()).thenReturn(testReports.subList(2, 3));
+        when(entityManager.createQuery("SELECT r FROM Report r ORDER BY r.id")).thenReturn(firstQuery);
+        when(entityManager.createQuery("SELECT r FROM Report r WHERE r.id > :id ORDER BY r.id")).thenReturn(nextQuery);
+
+        List<List<Report>> batches = new LinkedList<>();
+        long streamed = assertDoesNotThrow(() -> reportService.streamReports(2, batches::add));
+
+        assertEquals(3, streamed);
+        assertEquals(2, batches.size());
+        assertEquals(testReports.subList(0, 2), batches.get(0));
+        assertEquals(testReports.subList(2, 3), batches.get(1));
+
+        verify(nextQuery).setParameter("id", 2L);
+        verify(entityManager, times(2)).clear();
+    }
+
+    @Test
+    void streamReportsFailsOnQueryError() {
+        Query firstQuery = mock(Query.class);
+        Query nextQuery = mock(Query.class);
+        List<Report> testReports = new LinkedList<>();
+        for (long id = 1; id <= 3; id++) {
+            Report report = new Report("Anonymous", "Text " + id, new Date());
+            report.setId(id);
+            testReports.add(report);
+        }
+
+        when(firstQuery.getResultList()).thenReturn(testReports);
+        when(nextQuery.getResultList()).thenThrow(new PersistenceException("Connection lost"));
+        when(entityManager.createQuery("SELECT r FROM Report r ORDER BY r.id")).thenReturn(firstQuery);
+        when(entityManager.createQuery("SELECT r FROM Report r WHERE r.id > :id ORDER BY r.id")).thenReturn(nextQuery);
+
+        List<List<Report>> batches = new LinkedList<>();
+        assertThrows(BadOperationException.class, () -> reportService.streamReports(2, batches::add));
+        assertEquals(1, batches.size());
+    }
+
     @Test
     void beginModerateNotExistingReport() {
-        Report report = new Report();
-        report.setId(1L);
+        Query stateQuery = mockStateQuery(null);
+        mockStateUpdate(Report.ProcessingState.NEW, "beginMentoringDate", 0);
 
-        when(entityManager.find(Report.class, 1L)).thenReturn(null);
+        assertThrows(ModelNotFoundException.class, () -> reportService.beginModeratingReport(1L, "moderator"));
 
-        assertThrows(ModelNotFoundException.class, () -> reportService.beginModeratingReport(1L));
+        verify(stateQuery).setParameter("id", 1L);
     }
 
     @Test
     void beginModerateAlreadyModeratingReport() {
-        Report report = new Report();
-        report.setId(1L);
-        report.setState(Report.ProcessingState.MODERATING);
-
-        when(entityManager.find(Report.class, 1L)).thenReturn(report);
+        mockStateQuery(Report.ProcessingState.MODERATING);
+        mockStateUpdate(Report.ProcessingState.NEW, "beginMentoringDate", 0);
 
-        assertThrows(BadOperationException.class, () -> reportService.beginModeratingReport(1L));
+        assertThrows(BadOperationException.class, () -> reportService.beginModeratingReport(1L, "moderator"));
     }
 
     @Test
     void beginModerateAlreadyFinishedReport() {
-        Report report = new Report();
-        report.setId(1L);
-        report.setState(Report.ProcessingState.FINISHED);
+        mockStateQuery(Report.ProcessingState.FINISHED);
+        mockStateUpdate(Report.ProcessingState.NEW, "beginMentoringDate", 0);
 
-        when(entityManager.find(Report.class, 1L)).thenReturn(report);
+        assertThrows(BadOperationException.class, () -> reportService.beginModeratingReport(1L, "moderator"));
+    }
+
+    @Test
+    void beginModerateReportLeasedByAnotherModerator() {
+        mockStateQuery(Report.ProcessingState.NEW);
+        mockStateUpdate(Report.ProcessingState.NEW, "beginMentoringDate", 0);
 
-        assertThrows(BadOperationException.class, () -> reportService.beginModeratingReport(1L));
+        assertThrows(BadOperationException.class, () -> reportService.beginModeratingReport(1L, "moderator"));
     }
 
     @Test
-    void beginModerateNewReport() {
-        Report report = new Report("Anonymous", "Text", new Date());
-        report.setId(1L);
+    void beginModerateReportWithoutModerator() {
+        assertThrows(BadParametersException.class, () -> reportService.beginModeratingReport(1L, null));
+        assertThrows(BadParametersException.class, () -> reportService.beginModeratingReport(1L, ""));
+    }
 
-        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+    @Test
+    void beginModerateNewReportClearsLease() {
+        Query query = mock(Query.class);
+        when(query.executeUpdate()).thenReturn(1);
+        when(entityManager.createQuery("UPDATE Report r SET r.state = :to, r.beginMentoringDate = :date, " +
+                "r.leaseOwner = NULL, r.leaseExpiresDate = NULL, r.version = r.version + 1 WHERE r.id = :id " +
+                "AND r.state = :from AND (r.leaseOwner IS NULL OR r.leaseOwner = :moderator " +
+                "OR r.leaseExpiresDate < :date)")).thenReturn(query);
+        when(entityManager.getTransaction()).thenReturn(mock(EntityTransaction.class));
 
-        when(entityManager.find(Report.class, 1L)).thenReturn(report);
-        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+        assertDoesNotThrow(() -> reportService.beginModeratingReport(1L, "moderator"));
+
+        verify(query).setParameter("moderator", "moderator");
+    }
 
-        assertDoesNotThrow(() -> reportService.beginModeratingReport(1L));
+    @Test
+    void beginModerateNewReport() {
+        EntityTransaction entityTransaction = mockStateUpdate(Report.ProcessingState.NEW, "beginMentoringDate", 1);
+        Query stateQuery = mockStateQuery(Report.ProcessingState.NEW);
+
+        assertDoesNotThrow(() -> reportService.beginModeratingReport(1L, "moderator"));
 
         verify(entityTransaction).begin();
-        verify(entityManager).persist(report);
         verify(entityTransaction).commit();
+        verify(stateQuery, never()).getSingleResult();
+        verify(entityManager, never()).find(Report.class, 1L);
     }
 
     @Test
-    void finishModeratingNotExistingReport() {
-        Report report = new Report();
+    void beginModerateCachedReportRefreshesIt() {
+        Report report = new Report("Anonymous", "Text", new Date());
         report.setId(1L);
 
-        when(entityManager.find(Report.class, 1L)).thenReturn(null);
+        when(entityManager.find(Report.class, 1L)).thenReturn(report);
+        when(entityManager.contains(report)).thenReturn(true);
+        mockStateUpdate(Report.ProcessingState.NEW, "beginMentoringDate", 1);
+
+        assertDoesNotThrow(() -> reportService.getReportById(1L));
+        assertDoesNotThrow(() -> reportService.beginModeratingReport(1L, "moderator"));
 
-        assertThrows(ModelNotFoundException.class, () -> reportService.finishModeratingReport(1L));
+        verify(entityManager).refresh(report);
+        assertEquals(0, reportService.getModelCache(Report.class).size());
     }
 
     @Test
-    void finishModeratingAlreadyFinishedModeratingReport() {
-        Report report = new Report();
-        report.setId(1L);
-        report.setState(Report.ProcessingState.FINISHED);
+    void finishModeratingNotExistingReport() {
+        mockStateQuery(null);
+        mockStateUpdate(Report.ProcessingState.MODERATING, "finishedDate", 0);
 
-        when(entityManager.find(Report.class, 1L)).thenReturn(report);
+        assertThrows(ModelNotFoundException.class, () -> reportService.finishModeratingReport(1L, "moderator"));
+    }
+
+    @Test
+    void finishModeratingAlreadyFinishedModeratingReport() {
+        mockStateQuery(Report.ProcessingState.FINISHED);
+        mockStateUpdate(Report.ProcessingState.MODERATING, "finishedDate", 0);
 
-        assertThrows(BadOperationException.class, () -> reportService.finishModeratingReport(1L));
+        assertThrows(BadOperationException.class, () -> reportService.finishModeratingReport(1L, "moderator"));
     }
 
     @Test
     void finishModeratingReport() {
-        Report report = new Report("Anonymous", "Text", new Date());
-        report.setId(1L);
+        EntityTransaction entityTransaction = mockStateUpdate(Report.ProcessingState.MODERATING, "finishedDate", 1);
 
+        assertDoesNotThrow(() -> reportService.finishModeratingReport(1L, "moderator"));
+
+        verify(entityTransaction, times(1)).begin();
+        verify(entityTransaction, times(1)).commit();
+    }
+
+    @Test
+    void finishModeratingNewReport() {
+        Query moderatingQuery = mock(Query.class);
+        Query newQuery = mock(Query.class);
         EntityTransaction entityTransaction = mock(EntityTransaction.class);
 
-        when(entityManager.find(Report.class, 1L)).thenReturn(report);
+        when(moderatingQuery.executeUpdate()).thenReturn(0);
+        when(newQuery.executeUpdate()).thenReturn(1);
+        when(entityManager.createQuery(stateUpdateText("finishedDate"))).thenReturn(moderatingQuery);
+        when(entityManager.createQuery(leasedStateUpdateText("finishedDate"))).thenReturn(newQuery);
         when(entityManager.getTransaction()).thenReturn(entityTransaction);
 
-        assertDoesNotThrow(() -> reportService.finishModeratingReport(1L));
+        assertDoesNotThrow(() -> reportService.finishModeratingReport(1L, "moderator"));
 
-        verify(entityTransaction).begin();
-        verify(entityManager).persist(report);
-        verify(entityTransaction).commit();
+        verify(moderatingQuery).setParameter("from", Report.ProcessingState.MODERATING);
+        verify(newQuery).setParameter("from", Report.ProcessingState.NEW);
+        verify(newQuery).setParameter("moderator", "moderator");
+        verify(entityTransaction, times(2)).commit();
+    }
+
+    @Test
+    void finishModeratingReportLeasedByAnotherModerator() {
+        ReportListener listener = mock(ReportListener.class);
+        reportService = new ReportService(entityManager, Collections.singletonList(listener));
+        Query moderatingQuery = mock(Query.class);
+        Query newQuery = mock(Query.class);
+
+        when(entityManager.createQuery(stateUpdateText("finishedDate"))).thenReturn(moderatingQuery);
+        when(entityManager.createQuery(leasedStateUpdateText("finishedDate"))).thenReturn(newQuery);
+        when(entityManager.getTransaction()).thenReturn(mock(EntityTransaction.class));
+        mockStateQuery(Report.ProcessingState.NEW);
+
+        assertThrows(BadOperationException.class, () -> reportService.finishModeratingReport(1L, "other"));
+
+        verify(newQuery).setParameter("moderator", "other");
+        verify(listener, never()).reportStateChanged(anyLong(), any(Report.ProcessingState.class),
+                any(Report.ProcessingState.class), any(Date.class), anyString());
+    }
+
+    @Test
+    void claimReportsWithoutModerator() {
+        assertThrows(BadParametersException.class, () -> reportService.claimReports(null, 10, 60000L));
+        assertThrows(BadParametersException.class, () -> reportService.claimReports("", 10, 60000L));
+        assertThrows(BadParametersException.class, () -> reportService.claimReports("moderator", 10, 0L));
+    }
+
+    @Test
+    void claimReportsSkipsTakenOnes() {
+        List<Report> leasedReports = new LinkedList<>();
+        for (long id = 2; id <= 3; id++) {
+            Report report = new Report("Anonymous", "Text " + id, new Date());
+            report.setId(id);
+            report.setLeaseOwner("moderator");
+            leasedReports.add(report);
+        }
+
+        Query candidatesQuery = mock(Query.class);
+        Query leaseQuery = mock(Query.class);
+        Query leasedIdsQuery = mock(Query.class);
+        Query leasedQuery = mock(Query.class);
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(candidatesQuery.getResultList()).thenReturn(Arrays.asList(1L, 2L), Collections.singletonList(3L));
+        when(leaseQuery.executeUpdate()).thenReturn(1, 1);
+        when(leasedIdsQuery.getResultList()).thenReturn(Collections.singletonList(2L));
+        when(leasedQuery.getResultList()).thenReturn(leasedReports);
+        when(entityManager.createQuery(startsWith("SELECT r.id FROM Report r WHERE r.state")))
+                .thenReturn(candidatesQuery);
+        when(entityManager.createQuery(startsWith("UPDATE Report r SET r.leaseOwner"))).thenReturn(leaseQuery);
+        when(entityManager.createQuery(startsWith("SELECT r.id FROM Report r WHERE r.leaseOwner")))
+                .thenReturn(leasedIdsQuery);
+        when(entityManager.createQuery(startsWith("SELECT r FROM Report r WHERE r.leaseOwner")))
+                .thenReturn(leasedQuery);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        List<Report> reports = assertDoesNotThrow(() -> reportService.claimReports("moderator", 2, 60000L));
+
+        assertEquals(leasedReports, reports);
+
+        verify(candidatesQuery).setMaxResults(2);
+        verify(candidatesQuery).setMaxResults(1);
+        verify(leaseQuery, times(2)).executeUpdate();
+        verify(leasedIdsQuery, times(1)).getResultList();
+        verify(leasedQuery).setParameter("first", 2L);
+        verify(leasedQuery).setParameter("last", 3L);
+        verify(entityTransaction, times(2)).commit();
+    }
+
+    @Test
+    void releaseNotLeasedReport() {
+        Query query = mock(Query.class);
+
+        when(query.executeUpdate()).thenReturn(0);
+        when(entityManager.createQuery(startsWith("UPDATE Report r SET r.leaseOwner = NULL"))).thenReturn(query);
+        when(entityManager.getTransaction()).thenReturn(mock(EntityTransaction.class));
+
+        assertThrows(BadOperationException.class, () -> reportService.releaseReport(1L, "moderator"));
     }
 
     @Test
@@ -195,6 +501,149 @@ class ReportServiceTest {
         verify(entityTransaction).commit();
     }
 
+    @Test
+    void saveNullReports() {
+        assertThrows(BadParametersException.class, () -> reportService.saveReports(null));
+    }
+
+    @Test
+    void saveReportsInBatches() {
+        List<Report> reports = new LinkedList<>();
+        reports.add(new Report("Anonymous1", "Text 1", new Date()));
+        reports.add(new Report());
+        reports.add(new Report("Anonymous2", "Text 2", new Date()));
+        reports.add(new Report("Anonymous3", "Text 3", new Date()));
+
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        List<SaveOutcome<Report>> outcomes = assertDoesNotThrow(() -> reportService.saveReports(reports, 2));
+
+        assertEquals(4, outcomes.size());
+        assertEquals(SaveOutcome.Status.SAVED, outcomes.get(0).getStatus());
+        assertEquals(SaveOutcome.Status.INVALID, outcomes.get(1).getStatus());
+        assertEquals(SaveOutcome.Status.SAVED, outcomes.get(2).getStatus());
+        assertEquals(SaveOutcome.Status.SAVED, outcomes.get(3).getStatus());
+        assertSame(reports.get(1), outcomes.get(1).getModel());
+
+        verify(entityTransaction, times(2)).begin();
+        verify(entityManager, times(2)).flush();
+        verify(entityTransaction, times(2)).commit();
+        verify(entityManager, times(2)).clear();
+    }
+
+    @Test
+    void saveReportsWithFailedBatch() {
+        Report badReport = new Report("Anonymous1", "Text 1", new Date());
+        List<Report> reports = new LinkedList<>();
+        reports.add(badReport);
+        reports.add(new Report("Anonymous2", "Text 2", new Date()));
+        reports.add(new Report("Anonymous3", "Text 3", new Date()));
+
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+        doThrow(new RuntimeException("Constraint violation.")).when(entityManager).persist(badReport);
+
+        List<SaveOutcome<Report>> outcomes = assertDoesNotThrow(() -> reportService.saveReports(reports, 2));
+
+        assertEquals(SaveOutcome.Status.FAILED, outcomes.get(0).getStatus());
+        assertEquals(SaveOutcome.Status.FAILED, outcomes.get(1).getStatus());
+        assertEquals(SaveOutcome.Status.SAVED, outcomes.get(2).getStatus());
+
+        verify(entityTransaction).rollback();
+        verify(entityTransaction, times(1)).commit();
+    }
+
+    @Test
+    void countReportsByState() {
+        List<Object[]> rows = new LinkedList<>();
+        rows.add(new Object[]{Report.ProcessingState.NEW, 5L});
+        rows.add(new Object[]{Report.ProcessingState.FINISHED, 2L});
+
+        Query query = mock(Query.class);
+
+        when(query.getResultList()).thenReturn(rows);
+        when(entityManager.createQuery("SELECT r.state, COUNT(r) FROM Report r GROUP BY r.state")).thenReturn(query);
+
+        Map<Report.ProcessingState, Long> counts = reportService.countReportsByState();
+
+        assertEquals(5L, (long) counts.get(Report.ProcessingState.NEW));
+        assertEquals(2L, (long) counts.get(Report.ProcessingState.FINISHED));
+        assertNull(counts.get(Report.ProcessingState.MODERATING));
+    }
+
+    @Test
+    void notifyListenersAboutReportChanges() {
+        ReportListener listener = mock(ReportListener.class);
+        reportService = new ReportService(entityManager, Collections.singletonList(listener));
+
+        Report report = new Report("Anonymous", "Text", new Date());
+        EntityTransaction entityTransaction = mockStateUpdate(Report.ProcessingState.NEW, "beginMentoringDate", 1);
+
+        assertDoesNotThrow(() -> reportService.saveReport(report));
+        assertDoesNotThrow(() -> reportService.beginModeratingReport(1L, "moderator"));
+
+        report.setId(1L);
+        report.setState(Report.ProcessingState.MODERATING);
+        when(entityManager.find(Report.class, 1L)).thenReturn(report);
+        mockCopies();
+        assertDoesNotThrow(() -> reportService.deleteReport(1L, "admin"));
+
+        verify(listener).reportSaved(report, true);
+        verify(listener).reportStateChanged(eq(1L), eq(Report.ProcessingState.NEW),
+                eq(Report.ProcessingState.MODERATING), any(Date.class), eq("moderator"));
+        verify(listener).reportDeleted(1L, Report.ProcessingState.MODERATING, "admin");
+        verify(entityTransaction, times(3)).commit();
+    }
+
+    @Test
+    void notifyListenersBeforeSavingNewReports() {
+        ReportListener listener = mock(ReportListener.class);
+        reportService = new ReportService(entityManager, Collections.singletonList(listener));
+
+        Report newReport = new Report("Anonymous", "Text", new Date());
+        Report savedReport = new Report("Anonymous", "Text", new Date());
+        savedReport.setId(1L);
+        Report invalidReport = new Report();
+        when(entityManager.getTransaction()).thenReturn(mock(EntityTransaction.class));
+
+        assertDoesNotThrow(() -> reportService.saveReports(Arrays.asList(newReport, savedReport,
+                invalidReport)));
+
+        verify(listener).reportSaving(newReport);
+        verify(listener, never()).reportSaving(savedReport);
+        verify(listener, never()).reportSaving(invalidReport);
+    }
+
+    @Test
+    void getReportsPageWithoutDuplicates() {
+        Query query = mock(Query.class);
+        when(entityManager.createQuery("SELECT r FROM Report r WHERE r.duplicateOf = 0 ORDER BY r.id"))
+                .thenReturn(query);
+        when(query.getResultList()).thenReturn(new LinkedList<>());
+
+        Page<Report> page = assertDoesNotThrow(() -> reportService.getReportsPage(ReportOrder.ID, null, null, 10,
+                false));
+
+        assertTrue(page.getModels().isEmpty());
+        verify(query).setMaxResults(11);
+    }
+
+    @Test
+    void getDuplicates() {
+        Report duplicate = new Report("Anonymous", "Text", new Date());
+        duplicate.setDuplicateOf(1L);
+        Query query = mock(Query.class);
+        when(entityManager.createQuery("SELECT r FROM Report r WHERE r.duplicateOf = :id ORDER BY r.id"))
+                .thenReturn(query);
+        when(query.getResultList()).thenReturn(Collections.singletonList(duplicate));
+
+        assertEquals(Collections.singletonList(duplicate), reportService.getDuplicates(1L));
+        verify(query).setParameter("id", 1L);
+    }
+
     @Test
     void deleteNotExistingReport() {
         Report report = new Report();
@@ -202,7 +651,7 @@ class ReportServiceTest {
 
         when(entityManager.find(Report.class, 1L)).thenReturn(null);
 
-        assertThrows(ModelNotFoundException.class, () -> reportService.deleteReport(1L));
+        assertThrows(ModelNotFoundException.class, () -> reportService.deleteReport(1L, "admin"));
     }
 
     @Test
@@ -214,11 +663,288 @@ class ReportServiceTest {
 
         when(entityManager.find(Report.class, 1L)).thenReturn(report);
         when(entityManager.getTransaction()).thenReturn(entityTransaction);
+        mockCopies();
 
-        assertDoesNotThrow(() -> reportService.deleteReport(1L));
+        assertDoesNotThrow(() -> reportService.deleteReport(1L, "admin"));
 
         verify(entityTransaction).begin();
         verify(entityManager).remove(entityManager.merge(report));
         verify(entityTransaction).commit();
     }
-}
\ No newline at end of file
+
+    @Test
+    void deleteReportRelinksCopies() {
+        ReportListener listener = mock(ReportListener.class);
+        reportService = new ReportService(entityManager, Collections.singletonList(listener));
+        Report report = new Report("Anonymous", "Text", new Date());
+        report.setId(1L);
+
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+        Query firstQuery = mock(Query.class);
+        Query copiesQuery = mock(Query.class);
+
+        when(entityManager.find(Report.class, 1L)).thenReturn(report);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+        Query selectQuery = mockCopies(new Object[] {3L, 1L}, new Object[] {2L, 1L});
+        when(entityManager.createQuery("UPDATE Report r SET r.duplicateOf = 0, r.version = r.version + 1 " +
+                "WHERE r.id = :first")).thenReturn(firstQuery);
+        when(entityManager.createQuery("UPDATE Report r SET r.duplicateOf = :first, r.version = r.version + 1 " +
+                "WHERE r.duplicateOf = :deleted")).thenReturn(copiesQuery);
+
+        assertDoesNotThrow(() -> reportService.deleteReport(1L, "admin"));
+
+        verify(selectQuery).setParameter("id0", 1L);
+        verify(firstQuery).setParameter("first", 3L);
+        verify(firstQuery).executeUpdate();
+        verify(copiesQuery).setParameter("first", 3L);
+        verify(copiesQuery).setParameter("deleted", 1L);
+        verify(copiesQuery).executeUpdate();
+        verify(entityTransaction).commit();
+        verify(listener).reportDeleted(1L, Report.ProcessingState.NEW, "admin");
+    }
+
+    @Test
+    void deleteReportRollsBackFailedRelink() {
+        ReportListener listener = mock(ReportListener.class);
+        reportService = new ReportService(entityManager, Collections.singletonList(listener));
+        Report report = new Report("Anonymous", "Text", new Date());
+        report.setId(1L);
+
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(entityManager.find(Report.class, 1L)).thenReturn(report);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+        Query selectQuery = mockCopies();
+        when(selectQuery.getResultList()).thenThrow(new PersistenceException("Lock timeout."));
+
+        assertDoesNotThrow(() -> reportService.deleteReport(1L, "admin"));
+
+        verify(entityTransaction).rollback();
+        verify(entityTransaction, never()).commit();
+        verify(listener, never()).reportDeleted(anyLong(), any(Report.ProcessingState.class), anyString());
+    }
+
+    @Test
+    void getArchivedReportById() throws IOException {
+        Path directory = Files.createTempDirectory("archive");
+        try {
+            ReportArchive archive = new ReportArchive(directory, ReportArchive.DEFAULT_SEGMENT_BYTES, 1);
+            Report archivedReport = new Report("Anonymous", "Archived", new Date(1000L));
+            archivedReport.setId(1L);
+            archive.append(Collections.singletonList(archivedReport));
+            reportService = new ReportService(entityManager, Collections.emptyList(), archive);
+
+            when(entityManager.find(Report.class, 1L)).thenReturn(null);
+
+            Report report = assertDoesNotThrow(() -> reportService.getReportById(1L));
+            assertEquals("Archived", report.getText());
+            assertThrows(ModelNotFoundException.class, () -> reportService.getReportById(2L));
+            assertThrows(ModelNotFoundException.class, () -> reportService.deleteReport(1L, "admin"));
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void archiveReports() throws IOException {
+        Path directory = Files.createTempDirectory("archive");
+        try {
+            ReportArchive archive = new ReportArchive(directory, ReportArchive.DEFAULT_SEGMENT_BYTES, 1);
+            ReportListener listener = mock(ReportListener.class);
+            reportService = new ReportService(entityManager, Collections.singletonList(listener), archive);
+            List<Report> testReports = new LinkedList<>();
+            for (long id = 1L; id <= 2L; id++) {
+                Report report = new Report("Anonymous", "Text", new Date(id));
+                report.setId(id);
+                report.setState(Report.ProcessingState.FINISHED);
+                testReports.add(report);
+            }
+
+            Query selectQuery = mock(Query.class);
+            Query deleteQuery = mock(Query.class);
+            EntityTransaction entityTransaction = mock(EntityTransaction.class);
+            Date finishedBefore = new Date(5000L);
+
+            when(selectQuery.getResultList()).thenReturn(testReports);
+            when(deleteQuery.executeUpdate()).thenReturn(2);
+            when(entityManager.createQuery("SELECT r FROM Report r WHERE r.state = :state " +
+                    "AND r.finishedDate < :before AND r.id > :id AND r.attachments IS EMPTY ORDER BY r.id"))
+                    .thenReturn(selectQuery);
+            when(entityManager.createQuery("DELETE FROM Report r WHERE r.state = :state AND r.id IN (:id0, :id1)"))
+                    .thenReturn(deleteQuery);
+            when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+            int archived = assertDoesNotThrow(() -> reportService.archiveReports(finishedBefore, 10));
+
+            assertEquals(2, archived);
+            assertEquals(2L, archive.size());
+            verify(selectQuery).setParameter("before", finishedBefore, TemporalType.TIMESTAMP);
+            verify(deleteQuery).setParameter("id0", 1L);
+            verify(deleteQuery).setParameter("id1", 2L);
+            verify(entityTransaction).commit();
+            verify(listener).reportArchived(1L);
+            verify(listener).reportArchived(2L);
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void archiveReportsWithoutArchive() {
+        assertThrows(IllegalStateException.class, () -> reportService.archiveReports(new Date(), 10));
+    }
+
+    @Test
+    void deleteReportsByIds() {
+        ReportListener listener = mock(ReportListener.class);
+        reportService = new ReportService(entityManager, Collections.singletonList(listener));
+
+        Query selectQuery = mock(Query.class);
+        Query attachmentQuery = mock(Query.class);
+        Query newQuery = mock(Query.class);
+        Query finishedQuery = mock(Query.class);
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(selectQuery.getResultList()).thenReturn(Arrays.asList(new Object[] {1L, Report.ProcessingState.NEW},
+                new Object[] {2L, Report.ProcessingState.FINISHED}));
+        when(newQuery.executeUpdate()).thenReturn(1);
+        when(finishedQuery.executeUpdate()).thenReturn(1);
+        when(entityManager.createQuery("SELECT r.id, r.state FROM Report r WHERE r.id IN (:id0, :id1, :id2)"))
+                .thenReturn(selectQuery);
+        when(entityManager.createQuery(startsWith("DELETE FROM Attachment a"))).thenReturn(attachmentQuery);
+        when(entityManager.createQuery("DELETE FROM Report r WHERE r.state = :state AND r.id IN (:id0)"))
+                .thenReturn(newQuery, finishedQuery);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+        Query copiesQuery = mockCopies();
+
+        assertEquals(2, reportService.deleteReports(new long[] {1L, 2L, 3L}, "admin"));
+
+        verify(copiesQuery).setParameter("id0", 1L);
+        verify(copiesQuery).setParameter("id1", 2L);
+        verify(attachmentQuery, times(2)).executeUpdate();
+        verify(newQuery).setParameter("state", Report.ProcessingState.NEW);
+        verify(finishedQuery).setParameter("state", Report.ProcessingState.FINISHED);
+        verify(entityTransaction).commit();
+        verify(entityManager).clear();
+        verify(listener).reportDeleted(1L, Report.ProcessingState.NEW, "admin");
+        verify(listener).reportDeleted(2L, Report.ProcessingState.FINISHED, "admin");
+    }
+
+    @Test
+    void deleteReportsInvalidatesSharedCache() {
+        ModelCaches modelCaches = new ModelCaches();
+        EntityManager otherEntityManager = mock(EntityManager.class);
+        Report report = new Report("Anonymous", "Text", new Date());
+        report.setId(1L);
+        when(otherEntityManager.find(Report.class, 1L)).thenReturn(report);
+        assertDoesNotThrow(() -> new ReportService(otherEntityManager, Collections.emptyList(), null, modelCaches)
+                .getReportById(1L));
+
+        reportService = new ReportService(entityManager, Collections.emptyList(), null, modelCaches);
+        Query selectQuery = mock(Query.class);
+        Query deleteQuery = mock(Query.class);
+        when(selectQuery.getResultList()).thenReturn(Collections.singletonList(
+                new Object[] {1L, Report.ProcessingState.NEW}));
+        when(deleteQuery.executeUpdate()).thenReturn(1);
+        when(entityManager.createQuery("SELECT r.id, r.state FROM Report r WHERE r.id IN (:id0)"))
+                .thenReturn(selectQuery);
+        when(entityManager.createQuery(startsWith("DELETE FROM Attachment a"))).thenReturn(mock(Query.class));
+        when(entityManager.createQuery("DELETE FROM Report r WHERE r.state = :state AND r.id IN (:id0)"))
+                .thenReturn(deleteQuery);
+        when(entityManager.getTransaction()).thenReturn(mock(EntityTransaction.class));
+        mockCopies();
+
+        assertEquals(1, reportService.deleteReports(new long[] {1L}, "admin"));
+        assertEquals(0, reportService.getModelCache(Report.class).size());
+    }
+
+    @Test
+    void deleteReportsSkipsChangedOnes() {
+        ReportListener listener = mock(ReportListener.class);
+        reportService = new ReportService(entityManager, Collections.singletonList(listener));
+
+        Query selectQuery = mock(Query.class);
+        Query deleteQuery = mock(Query.class);
+        Query remainingQuery = mock(Query.class);
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+        Date sentFrom = new Date(1000L);
+
+        when(selectQuery.getResultList()).thenReturn(Arrays.asList(new Object[] {1L, Report.ProcessingState.NEW},
+                new Object[] {2L, Report.ProcessingState.NEW}));
+        when(deleteQuery.executeUpdate()).thenReturn(1);
+        when(remainingQuery.getResultList()).thenReturn(Collections.singletonList(2L));
+        when(entityManager.createQuery("SELECT r.id, r.state FROM Report r WHERE r.state = :state " +
+                "AND r.sentDate >= :sentFrom")).thenReturn(selectQuery);
+        when(entityManager.createQuery(startsWith("DELETE FROM Attachment a"))).thenReturn(mock(Query.class));
+        when(entityManager.createQuery("DELETE FROM Report r WHERE r.state = :state AND r.id IN (:id0, :id1)"))
+                .thenReturn(deleteQuery);
+        when(entityManager.createQuery("SELECT r.id FROM Report r WHERE r.id IN (:id0, :id1)"))
+                .thenReturn(remainingQuery);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+        mockCopies();
+
+        int deleted = assertDoesNotThrow(() -> reportService.deleteReports(Report.ProcessingState.NEW, sentFrom,
+                null, "admin"));
+
+        assertEquals(1, deleted);
+        verify(selectQuery).setParameter("sentFrom", sentFrom, TemporalType.TIMESTAMP);
+        verify(listener).reportDeleted(1L, Report.ProcessingState.NEW, "admin");
+        verify(listener, never()).reportDeleted(eq(2L), any(Report.ProcessingState.class), anyString());
+    }
+
+    @Test
+    void deleteReportsWithoutCriteria() {
+        assertThrows(BadParametersException.class, () -> reportService.deleteReports(null, null, null, "admin"));
+    }
+
+    private String leasedStateUpdateText(String dateField) {
+        return String.format("UPDATE Report r SET r.state = :to, r.%s = :date, r.leaseOwner = NULL, " +
+                "r.leaseExpiresDate = NULL, r.version = r.version + 1 WHERE r.id = :id AND r.state = :from " +
+                "AND (r.leaseOwner IS NULL OR r.leaseOwner = :moderator OR r.leaseExpiresDate < :date)", dateField);
+    }
+
+    // Rows of (copy id, deleted id) the relinking after a delete finds, oldest copy first.
+    private Query mockCopies(Object[]... rows) {
+        Query query = mock(Query.class);
+        when(query.getResultList()).thenReturn(Arrays.asList((Object[]) rows));
+        when(entityManager.createQuery(startsWith("SELECT r.id, r.duplicateOf FROM Report r"))).thenReturn(query);
+        return query;
+    }
+
+    private String stateUpdateText(String dateField) {
+        return String.format("UPDATE Report r SET r.state = :to, r.%s = :date, r.version = r.version + 1 " +
+                "WHERE r.id = :id AND r.state = :from", dateField);
+    }
+
+    private EntityTransaction mockStateUpdate(Report.ProcessingState from, String dateField, int updated) {
+        Query query = mock(Query.class);
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(query.executeUpdate()).thenReturn(updated);
+        // begin moderating adds lease conditions to the statement, the start is the same.
+        when(entityManager.createQuery(startsWith(String.format("UPDATE Report r SET r.state = :to, r.%s = :date, ",
+                dateField)))).thenReturn(query);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        return entityTransaction;
+    }
+
+    private Query mockStateQuery(Report.ProcessingState state) {
+        Query query = mock(Query.class);
+
+        if (state != null) {
+            when(query.getSingleResult()).thenReturn(state);
+        } else {
+            when(query.getSingleResult()).thenThrow(new NoResultException());
+        }
+        when(entityManager.createQuery("SELECT r.state FROM Report r WHERE r.id = :id")).thenReturn(query);
+
+        return query;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ua.sumy.stpp.nobullying.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportStateCountersTest {
+    private ReportStateCounters counters;
+
+    @BeforeEach
+    void setup() {
+        Map<Report.ProcessingState, Long> counts = new EnumMap<>(Report.ProcessingState.class);
+        counts.put(Report.ProcessingState.NEW, 3L);
+        counts.put(Report.ProcessingState.FINISHED, 1L);
+
+        counters = new ReportStateCounters();
+        counters.reset(counts);
+    }
+
+    @Test
+    void resetCounters() {
+        assertEquals(3L, counters.getCount(Report.ProcessingState.NEW));
+        assertEquals(0L, counters.getCount(Report.ProcessingState.MODERATING));
+        assertEquals(1L, counters.getCount(Report.ProcessingState.FINISHED));
+    }
+
+    @Test
+    void countReportEvents() {
+        counters.reportSaved(new Report("Anonymous", "Text", new Date()), true);
+        counters.reportSaved(new Report("Anonymous", "Text", new Date()), false);
+        counters.reportStateChanged(1L, Report.ProcessingState.NEW, Report.ProcessingState.MODERATING, new Date(),
+                "moderator");
+        counters.reportDeleted(2L, Report.ProcessingState.FINISHED, "admin");
+
+        Map<Report.ProcessingState, Long> counts = counters.getCounts();
+        assertEquals(3L, (long) counts.get(Report.ProcessingState.NEW));
+        assertEquals(1L, (long) counts.get(Report.ProcessingState.MODERATING));
+        assertEquals(0L, (long) counts.get(Report.ProcessingState.FINISHED));
+    }
+}
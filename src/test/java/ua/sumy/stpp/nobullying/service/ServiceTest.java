@@ -4,6 +4,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import ua.sumy.stpp.nobullying.model.Model;
+import ua.sumy.stpp.nobullying.model.User;
 import ua.sumy.stpp.nobullying.service.error.BadOperationException;
 import ua.sumy.stpp.nobullying.service.error.BadParametersException;
 import ua.sumy.stpp.nobullying.service.error.ModelNotFoundException;
@@ -12,6 +13,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
 import javax.persistence.Query;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -47,6 +49,30 @@ class ServiceTest {
         assertEquals(model, assertDoesNotThrow(() -> service.getModelById(Model.class, 1L)));
     }
 
+    @Test
+    void getCachedModelById() {
+        when(entityManager.find(Model.class, 1L)).thenReturn(model);
+
+        assertEquals(model, assertDoesNotThrow(() -> service.getModelById(Model.class, 1L)));
+        assertEquals(model, assertDoesNotThrow(() -> service.getModelById(Model.class, 1L)));
+
+        verify(entityManager, times(1)).find(Model.class, 1L);
+        assertEquals(1, service.getModelCache(Model.class).getHits());
+    }
+
+    @Test
+    void saveModelInvalidatesCachedModel() {
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(entityManager.find(Model.class, 1L)).thenReturn(model);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        service.getModelCache(model.getClass()).put(1L, model);
+        assertDoesNotThrow(() -> service.saveModel(model));
+
+        assertEquals(0, service.getModelCache(model.getClass()).size());
+    }
+
     @Test
     void getAllModelsFromEmptyDatabase() {
         String namedQuery = "fetchAllModels";
@@ -136,4 +162,45 @@ class ServiceTest {
         verify(entityManager).remove(entityManager.merge(model));
         verify(entityTransaction).commit();
     }
-}
\ No newline at end of file
+
+    @Test
+    void saveModelBumpsVersion() {
+        User user = new User("user", "qwerty", "Simple", "User");
+        when(entityManager.getTransaction()).thenReturn(mock(EntityTransaction.class));
+
+        long version = ModelVersions.getVersion(User.class);
+        String eTag = ModelVersions.getETag(User.class);
+
+        assertTrue(assertDoesNotThrow(() -> service.saveModel(user)));
+        assertEquals(version + 1, ModelVersions.getVersion(User.class));
+        assertNotEquals(eTag, ModelVersions.getETag(User.class));
+    }
+
+    @Test
+    void failedSaveKeepsVersion() {
+        User user = new User("user", "qwerty", "Simple", "User");
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+        doThrow(new RuntimeException("Connection lost")).when(entityTransaction).commit();
+
+        long version = ModelVersions.getVersion(User.class);
+
+        assertFalse(assertDoesNotThrow(() -> service.saveModel(user)));
+        assertEquals(version, ModelVersions.getVersion(User.class));
+    }
+
+    @Test
+    void chunkIds() {
+        long[] ids = new long[Service.MAX_PAGE_SIZE + 2];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i % (Service.MAX_PAGE_SIZE + 1);
+        }
+
+        List<List<Long>> chunks = Service.chunkIds(Service.uniqueIds(ids));
+
+        assertEquals(2, chunks.size());
+        assertEquals(Service.MAX_PAGE_SIZE, chunks.get(0).size());
+        assertEquals(Collections.singletonList((long) Service.MAX_PAGE_SIZE), chunks.get(1));
+        assertEquals(":id0, :id1, :id2", Service.idParameters(3));
+    }
+}
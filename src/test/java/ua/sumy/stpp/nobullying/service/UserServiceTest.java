@@ -11,6 +11,8 @@ import javax.persistence.EntityTransaction;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -175,6 +177,40 @@ class UserServiceTest {
         assertEquals(testUsers, allUsers);
     }
 
+    @Test
+    void getUsersPageWithWrongSize() {
+        assertThrows(BadParametersException.class, () -> userService.getUsersPage(null, -1));
+    }
+
+    @Test
+    void getUsersPages() {
+        User admin = new User("admin", "qwerty", "Administrator", "Main");
+        admin.setId(1L);
+        User user = new User("user", "qwerty", "Simple", "User");
+        user.setId(2L);
+        List<User> testUsers = new LinkedList<>();
+        testUsers.add(admin);
+        testUsers.add(user);
+
+        Query firstQuery = mock(Query.class);
+        Query nextQuery = mock(Query.class);
+
+        when(firstQuery.getResultList()).thenReturn(testUsers);
+        when(nextQuery.getResultList()).thenReturn(testUsers.subList(1, 2));
+        when(entityManager.createQuery("SELECT u FROM User u ORDER BY u.id")).thenReturn(firstQuery);
+        when(entityManager.createQuery("SELECT u FROM User u WHERE u.id > :id ORDER BY u.id")).thenReturn(nextQuery);
+
+        Page<User> firstPage = assertDoesNotThrow(() -> userService.getUsersPage(null, 1));
+        assertEquals(testUsers.subList(0, 1), firstPage.getModels());
+        assertTrue(firstPage.hasNext());
+
+        Page<User> nextPage = assertDoesNotThrow(() -> userService.getUsersPage(firstPage.getNextCursor(), 1));
+        assertEquals(testUsers.subList(1, 2), nextPage.getModels());
+        assertFalse(nextPage.hasNext());
+
+        verify(nextQuery).setParameter("id", 1L);
+    }
+
     @Test
     void isNotExistingUserAdmin() {
         when(entityManager.find(User.class, 1L)).thenReturn(null);
@@ -209,7 +245,7 @@ class UserServiceTest {
     void promoteNotExistingUser() {
         when(entityManager.find(User.class, 1L)).thenReturn(null);
 
-        assertThrows(ModelNotFoundException.class, () -> userService.promoteUser(1L));
+        assertThrows(ModelNotFoundException.class, () -> userService.promoteUser(1L, "admin"));
     }
 
     @Test
@@ -220,7 +256,7 @@ class UserServiceTest {
 
         when(entityManager.find(User.class, 1L)).thenReturn(admin);
 
-        assertThrows(BadOperationException.class, () -> userService.promoteUser(1L));
+        assertThrows(BadOperationException.class, () -> userService.promoteUser(1L, "admin"));
     }
 
     @Test
@@ -233,7 +269,7 @@ class UserServiceTest {
         when(entityManager.find(User.class, 1L)).thenReturn(user);
         when(entityManager.getTransaction()).thenReturn(entityTransaction);
 
-        assertDoesNotThrow(() -> userService.promoteUser(1L));
+        assertDoesNotThrow(() -> userService.promoteUser(1L, "admin"));
         assertTrue(user.isAdmin());
 
         verify(entityTransaction).begin();
@@ -245,7 +281,7 @@ class UserServiceTest {
     void degradeNotExistingUser() {
         when(entityManager.find(User.class, 1L)).thenReturn(null);
 
-        assertThrows(ModelNotFoundException.class, () -> userService.degradeUser(1L));
+        assertThrows(ModelNotFoundException.class, () -> userService.degradeUser(1L, "admin"));
     }
 
     @Test
@@ -255,7 +291,7 @@ class UserServiceTest {
 
         when(entityManager.find(User.class, 1L)).thenReturn(user);
 
-        assertThrows(BadOperationException.class, () -> userService.degradeUser(1L));
+        assertThrows(BadOperationException.class, () -> userService.degradeUser(1L, "admin"));
     }
 
     @Test
@@ -269,7 +305,7 @@ class UserServiceTest {
         when(entityManager.find(User.class, 1L)).thenReturn(admin);
         when(entityManager.getTransaction()).thenReturn(entityTransaction);
 
-        assertDoesNotThrow(() -> userService.degradeUser(1L));
+        assertDoesNotThrow(() -> userService.degradeUser(1L, "admin"));
         assertFalse(admin.isAdmin());
 
         verify(entityTransaction).begin();
@@ -281,7 +317,7 @@ class UserServiceTest {
     void deleteNotExistingUser() {
         when(entityManager.find(User.class, 1L)).thenReturn(null);
 
-        assertThrows(ModelNotFoundException.class, () -> userService.deleteUser(1L));
+        assertThrows(ModelNotFoundException.class, () -> userService.deleteUser(1L, "admin"));
     }
 
     @Test
@@ -294,10 +330,155 @@ class UserServiceTest {
         when(entityManager.find(User.class, 1L)).thenReturn(user);
         when(entityManager.getTransaction()).thenReturn(entityTransaction);
 
-        assertDoesNotThrow(() -> userService.deleteUser(1L));
+        assertDoesNotThrow(() -> userService.deleteUser(1L, "admin"));
 
         verify(entityTransaction).begin();
         verify(entityManager).remove(entityManager.merge(user));
         verify(entityTransaction).commit();
     }
-}
\ No newline at end of file
+
+    @Test
+    void notifyListenersAboutUserChanges() {
+        UserListener listener = mock(UserListener.class);
+        userService = new UserService(entityManager, Collections.singletonList(listener));
+
+        User user = new User("user", "qwerty", "Simple", "User");
+        user.setId(1L);
+
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(entityManager.find(User.class, 1L)).thenReturn(user);
+        when(entityManager.merge(user)).thenReturn(user);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        assertDoesNotThrow(() -> userService.promoteUser(1L, "admin"));
+        assertDoesNotThrow(() -> userService.degradeUser(1L, "admin"));
+        assertDoesNotThrow(() -> userService.deleteUser(1L, "admin"));
+
+        verify(listener).userPermissionsChanged(1L, true, "admin");
+        verify(listener).userPermissionsChanged(1L, false, "admin");
+        verify(listener).userDeleted(1L, "admin");
+    }
+
+    @Test
+    void deleteUsers() {
+        UserListener listener = mock(UserListener.class);
+        userService = new UserService(entityManager, Collections.singletonList(listener));
+
+        Query selectQuery = mock(Query.class);
+        Query deleteQuery = mock(Query.class);
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(selectQuery.getResultList()).thenReturn(Arrays.asList(1L, 3L));
+        when(deleteQuery.executeUpdate()).thenReturn(2);
+        when(entityManager.createQuery("SELECT u.id FROM User u WHERE u.id IN (:id0, :id1, :id2)"))
+                .thenReturn(selectQuery);
+        when(entityManager.createQuery("DELETE FROM User u WHERE u.id IN (:id0, :id1, :id2)"))
+                .thenReturn(deleteQuery);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        long version = ModelVersions.getVersion(User.class);
+        assertEquals(2, userService.deleteUsers(new long[] {1L, 2L, 3L, 1L}, "admin"));
+
+        verify(deleteQuery).setParameter("id2", 3L);
+        verify(entityTransaction).commit();
+        verify(entityManager).clear();
+        verify(listener).userDeleted(1L, "admin");
+        verify(listener).userDeleted(3L, "admin");
+        verify(listener, never()).userDeleted(2L, "admin");
+        assertTrue(ModelVersions.getVersion(User.class) > version);
+    }
+
+    @Test
+    void deleteUsersWithFailedTransaction() {
+        Query selectQuery = mock(Query.class);
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(selectQuery.getResultList()).thenReturn(Collections.singletonList(1L));
+        when(entityManager.createQuery("SELECT u.id FROM User u WHERE u.id IN (:id0)")).thenReturn(selectQuery);
+        when(entityManager.createQuery("DELETE FROM User u WHERE u.id IN (:id0)"))
+                .thenThrow(new IllegalStateException("Database is down."));
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        assertEquals(0, userService.deleteUsers(new long[] {1L}, "admin"));
+
+        verify(entityTransaction).rollback();
+        verify(entityTransaction, never()).commit();
+    }
+
+    @Test
+    void promoteUsers() {
+        UserListener listener = mock(UserListener.class);
+        userService = new UserService(entityManager, Collections.singletonList(listener));
+
+        Query selectQuery = mock(Query.class);
+        Query updateQuery = mock(Query.class);
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(selectQuery.getResultList()).thenReturn(Collections.singletonList(2L));
+        when(entityManager.createQuery("SELECT u.id FROM User u WHERE u.isAdmin = :current " +
+                "AND u.id IN (:id0, :id1)")).thenReturn(selectQuery);
+        when(updateQuery.executeUpdate()).thenReturn(1);
+        when(entityManager.createQuery("UPDATE User u SET u.isAdmin = :admin WHERE u.isAdmin = :current " +
+                "AND u.id IN (:id0)")).thenReturn(updateQuery);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        assertEquals(1, userService.promoteUsers(new long[] {1L, 2L}, "admin"));
+
+        verify(selectQuery).setParameter("current", false);
+        verify(updateQuery).setParameter("admin", true);
+        verify(updateQuery).setParameter("current", false);
+        verify(updateQuery).setParameter("id0", 2L);
+        verify(updateQuery).executeUpdate();
+        verify(listener).userPermissionsChanged(2L, true, "admin");
+        verify(listener, never()).userPermissionsChanged(1L, true, "admin");
+    }
+
+    @Test
+    void promoteUsersChangedConcurrently() {
+        UserListener listener = mock(UserListener.class);
+        userService = new UserService(entityManager, Collections.singletonList(listener));
+
+        Query selectQuery = mock(Query.class);
+        Query updateQuery = mock(Query.class);
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        // another admin promotes user 2 between the first select and update, the retry selects only user 1.
+        when(selectQuery.getResultList()).thenReturn(Arrays.asList(1L, 2L), Collections.singletonList(1L));
+        when(updateQuery.executeUpdate()).thenReturn(1);
+        when(entityManager.createQuery("SELECT u.id FROM User u WHERE u.isAdmin = :current " +
+                "AND u.id IN (:id0, :id1)")).thenReturn(selectQuery);
+        when(entityManager.createQuery(startsWith("UPDATE User u SET u.isAdmin = :admin"))).thenReturn(updateQuery);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        assertEquals(1, userService.promoteUsers(new long[] {1L, 2L}, "admin"));
+
+        verify(entityTransaction).rollback();
+        verify(entityTransaction).commit();
+        verify(listener).userPermissionsChanged(1L, true, "admin");
+        verify(listener, never()).userPermissionsChanged(2L, true, "admin");
+    }
+
+    @Test
+    void deleteUsersDeletedConcurrently() {
+        UserListener listener = mock(UserListener.class);
+        userService = new UserService(entityManager, Collections.singletonList(listener));
+
+        Query selectQuery = mock(Query.class);
+        Query deleteQuery = mock(Query.class);
+        EntityTransaction entityTransaction = mock(EntityTransaction.class);
+
+        when(selectQuery.getResultList()).thenReturn(Arrays.asList(1L, 2L));
+        when(deleteQuery.executeUpdate()).thenReturn(1);
+        when(entityManager.createQuery("SELECT u.id FROM User u WHERE u.id IN (:id0, :id1)"))
+                .thenReturn(selectQuery);
+        when(entityManager.createQuery("DELETE FROM User u WHERE u.id IN (:id0, :id1)")).thenReturn(deleteQuery);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+
+        assertEquals(0, userService.deleteUsers(new long[] {1L, 2L}, "admin"));
+
+        verify(entityTransaction, times(3)).rollback();
+        verify(entityTransaction, never()).commit();
+        verify(listener, never()).userDeleted(anyLong(), anyString());
+    }
+}
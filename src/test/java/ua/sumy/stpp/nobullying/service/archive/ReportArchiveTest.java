@@ -0,0 +1,147 @@
+package ua.sumy.stpp.nobullying.service.archive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportArchiveTest {
+    private Path directory;
+    private ReportArchive archive;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("archive");
+        archive = new ReportArchive(directory, ReportArchive.DEFAULT_SEGMENT_BYTES, 2);
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void findArchivedReports() throws IOException {
+        archive.append(Arrays.asList(report(1L, 1000L), report(4L, 4000L)));
+        archive.append(Arrays.asList(report(2L, 2000L), report(3L, 3000L)));
+
+        Report report = archive.find(3L);
+        assertEquals(3L, report.getId());
+        assertEquals("Text of report 3", report.getText());
+        assertEquals(Report.ProcessingState.FINISHED, report.getState());
+        assertEquals(new Date(3000L), report.getSentDate());
+        assertEquals(new Date(3500L), report.getFinishedDate());
+        assertNull(report.getBeginMentoringDate());
+        assertEquals(30, report.getPriority());
+        assertNull(archive.find(5L));
+        assertEquals(4L, archive.size());
+        assertEquals(2, archive.getBlockCount());
+    }
+
+    @Test
+    void findReportsBySentDate() throws IOException {
+        archive.append(Arrays.asList(report(1L, 1000L), report(4L, 4000L)));
+        archive.append(Arrays.asList(report(2L, 2000L), report(3L, 3000L)));
+
+        List<Long> ids = archive.findSentBetween(new Date(2000L), new Date(4000L)).stream()
+                .map(Report::getId).collect(Collectors.toList());
+
+        assertEquals(Arrays.asList(2L, 3L), ids);
+    }
+
+    @Test
+    void archiveReportsWithoutSentDate() throws IOException {
+        Report legacy = report(2L, 2000L);
+        legacy.setSentDate(null);
+        Report otherLegacy = report(3L, 3000L);
+        otherLegacy.setSentDate(null);
+        archive.append(Arrays.asList(report(1L, 1000L), legacy));
+        archive.append(Arrays.asList(otherLegacy));
+
+        List<Long> ids = archive.findSentBetween(new Date(0L), new Date(5000L)).stream()
+                .map(Report::getId).collect(Collectors.toList());
+
+        assertEquals(Arrays.asList(1L), ids);
+        assertNull(archive.find(2L).getSentDate());
+        assertEquals(3L, archive.find(3L).getId());
+    }
+
+    @Test
+    void scanAllReports() throws IOException {
+        archive.append(Arrays.asList(report(1L, 1000L), report(4L, 4000L)));
+        archive.append(Arrays.asList(report(2L, 2000L)));
+
+        List<Long> ids = new ArrayList<>();
+        long scanned = archive.scan(report -> ids.add(report.getId()));
+
+        assertEquals(3L, scanned);
+        assertEquals(Arrays.asList(1L, 4L, 2L), ids);
+    }
+
+    @Test
+    void reopenAndRotateSegments() throws IOException {
+        archive = new ReportArchive(directory, 1, 2);
+        archive.append(Arrays.asList(report(1L, 1000L), report(2L, 2000L)));
+        archive.append(Arrays.asList(report(3L, 3000L)));
+
+        ReportArchive reopened = new ReportArchive(directory, 1, 2);
+
+        assertEquals(3L, reopened.size());
+        assertEquals(2L, reopened.find(2L).getId());
+        assertEquals(3L, reopened.find(3L).getId());
+        try (Stream<Path> paths = Files.list(directory)) {
+            assertEquals(2L, paths.count());
+        }
+    }
+
+    @Test
+    void truncateTornBlock() throws IOException {
+        List<Report> reports = new ArrayList<>();
+        for (long id = 1L; id <= 100L; id++) {
+            reports.add(report(id, id * 1000L));
+        }
+        archive.append(reports.subList(0, 50));
+        archive.append(reports.subList(50, 100));
+        Path segment;
+        try (Stream<Path> paths = Files.list(directory)) {
+            segment = paths.findFirst().get();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        ReportArchive reopened = new ReportArchive(directory, ReportArchive.DEFAULT_SEGMENT_BYTES, 2);
+        assertEquals(50L, reopened.size());
+        assertNull(reopened.find(60L));
+
+        reopened.append(reports.subList(50, 100));
+        assertEquals(60L, new ReportArchive(directory, ReportArchive.DEFAULT_SEGMENT_BYTES, 2).find(60L).getId());
+    }
+
+    private static Report report(long id, long sentTime) {
+        Report report = new Report("Anonymous", "Text of report " + id, new Date(sentTime));
+        report.setId(id);
+        report.setState(Report.ProcessingState.FINISHED);
+        report.setFinishedDate(new Date(sentTime + 500L));
+        report.setPriority((int) id * 10);
+        return report;
+    }
+}
@@ -0,0 +1,254 @@
+package ua.sumy.stpp.nobullying.service.attachment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttachmentStoreTest {
+    private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    private Path directory;
+    private AttachmentStore attachmentStore;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("attachments");
+        attachmentStore = new AttachmentStore(directory);
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void storeContentByHash() throws IOException {
+        StoredContent first = attachmentStore.store(content("hello"), 100L);
+        StoredContent second = attachmentStore.store(content("hello"), 100L);
+
+        assertEquals(HELLO_SHA256, first.getSha256());
+        assertEquals(5L, first.getSize());
+        assertEquals(first.getSha256(), second.getSha256());
+        assertTrue(attachmentStore.contains(HELLO_SHA256));
+        assertEquals("hello", new String(Files.readAllBytes(attachmentStore.resolve(HELLO_SHA256)),
+                StandardCharsets.UTF_8));
+
+        try (Stream<Path> uploads = Files.list(directory.resolve("uploads"))) {
+            assertEquals(0L, uploads.count());
+        }
+    }
+
+    @Test
+    void rejectTooLargeContent() throws IOException {
+        assertThrows(ContentTooLargeException.class, () -> attachmentStore.store(content("hello"), 4L));
+        assertFalse(attachmentStore.contains(HELLO_SHA256));
+
+        try (Stream<Path> uploads = Files.list(directory.resolve("uploads"))) {
+            assertEquals(0L, uploads.count());
+        }
+    }
+
+    @Test
+    void rejectMalformedHash() {
+        assertThrows(IllegalArgumentException.class, () -> attachmentStore.resolve("../../etc/passwd"));
+        assertFalse(attachmentStore.contains(HELLO_SHA256.toUpperCase()));
+    }
+
+    @Test
+    void stripJpegMetadata() throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+        byte[] image = jpeg.toByteArray();
+
+        ByteArrayOutputStream upload = new ByteArrayOutputStream();
+        upload.write(image, 0, 2);
+        writeJpegSegment(upload, 0xE1, "Exif\0\0GPS 50.9077N 34.7981E");
+        writeJpegSegment(upload, 0xFE, "taken at school");
+        upload.write(image, 2, image.length - 2);
+        upload.write("trailer".getBytes(StandardCharsets.US_ASCII));
+
+        StoredContent content = attachmentStore.store(new ByteArrayInputStream(upload.toByteArray()), 1_000_000L);
+        byte[] stored = Files.readAllBytes(attachmentStore.resolve(content.getSha256()));
+
+        assertArrayEquals(image, stored);
+        assertEquals(image.length, content.getSize());
+        assertEquals(40, ImageIO.read(new ByteArrayInputStream(stored)).getWidth());
+    }
+
+    @Test
+    void keepJpegOrientation() throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+        byte[] image = jpeg.toByteArray();
+
+        // a little endian directory with the camera make next to the orientation.
+        ByteBuffer exif = ByteBuffer.allocate(6 + 8 + 2 + 2 * 12 + 4).order(ByteOrder.LITTLE_ENDIAN);
+        exif.put("Exif\0\0II".getBytes(StandardCharsets.US_ASCII)).putShort((short) 42).putInt(8).putShort((short) 2);
+        exif.putShort((short) 0x010F).putShort((short) 2).putInt(4).put("Sony".getBytes(StandardCharsets.US_ASCII));
+        exif.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 6).putShort((short) 0);
+        exif.putInt(0);
+
+        ByteArrayOutputStream upload = new ByteArrayOutputStream();
+        upload.write(image, 0, 2);
+        writeJpegSegment(upload, 0xE1, exif.array());
+        upload.write(image, 2, image.length - 2);
+
+        StoredContent content = attachmentStore.store(new ByteArrayInputStream(upload.toByteArray()), 1_000_000L);
+        Path stored = attachmentStore.resolve(content.getSha256());
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(image, 0, 2);
+        expected.write(new byte[] {(byte) 0xFF, (byte) 0xE1, 0, 34, 'E', 'x', 'i', 'f', 0, 0, 'M', 'M', 0, 42, 0, 0,
+                0, 8, 0, 1, 0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0, 0, 0, 0, 0});
+        expected.write(image, 2, image.length - 2);
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(stored));
+        assertEquals(6, MetadataStripper.jpegOrientation(stored));
+    }
+
+    @Test
+    void stripPngMetadata() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(40, 20, BufferedImage.TYPE_INT_ARGB), "png", png);
+        byte[] image = png.toByteArray();
+
+        // the signature and the header chunk come first.
+        int header = 8 + 25;
+        ByteArrayOutputStream upload = new ByteArrayOutputStream();
+        upload.write(image, 0, header);
+        byte[] text = "Location\0Sumy".getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update("tEXt".getBytes(StandardCharsets.US_ASCII));
+        crc.update(text);
+        DataOutputStream chunk = new DataOutputStream(upload);
+        chunk.writeInt(text.length);
+        chunk.writeBytes("tEXt");
+        chunk.write(text);
+        chunk.writeInt((int) crc.getValue());
+        upload.write(image, header, image.length - header);
+
+        StoredContent content = attachmentStore.store(new ByteArrayInputStream(upload.toByteArray()), 1_000_000L);
+
+        assertArrayEquals(image, Files.readAllBytes(attachmentStore.resolve(content.getSha256())));
+    }
+
+    @Test
+    void stripWebpMetadata() throws IOException {
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        writeWebpChunk(chunks, "VP8X", new byte[] {0x0C, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        writeWebpChunk(chunks, "VP8L", new byte[] {1, 2, 3, 4, 5});
+        writeWebpChunk(chunks, "EXIF", "GPS 50.9077N".getBytes(StandardCharsets.US_ASCII));
+
+        StoredContent content = attachmentStore.store(new ByteArrayInputStream(webp(chunks.toByteArray())),
+                1_000_000L);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        writeWebpChunk(expected, "VP8X", new byte[10]);
+        writeWebpChunk(expected, "VP8L", new byte[] {1, 2, 3, 4, 5});
+        assertArrayEquals(webp(expected.toByteArray()),
+                Files.readAllBytes(attachmentStore.resolve(content.getSha256())));
+    }
+
+    @Test
+    void stripGifMetadata() throws IOException {
+        // a single white pixel behind a global color table of two entries.
+        byte[] header = {'G', 'I', 'F', '8', '9', 'a', 1, 0, 1, 0, (byte) 0x80, 0, 0, -1, -1, -1, 0, 0, 0};
+        byte[] image = {0x2C, 0, 0, 0, 0, 1, 0, 1, 0, 0, 2, 2, 0x44, 0x01, 0, 0x3B};
+        byte[] animation = gifApplication("NETSCAPE2.0", new byte[] {1, 0, 0});
+
+        ByteArrayOutputStream upload = new ByteArrayOutputStream();
+        upload.write(header);
+        upload.write(animation);
+        upload.write(new byte[] {0x21, (byte) 0xFE, 15});
+        upload.write("taken at school".getBytes(StandardCharsets.US_ASCII));
+        upload.write(0);
+        upload.write(gifApplication("XMP DataXMP", "GPS 50.9077N".getBytes(StandardCharsets.US_ASCII)));
+        upload.write(image);
+
+        StoredContent content = attachmentStore.store(new ByteArrayInputStream(upload.toByteArray()), 1_000_000L);
+        byte[] stored = Files.readAllBytes(attachmentStore.resolve(content.getSha256()));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(header);
+        expected.write(animation);
+        expected.write(image);
+        assertArrayEquals(expected.toByteArray(), stored);
+        assertEquals(1, ImageIO.read(new ByteArrayInputStream(stored)).getWidth());
+    }
+
+    @Test
+    void rejectMalformedImage() {
+        byte[] truncated = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0x00, 0x40, 'E', 'x'};
+
+        assertThrows(MalformedContentException.class, () -> attachmentStore.store(
+                new ByteArrayInputStream(truncated), 1_000L));
+    }
+
+    private static void writeJpegSegment(ByteArrayOutputStream out, int marker, String payload) {
+        writeJpegSegment(out, marker, payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeJpegSegment(ByteArrayOutputStream out, int marker, byte[] bytes) {
+        out.write(0xFF);
+        out.write(marker);
+        out.write((bytes.length + 2) >> 8);
+        out.write(bytes.length + 2);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] gifApplication(String identifier, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0x21);
+        out.write(0xFF);
+        out.write(identifier.length());
+        out.write(identifier.getBytes(StandardCharsets.US_ASCII), 0, identifier.length());
+        out.write(data.length);
+        out.write(data, 0, data.length);
+        out.write(0);
+        return out.toByteArray();
+    }
+
+    private static void writeWebpChunk(ByteArrayOutputStream out, String type, byte[] data) throws IOException {
+        out.write(type.getBytes(StandardCharsets.US_ASCII));
+        out.write(littleEndian(data.length));
+        out.write(data);
+        if (data.length % 2 != 0) {
+            out.write(0);
+        }
+    }
+
+    private static byte[] webp(byte[] chunks) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("RIFF".getBytes(StandardCharsets.US_ASCII));
+        out.write(littleEndian(chunks.length + 4));
+        out.write("WEBP".getBytes(StandardCharsets.US_ASCII));
+        out.write(chunks);
+        return out.toByteArray();
+    }
+
+    private static byte[] littleEndian(int value) {
+        return new byte[] {(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)};
+    }
+
+    private static ByteArrayInputStream content(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
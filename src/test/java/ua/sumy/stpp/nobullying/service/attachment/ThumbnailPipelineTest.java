@@ -0,0 +1,140 @@
+package ua.sumy.stpp.nobullying.service.attachment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Attachment;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThumbnailPipelineTest {
+    private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    private Path directory;
+    private AttachmentStore attachmentStore;
+    private ThumbnailPipeline thumbnailPipeline;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("attachments");
+        attachmentStore = new AttachmentStore(directory);
+        thumbnailPipeline = new ThumbnailPipeline(attachmentStore, directory.resolve("jobs"), 1, 10, 32);
+        thumbnailPipeline.start();
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        thumbnailPipeline.stop();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void generateThumbnail() throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB), "png", png);
+        StoredContent content = attachmentStore.store(new ByteArrayInputStream(png.toByteArray()), 1_000_000L);
+
+        thumbnailPipeline.attachmentSaved(attachment(content, "image/png"));
+        awaitIdle();
+
+        BufferedImage thumbnail = ImageIO.read(attachmentStore.resolveThumbnail(content.getSha256()).toFile());
+        assertEquals(32, thumbnail.getWidth());
+        assertEquals(16, thumbnail.getHeight());
+        assertEquals(1L, thumbnailPipeline.getProcessedCount());
+        assertEquals(0L, Files.list(directory.resolve("jobs").resolve("pending")).count());
+    }
+
+    @Test
+    void generateUprightThumbnail() throws Exception {
+        // stored sideways, the left half turns into the top one.
+        BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 100, 100);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(100, 0, 100, 100);
+        graphics.dispose();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", jpeg);
+        byte[] pixels = jpeg.toByteArray();
+
+        ByteArrayOutputStream upload = new ByteArrayOutputStream();
+        upload.write(pixels, 0, 2);
+        upload.write(new byte[] {(byte) 0xFF, (byte) 0xE1, 0, 34, 'E', 'x', 'i', 'f', 0, 0, 'M', 'M', 0, 42, 0, 0,
+                0, 8, 0, 1, 0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0, 0, 0, 0, 0});
+        upload.write(pixels, 2, pixels.length - 2);
+        StoredContent content = attachmentStore.store(new ByteArrayInputStream(upload.toByteArray()), 1_000_000L);
+
+        thumbnailPipeline.attachmentSaved(attachment(content, "image/jpeg"));
+        awaitIdle();
+
+        BufferedImage thumbnail = ImageIO.read(attachmentStore.resolveThumbnail(content.getSha256()).toFile());
+        assertEquals(16, thumbnail.getWidth());
+        assertEquals(32, thumbnail.getHeight());
+        Color top = new Color(thumbnail.getRGB(8, 4));
+        Color bottom = new Color(thumbnail.getRGB(8, 28));
+        assertTrue(top.getRed() > top.getBlue());
+        assertTrue(bottom.getBlue() > bottom.getRed());
+    }
+
+    @Test
+    void failBrokenImage() throws Exception {
+        StoredContent content = attachmentStore.store(
+                new ByteArrayInputStream("not an image".getBytes(StandardCharsets.UTF_8)), 1_000L);
+
+        thumbnailPipeline.attachmentSaved(attachment(content, "image/png"));
+        awaitIdle();
+
+        assertFalse(Files.exists(attachmentStore.resolveThumbnail(content.getSha256())));
+        assertEquals(1L, thumbnailPipeline.getFailedCount());
+        assertTrue(Files.exists(directory.resolve("jobs").resolve("failed").resolve(content.getSha256() + ".job")));
+    }
+
+    @Test
+    void skipOtherContent() throws Exception {
+        StoredContent content = attachmentStore.store(
+                new ByteArrayInputStream("audio".getBytes(StandardCharsets.UTF_8)), 1_000L);
+
+        thumbnailPipeline.attachmentSaved(attachment(content, "audio/mpeg"));
+
+        assertEquals(0, thumbnailPipeline.getBacklog());
+        assertEquals(0L, Files.list(directory.resolve("jobs").resolve("pending")).count());
+    }
+
+    @Test
+    void countJobsOnDisk() throws Exception {
+        Path jobs = directory.resolve("stopped");
+        ThumbnailPipeline stopped = new ThumbnailPipeline(attachmentStore, jobs, 1, 10, 32);
+        Files.write(jobs.resolve("pending").resolve(HELLO_SHA256 + ".job"),
+                "image/png".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(1, stopped.getBacklog());
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        for (int i = 0; i < 500 && thumbnailPipeline.getBacklog() > 0; i++) {
+            Thread.sleep(10L);
+        }
+    }
+
+    private static Attachment attachment(StoredContent content, String contentType) {
+        return new Attachment(null, "file", contentType, content.getSha256(), content.getSize(), new Date());
+    }
+}
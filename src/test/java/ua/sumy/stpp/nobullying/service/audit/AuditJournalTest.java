@@ -0,0 +1,144 @@
+package ua.sumy.stpp.nobullying.service.audit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditJournalTest {
+    private Path directory;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("audit");
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void appendAndRead() throws IOException {
+        AuditJournal journal = new AuditJournal(directory, 8, 100, 0, 0L);
+        assertFalse(journal.append(AuditAction.USER_DELETED, 1L, 0, 1000L, "admin"));
+
+        journal.start();
+        journal.reportStateChanged(7L, Report.ProcessingState.NEW, Report.ProcessingState.MODERATING,
+                new Date(2000L), "moderator");
+        journal.reportDeleted(7L, Report.ProcessingState.MODERATING, "admin");
+        for (long id = 1; id <= 20; id++) {
+            journal.userPermissionsChanged(id, true, "admin");
+        }
+        journal.stop();
+
+        assertEquals(22L, journal.getWrittenSequence());
+
+        Iterator<AuditRecord> records = journal.read(1L);
+        AuditRecord record = records.next();
+        assertEquals(1L, record.getSequence());
+        assertEquals(2000L, record.getTime());
+        assertEquals(AuditAction.REPORT_MODERATION_BEGAN, record.getAction());
+        assertEquals(7L, record.getSubjectId());
+        assertEquals(Report.ProcessingState.NEW.ordinal(), record.getDetail());
+        assertEquals("moderator", record.getActor());
+        record = records.next();
+        assertEquals(AuditAction.REPORT_DELETED, record.getAction());
+        assertEquals("admin", record.getActor());
+
+        List<AuditRecord> found = journal.find(1L, Long.MAX_VALUE, 10,
+                (AuditRecord audit) -> audit.getSubjectId() == 7L);
+        assertEquals(3, found.size());
+        assertEquals(AuditAction.USER_PROMOTED, found.get(2).getAction());
+        assertEquals(20, journal.find(3L, Long.MAX_VALUE, 100, (AuditRecord audit) -> true).size());
+    }
+
+    @Test
+    void continueAfterReopening() throws IOException {
+        AuditJournal journal = new AuditJournal(directory, 8, 4, 0, 0L);
+        journal.start();
+        for (long id = 1; id <= 6; id++) {
+            journal.userDeleted(id, "admin" + id % 2);
+        }
+        journal.stop();
+
+        AuditJournal reopened = new AuditJournal(directory, 8, 4, 0, 0L);
+        assertEquals(6L, reopened.getLastSequence());
+
+        reopened.start();
+        reopened.userDeleted(7L, "admin1");
+        reopened.reportArchived(8L);
+        reopened.stop();
+
+        List<AuditRecord> records = reopened.find(5L, Long.MAX_VALUE, 10, (AuditRecord audit) -> true);
+        assertEquals(4, records.size());
+        assertEquals("admin0", records.get(1).getActor());
+        assertEquals(7L, records.get(2).getSequence());
+        assertEquals(7L, records.get(2).getSubjectId());
+        assertEquals("admin1", records.get(2).getActor());
+        assertNull(records.get(3).getActor());
+    }
+
+    @Test
+    void dropOldSegments() throws IOException {
+        AuditJournal journal = new AuditJournal(directory, 8, 2, 2, 0L);
+        journal.start();
+        for (long id = 1; id <= 9; id++) {
+            journal.userDeleted(id, "admin");
+        }
+        journal.stop();
+
+        assertEquals(2, AuditSegment.list(directory).size());
+        List<AuditRecord> records = journal.find(1L, Long.MAX_VALUE, 10, (AuditRecord audit) -> true);
+        assertEquals(3, records.size());
+        assertEquals(7L, records.get(0).getSequence());
+    }
+
+    @Test
+    void findWithinRange() throws IOException {
+        AuditJournal journal = new AuditJournal(directory, 8, 3, 0, 0L);
+        journal.start();
+        for (long id = 1; id <= 10; id++) {
+            journal.userDeleted(id, "admin");
+        }
+        journal.stop();
+
+        List<AuditRecord> records = journal.find(5L, 7L, 10, (AuditRecord audit) -> true);
+        assertEquals(3, records.size());
+        assertEquals(5L, records.get(0).getSequence());
+        assertEquals(7L, records.get(2).getSequence());
+        assertTrue(journal.find(11L, 20L, 10, (AuditRecord audit) -> true).isEmpty());
+    }
+
+    @Test
+    void locateSegment() throws IOException {
+        AuditJournal journal = new AuditJournal(directory, 8, 3, 0, 0L);
+        journal.start();
+        for (long id = 1; id <= 7; id++) {
+            journal.userDeleted(id, null);
+        }
+        journal.stop();
+
+        List<Path> paths = AuditSegment.list(directory);
+        assertEquals(3, paths.size());
+
+        assertEquals(0, AuditSegment.indexOf(paths, 1L));
+        assertEquals(0, AuditSegment.indexOf(paths, 3L));
+        assertEquals(1, AuditSegment.indexOf(paths, 4L));
+        assertEquals(2, AuditSegment.indexOf(paths, 100L));
+    }
+}
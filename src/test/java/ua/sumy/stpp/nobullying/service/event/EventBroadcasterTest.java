@@ -0,0 +1,135 @@
+package ua.sumy.stpp.nobullying.service.event;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventBroadcasterTest {
+    private EventBroadcaster broadcaster;
+
+    @BeforeEach
+    void setup() {
+        broadcaster = new EventBroadcaster(16, 2, 1000L);
+    }
+
+    @Test
+    void writeEventsOnceSinkIsWritable() {
+        TestSink sink = new TestSink();
+        EventSubscription subscription = broadcaster.subscribe(sink);
+
+        broadcaster.publish("report-created", "{\"id\":1}");
+        broadcaster.broadcast(frame("id: 1\nevent: report-created\ndata: {\"id\":1}\n\n"));
+        assertEquals("", sink.text());
+
+        subscription.writePossible();
+        assertEquals(": connected\nretry: 5000\n\nid: 1\nevent: report-created\ndata: {\"id\":1}\n\n", sink.text());
+        assertEquals(1, sink.flushes);
+    }
+
+    @Test
+    void keepEventsWhileSinkIsNotReady() {
+        TestSink sink = new TestSink();
+        EventSubscription subscription = broadcaster.subscribe(sink);
+        subscription.writePossible();
+
+        sink.ready = false;
+        broadcaster.broadcast(frame("data: 1\n\n"));
+        assertFalse(sink.text().contains("data: 1"));
+
+        sink.ready = true;
+        subscription.writePossible();
+        assertTrue(sink.text().endsWith("data: 1\n\n"));
+        assertEquals(1, broadcaster.getSubscriberCount());
+    }
+
+    @Test
+    void dropSlowSubscriber() {
+        TestSink slow = new TestSink();
+        TestSink fast = new TestSink();
+        EventSubscription slowSubscription = broadcaster.subscribe(slow);
+        broadcaster.subscribe(fast).writePossible();
+
+        broadcaster.broadcast(frame("data: 1\n\n"));
+        broadcaster.broadcast(frame("data: 2\n\n"));
+
+        assertTrue(slowSubscription.isClosed());
+        assertTrue(slow.closed);
+        assertFalse(fast.closed);
+        assertEquals(1, broadcaster.getSubscriberCount());
+        assertTrue(fast.text().endsWith("data: 1\n\ndata: 2\n\n"));
+    }
+
+    @Test
+    void closeSubscriptionOnWriteError() {
+        TestSink sink = new TestSink();
+        sink.failing = true;
+        EventSubscription subscription = broadcaster.subscribe(sink);
+        subscription.writePossible();
+
+        assertTrue(subscription.isClosed());
+        assertEquals(0, broadcaster.getSubscriberCount());
+    }
+
+    @Test
+    void splitMultilineData() throws InterruptedException {
+        TestSink sink = new TestSink();
+        broadcaster.subscribe(sink).writePossible();
+        broadcaster.start();
+        try {
+            assertEquals(1L, broadcaster.publish("note", "first\nsecond"));
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (!sink.text().contains("data: second") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+        } finally {
+            broadcaster.stop();
+        }
+
+        assertTrue(sink.text().contains("id: 1\nevent: note\ndata: first\ndata: second\n\n"));
+        assertTrue(sink.closed);
+    }
+
+    private static byte[] frame(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class TestSink implements EventSink {
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private volatile boolean ready = true;
+        private volatile boolean failing = false;
+        private volatile boolean closed = false;
+        private int flushes = 0;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public synchronized void write(byte[] frame) throws IOException {
+            if (failing) {
+                throw new IOException("Connection reset.");
+            }
+            written.write(frame);
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        synchronized String text() {
+            return new String(written.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
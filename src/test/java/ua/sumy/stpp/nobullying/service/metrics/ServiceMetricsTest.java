@@ -0,0 +1,104 @@
+package ua.sumy.stpp.nobullying.service.metrics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.service.error.ModelNotFoundException;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServiceMetricsTest {
+    private ServiceMetrics metrics;
+
+    @BeforeEach
+    void setup() {
+        metrics = new ServiceMetrics();
+    }
+
+    @Test
+    void recordLatencyBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10_000L);
+        histogram.record(50_000L);
+        histogram.record(50_001L);
+        histogram.record(60_000_000_000L);
+
+        assertEquals(2L, histogram.getCount(0));
+        assertEquals(1L, histogram.getCount(1));
+        assertEquals(1L, histogram.getCount(histogram.getBucketCount() - 1));
+        assertEquals(4L, histogram.getTotalCount());
+        assertEquals(60_000_110_001L, histogram.getSumNanos());
+    }
+
+    @Test
+    void countErrorsAndRollbacks() {
+        OperationMetrics operation = metrics.getOperation("ReportService.getReportById");
+        assertSame(operation, metrics.getOperation("ReportService.getReportById"));
+
+        operation.failed(new ModelNotFoundException("Model not found!"));
+        operation.failed(new ModelNotFoundException("Model not found!"));
+        operation.failed(new IllegalStateException());
+        operation.rolledBack();
+
+        assertEquals(2L, operation.getErrorCount(ModelNotFoundException.class));
+        assertEquals(1L, operation.getErrorCount(IllegalStateException.class));
+        assertEquals(0L, operation.getErrorCount(IllegalArgumentException.class));
+        assertEquals(1L, operation.getRollbackCount());
+    }
+
+    @Test
+    void timeOperation() {
+        OperationMetrics operation = metrics.getOperation("ReportService.getReportById");
+
+        assertEquals(1L, (long) operation.time(() -> 1L));
+        assertThrows(ModelNotFoundException.class, () -> operation.run(() -> {
+            throw new ModelNotFoundException("Model not found!");
+        }));
+
+        assertEquals(2L, operation.getLatency().getTotalCount());
+        assertEquals(1L, operation.getErrorCount(ModelNotFoundException.class));
+    }
+
+    @Test
+    void writePrometheusText() throws IOException {
+        OperationMetrics operation = metrics.getOperation("Service.saveModel");
+        operation.getLatency().record(2_000_000L);
+        operation.failed(new IllegalStateException());
+        operation.rolledBack();
+
+        StringWriter writer = new StringWriter();
+        metrics.write(writer);
+        String text = writer.toString();
+
+        String duration = "nobullying_service_operation_duration_seconds";
+        String operationLabel = "{operation=\"Service.saveModel\"";
+        assertTrue(text.contains("# TYPE " + duration + " histogram\n"));
+        assertTrue(text.contains(duration + "_bucket" + operationLabel + ",le=\"0.001\"} 0\n"));
+        assertTrue(text.contains(duration + "_bucket" + operationLabel + ",le=\"0.0025\"} 1\n"));
+        assertTrue(text.contains(duration + "_bucket" + operationLabel + ",le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains(duration + "_sum" + operationLabel + "} 0.002\n"));
+        assertTrue(text.contains(duration + "_count" + operationLabel + "} 1\n"));
+        assertTrue(text.contains("nobullying_service_operation_errors_total" + operationLabel +
+                ",exception=\"IllegalStateException\"} 1\n"));
+        assertTrue(text.contains("nobullying_service_transaction_rollbacks_total" + operationLabel + "} 1\n"));
+    }
+
+    @Test
+    void writeLabeledCounters() throws IOException {
+        String name = "nobullying_rate_limit_rejected_total";
+        metrics.counter(name, "Rejected requests.", "route=\"login\"").increment();
+        metrics.counter(name, "Rejected requests.", "route=\"login\"").increment();
+        metrics.counter(name, "Rejected requests.", "route=\"register\"").increment();
+
+        StringWriter writer = new StringWriter();
+        metrics.write(writer);
+        String text = writer.toString();
+
+        assertTrue(text.contains("# TYPE " + name + " counter\n"));
+        assertTrue(text.contains(name + "{route=\"login\"} 2\n"));
+        assertTrue(text.contains(name + "{route=\"register\"} 1\n"));
+    }
+}
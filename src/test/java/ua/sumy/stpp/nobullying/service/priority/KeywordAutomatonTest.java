@@ -0,0 +1,61 @@
+package ua.sumy.stpp.nobullying.service.priority;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeywordAutomatonTest {
+    @Test
+    void scoreOverlappingKeywords() {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("kill myself", 100);
+        weights.put("kill", 50);
+        weights.put("myself", 1);
+        KeywordAutomaton automaton = KeywordAutomaton.build(weights);
+
+        assertEquals(3, automaton.getKeywordCount());
+        assertEquals(151, automaton.score("I want to KILL MYSELF"));
+        assertEquals(50, automaton.score("they said they would kill him"));
+    }
+
+    @Test
+    void matchWholeWordsOnly() {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("hit", 10);
+        weights.put("threat*", 20);
+        KeywordAutomaton automaton = KeywordAutomaton.build(weights);
+
+        assertEquals(0, automaton.score("white chips"));
+        assertEquals(10, automaton.score("he hit me."));
+        assertEquals(20, automaton.score("Threatening messages"));
+        assertEquals(0, automaton.score("nothreats"));
+    }
+
+    @Test
+    void countEveryKeywordOnce() {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("again", 5);
+        KeywordAutomaton automaton = KeywordAutomaton.build(weights);
+
+        assertEquals(5, automaton.score("again and again and again"));
+    }
+
+    @Test
+    void scoreWithoutKeywords() {
+        KeywordAutomaton automaton = KeywordAutomaton.build(new LinkedHashMap<>());
+
+        assertEquals(0, automaton.getKeywordCount());
+        assertEquals(0, automaton.score("anything"));
+    }
+
+    @Test
+    void buildWithEmptyKeyword() {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("*", 5);
+
+        assertThrows(IllegalArgumentException.class, () -> KeywordAutomaton.build(weights));
+    }
+}
@@ -0,0 +1,86 @@
+package ua.sumy.stpp.nobullying.service.priority;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriorityScorerTest {
+    private Path directory;
+    private Path dictionary;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("priority");
+        dictionary = directory.resolve("keywords.txt");
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void createDefaultDictionary() throws IOException {
+        PriorityScorer scorer = new PriorityScorer(dictionary);
+
+        assertTrue(Files.exists(dictionary));
+        assertTrue(scorer.getKeywordCount() > 0);
+        assertTrue(scorer.score("I am scared they will beat me again") > 0);
+        assertEquals(0, scorer.score("The canteen was closed today"));
+    }
+
+    @Test
+    void scoreSavingReport() throws IOException {
+        write("# comment\n\n40 knife\n15 afraid\n", 1000L);
+        PriorityScorer scorer = new PriorityScorer(dictionary);
+        Report report = new Report("Anonymous", "He had a knife, I am afraid", new Date());
+
+        scorer.reportSaving(report);
+
+        assertEquals(55, report.getPriority());
+    }
+
+    @Test
+    void reloadModifiedDictionary() throws IOException {
+        write("40 knife\n", 1000L);
+        PriorityScorer scorer = new PriorityScorer(dictionary);
+
+        scorer.reloadIfModified();
+        assertEquals(40, scorer.score("knife"));
+
+        write("70 knife\n10 gun\n", 2000L);
+        scorer.reloadIfModified();
+        assertEquals(2, scorer.getKeywordCount());
+        assertEquals(80, scorer.score("knife and gun"));
+    }
+
+    @Test
+    void keepDictionaryOnBrokenReload() throws IOException {
+        write("40 knife\n", 1000L);
+        PriorityScorer scorer = new PriorityScorer(dictionary);
+
+        write("forty knife\n", 2000L);
+        assertFalse(scorer.reload());
+        assertEquals(40, scorer.score("knife"));
+    }
+
+    private void write(String content, long modifiedTime) throws IOException {
+        Files.write(dictionary, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(dictionary, FileTime.fromMillis(modifiedTime));
+    }
+}
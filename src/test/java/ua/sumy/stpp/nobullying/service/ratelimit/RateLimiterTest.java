@@ -0,0 +1,63 @@
+package ua.sumy.stpp.nobullying.service.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+    private AtomicLong time;
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    void setup() {
+        time = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+        rateLimiter = new RateLimiter(3, 3, TimeUnit.SECONDS, time::get);
+    }
+
+    @Test
+    void allowBurstUpToCapacity() {
+        assertEquals(0L, rateLimiter.tryAcquire("127.0.0.1"));
+        assertEquals(0L, rateLimiter.tryAcquire("127.0.0.1"));
+        assertEquals(0L, rateLimiter.tryAcquire("127.0.0.1"));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), rateLimiter.tryAcquire("127.0.0.1"));
+        assertEquals(0L, rateLimiter.tryAcquire("127.0.0.2"));
+    }
+
+    @Test
+    void refillTokensOverPeriod() {
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.tryAcquire("127.0.0.1");
+        }
+
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), rateLimiter.tryAcquire("127.0.0.1"));
+
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(0L, rateLimiter.tryAcquire("127.0.0.1"));
+        assertTrue(rateLimiter.tryAcquire("127.0.0.1") > 0);
+
+        time.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0L, rateLimiter.tryAcquire("127.0.0.1"));
+        }
+        assertTrue(rateLimiter.tryAcquire("127.0.0.1") > 0);
+    }
+
+    @Test
+    void sweepFullBuckets() {
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.tryAcquire("client" + i);
+        }
+        assertEquals(100, rateLimiter.size());
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        rateLimiter.tryAcquire("client0");
+        rateLimiter.tryAcquire("client0");
+        rateLimiter.sweep();
+        assertEquals(1, rateLimiter.size());
+    }
+}
@@ -0,0 +1,123 @@
+package ua.sumy.stpp.nobullying.service.rollup;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Report;
+import ua.sumy.stpp.nobullying.service.ModelBatchConsumer;
+import ua.sumy.stpp.nobullying.service.ReportService;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReportRollupsTest {
+    private static final long WEDNESDAY = Instant.parse("2026-10-14T09:00:00Z").toEpochMilli();
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private ReportRollups rollups;
+
+    @BeforeEach
+    void setup() {
+        rollups = new ReportRollups(ZoneOffset.UTC);
+    }
+
+    @Test
+    void alignBuckets() {
+        long time = WEDNESDAY + 30 * TimeUnit.MINUTES.toMillis(1);
+
+        assertEquals(WEDNESDAY, RollupResolution.HOUR.bucketStart(time, ZoneOffset.UTC));
+        assertEquals(Instant.parse("2026-10-14T00:00:00Z").toEpochMilli(),
+                RollupResolution.DAY.bucketStart(time, ZoneOffset.UTC));
+        assertEquals(Instant.parse("2026-10-12T00:00:00Z").toEpochMilli(),
+                RollupResolution.WEEK.bucketStart(time, ZoneOffset.UTC));
+    }
+
+    @Test
+    void countSavedReportsAndTransitions() {
+        rollups.reportSaved(report(1L, WEDNESDAY), true);
+        rollups.reportSaved(report(2L, WEDNESDAY + HOUR), true);
+        rollups.reportSaved(report(2L, WEDNESDAY + HOUR), false);
+        rollups.reportStateChanged(1L, Report.ProcessingState.NEW, Report.ProcessingState.MODERATING,
+                new Date(WEDNESDAY + 2 * HOUR), "moderator");
+        rollups.reportStateChanged(1L, Report.ProcessingState.MODERATING, Report.ProcessingState.FINISHED,
+                new Date(WEDNESDAY + 4 * HOUR), "moderator");
+
+        List<RollupBucket> hours = rollups.getRange(RollupResolution.HOUR, new Date(WEDNESDAY),
+                new Date(WEDNESDAY + DAY));
+        assertEquals(4, hours.size());
+        assertEquals(1L, hours.get(0).getCount(Report.ProcessingState.NEW));
+        assertEquals(1L, hours.get(2).getCount(Report.ProcessingState.MODERATING));
+        assertEquals(2 * HOUR, hours.get(2).getAverageResponseMillis());
+        assertEquals(4 * HOUR, hours.get(3).getAverageResolutionMillis());
+
+        RollupBucket day = rollups.getRange(RollupResolution.DAY, new Date(WEDNESDAY),
+                new Date(WEDNESDAY + DAY)).get(0);
+        assertEquals(2L, day.getCount(Report.ProcessingState.NEW));
+        assertEquals(1L, day.getCount(Report.ProcessingState.FINISHED));
+        assertEquals(0L, rollups.getRange(RollupResolution.WEEK, new Date(WEDNESDAY + 7 * DAY),
+                new Date(WEDNESDAY + 14 * DAY)).size());
+    }
+
+    @Test
+    void addFinishedReport() {
+        Report report = report(1L, WEDNESDAY);
+        report.setBeginMentoringDate(new Date(WEDNESDAY + HOUR));
+        report.setFinishedDate(new Date(WEDNESDAY + DAY));
+        report.setState(Report.ProcessingState.FINISHED);
+        rollups.reportSaved(report, true);
+
+        List<RollupBucket> days = rollups.getRange(RollupResolution.DAY, new Date(WEDNESDAY),
+                new Date(WEDNESDAY + 2 * DAY));
+        assertEquals(2, days.size());
+        assertEquals(HOUR, days.get(0).getAverageResponseMillis());
+        assertEquals(DAY, days.get(1).getAverageResolutionMillis());
+        assertEquals(1L, days.get(1).getCount(Report.ProcessingState.FINISHED));
+    }
+
+    @Test
+    void skipTurnaroundOfUnknownReport() {
+        rollups.reportSaved(report(1L, WEDNESDAY), true);
+        rollups.reportDeleted(1L, Report.ProcessingState.NEW, "admin");
+        rollups.reportStateChanged(1L, Report.ProcessingState.NEW, Report.ProcessingState.FINISHED,
+                new Date(WEDNESDAY + HOUR), "moderator");
+
+        RollupBucket day = rollups.getRange(RollupResolution.DAY, new Date(WEDNESDAY),
+                new Date(WEDNESDAY + DAY)).get(0);
+        assertEquals(1L, day.getCount(Report.ProcessingState.NEW));
+        assertEquals(1L, day.getCount(Report.ProcessingState.FINISHED));
+        assertEquals(0L, day.getAverageResolutionMillis());
+    }
+
+    @Test
+    void rebuildSkippingReportsWithoutSentDate() throws Exception {
+        Report legacy = report(1L, WEDNESDAY);
+        legacy.setSentDate(null);
+        ReportService reportService = mock(ReportService.class);
+        when(reportService.streamReports(anyInt(), any(ModelBatchConsumer.class))).thenAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            ModelBatchConsumer<Report> consumer = (ModelBatchConsumer<Report>) invocation.getArguments()[1];
+            consumer.accept(Arrays.asList(legacy, report(2L, WEDNESDAY + HOUR)));
+            return 2L;
+        });
+
+        rollups.rebuild(reportService, null);
+
+        RollupBucket day = rollups.getRange(RollupResolution.DAY, new Date(WEDNESDAY),
+                new Date(WEDNESDAY + DAY)).get(0);
+        assertEquals(1L, day.getCount(Report.ProcessingState.NEW));
+    }
+
+    private static Report report(long id, long sentTime) {
+        Report report = new Report("Anonymous", "Text", new Date(sentTime));
+        report.setId(id);
+        return report;
+    }
+}
@@ -0,0 +1,89 @@
+package ua.sumy.stpp.nobullying.service.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateDetectorTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final String INCIDENT = "During the long break near the gym three older boys from class 9B " +
+            "pushed Ivan to the floor and took his backpack and phone";
+
+    private DuplicateDetector detector;
+
+    @BeforeEach
+    void setup() {
+        detector = new DuplicateDetector(7 * DAY, DAY);
+        detector.reportSaved(report(1L, INCIDENT, 0L, 100 * DAY), true);
+        detector.reportSaved(report(2L, "Someone wrote insulting words about Olena on the wall of the " +
+                "girls bathroom on the second floor yesterday evening", 0L, 100 * DAY), true);
+    }
+
+    @Test
+    void linkReworded() {
+        Report report = report(0L, "during the long break, near the gym, three older boys from 9B class pushed " +
+                "Ivan to the floor and took his backpack and phone!", 0L, 101 * DAY);
+        detector.reportSaving(report);
+
+        assertEquals(1L, report.getDuplicateOf());
+        assertEquals(1L, detector.getLinkedCount());
+    }
+
+    @Test
+    void linkToFirstReportOfIncident() {
+        detector.reportSaved(report(3L, INCIDENT + " again", 1L, 101 * DAY), true);
+
+        assertEquals(1L, detector.findDuplicate(INCIDENT + " again", 102 * DAY));
+    }
+
+    @Test
+    void keepDifferentReports() {
+        Report report = report(0L, "During the long break near the canteen two boys from class 7A laughed at " +
+                "Olena and threw her notebook into the bin", 0L, 100 * DAY);
+        detector.reportSaving(report);
+
+        assertEquals(0L, report.getDuplicateOf());
+        assertEquals(0L, detector.findDuplicate("Ivan cried", 100 * DAY));
+    }
+
+    @Test
+    void ignoreReportsOutsideWindow() {
+        assertEquals(1L, detector.findDuplicate(INCIDENT, 106 * DAY));
+        assertEquals(0L, detector.findDuplicate(INCIDENT, 108 * DAY));
+
+        detector.reportSaved(report(3L, "A first grader was locked in the storage room by older pupils " +
+                "after the sports lesson", 0L, 110 * DAY), true);
+        assertEquals(1, detector.size());
+    }
+
+    @Test
+    void forgetDeletedReport() {
+        detector.reportDeleted(1L, Report.ProcessingState.NEW, "admin");
+
+        assertEquals(0L, detector.findDuplicate(INCIDENT, 100 * DAY));
+        assertEquals(1, detector.size());
+    }
+
+    @Test
+    void relinkCopiesOfDeletedReport() {
+        detector.reportSaved(report(4L, INCIDENT + " once more", 1L, 102 * DAY), true);
+        detector.reportSaved(report(3L, INCIDENT + " again", 1L, 101 * DAY), true);
+        detector.reportDeleted(1L, Report.ProcessingState.FINISHED, "admin");
+
+        assertEquals(3L, detector.findDuplicate(INCIDENT + " once more", 102 * DAY));
+        assertEquals(3L, detector.findDuplicate(INCIDENT + " again", 102 * DAY));
+    }
+
+    private static Report report(long id, String text, long duplicateOf, long sentTime) {
+        Report report = new Report("Anonymous", text, new Date(sentTime));
+        report.setId(id);
+        report.setDuplicateOf(duplicateOf);
+        return report;
+    }
+}
@@ -0,0 +1,81 @@
+package ua.sumy.stpp.nobullying.service.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ua.sumy.stpp.nobullying.model.Report;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportTextIndexTest {
+    private ReportTextIndex index;
+
+    @BeforeEach
+    void setup() {
+        index = new ReportTextIndex();
+        index.reportSaved(report(1L, "Taras pushed Ivan near the gym", 1000L), true);
+        index.reportSaved(report(2L, "Ivan was insulted in the canteen", 3000L), true);
+        index.reportSaved(report(3L, "Someone took Olena's phone in the gym", 2000L), true);
+    }
+
+    @Test
+    void tokenizeText() {
+        String text = "\u041e\u043b\u0435\u043d\u0430 \u0432\u0437\u044f\u043b\u0430 phone, 42 - a!";
+        String terms = "[\u043e\u043b\u0435\u043d\u0430, \u0432\u0437\u044f\u043b\u0430, phone, 42]";
+
+        assertEquals(terms, ReportTextIndex.tokenize(text).toString());
+    }
+
+    @Test
+    void searchAllTerms() {
+        assertArrayEquals(new long[]{1L}, index.search("ivan GYM", null, 10));
+        assertArrayEquals(new long[0], index.search("ivan phone", null, 10));
+        assertArrayEquals(new long[0], index.search("unknown", null, 10));
+    }
+
+    @Test
+    void searchAnyTermsByRecency() {
+        assertArrayEquals(new long[]{2L, 3L, 1L}, index.search("ivan OR gym", null, 10));
+        assertArrayEquals(new long[]{2L, 3L}, index.search("canteen OR phone", null, 10));
+        assertArrayEquals(new long[]{2L}, index.search("ivan OR gym", null, 1));
+    }
+
+    @Test
+    void searchByState() {
+        index.reportStateChanged(3L, Report.ProcessingState.NEW, Report.ProcessingState.MODERATING, new Date(),
+                "moderator");
+
+        assertArrayEquals(new long[]{3L}, index.search("gym", Report.ProcessingState.MODERATING, 10));
+        assertArrayEquals(new long[]{1L}, index.search("gym", Report.ProcessingState.NEW, 10));
+    }
+
+    @Test
+    void reindexChangedAndDeletedReports() {
+        index.reportSaved(report(1L, "Taras apologized", 1000L), false);
+        index.reportDeleted(2L, Report.ProcessingState.NEW, "admin");
+
+        assertArrayEquals(new long[0], index.search("ivan", null, 10));
+        assertArrayEquals(new long[]{1L}, index.search("apologized", null, 10));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void keepPostingsSorted() {
+        PostingList postingList = new PostingList();
+        postingList.add(300);
+        postingList.add(5);
+        postingList.add(100000);
+        postingList.add(5);
+        postingList.remove(300);
+
+        assertArrayEquals(new int[]{5, 100000}, postingList.toArray());
+    }
+
+    private static Report report(long id, String text, long sentTime) {
+        Report report = new Report("Anonymous", text, new Date(sentTime * 1000L));
+        report.setId(id);
+        return report;
+    }
+}